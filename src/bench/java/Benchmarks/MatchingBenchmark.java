@@ -0,0 +1,122 @@
+package Benchmarks;
+
+import ClientSide.Asset;
+import ClientSide.Order;
+import ServerSide.FillBuffer;
+import ServerSide.OrderBook;
+import ServerSide.PrimitiveOrderBook;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how quickly the order books match orders. Each asset's book is filled with resting orders on both sides
+ * of the spread, then every operation enters one aggressive order that trades with the best resting orders and one
+ * passive order that puts the same quantity back, so the books stay the same size while being measured. The orders
+ * are generated up front from a fixed seed so every run sees the same flow.
+ * <p>
+ * Run with {@code ant bench}, or {@code ant bench -Dbench.args="MatchingBenchmark -p orders=10000"} to pick
+ * parameters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchingBenchmark {
+    private static final int FLOW = 1 << 16; // Pre-generated operations, reused in a loop
+    private static final int MID = 1000; // Bids rest below this price and asks above it
+    private static final int SPREAD = 100; // The number of price levels on each side
+
+    @Param({"1000", "10000", "100000"})
+    public int orders; // Resting orders across all books
+
+    @Param({"1", "100"})
+    public int assets;
+
+    @Param({"object", "primitive"})
+    public String book;
+
+    private OrderBook[] objectBooks;
+    private PrimitiveOrderBook[] primitiveBooks;
+    private Asset[] assetList;
+    private final FillBuffer fills = new FillBuffer(64);
+
+    // The operation stream: the asset, side and quantity of each aggressive order and the price the passive
+    // order that replaces its liquidity rests at
+    private int[] flowAsset;
+    private boolean[] flowBuy;
+    private int[] flowQty;
+    private int[] flowPrice;
+    private int next = 0;
+    private int nextID = 1;
+
+    /**
+     * Builds the books and the order flow
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        assetList = new Asset[assets];
+        objectBooks = new OrderBook[assets];
+        primitiveBooks = new PrimitiveOrderBook[assets];
+        for (int a = 0; a < assets; a++) {
+            assetList[a] = new Asset(a, "Asset " + a);
+            objectBooks[a] = new OrderBook(a);
+            primitiveBooks[a] = new PrimitiveOrderBook(a, orders / assets * 2);
+        }
+
+        for (int i = 0; i < orders; i++) {
+            boolean isBuy = (i & 1) == 0;
+            rest(random.nextInt(assets), isBuy, 1 + random.nextInt(10), restingPrice(random, isBuy));
+        }
+
+        flowAsset = new int[FLOW];
+        flowBuy = new boolean[FLOW];
+        flowQty = new int[FLOW];
+        flowPrice = new int[FLOW];
+        for (int i = 0; i < FLOW; i++) {
+            flowAsset[i] = random.nextInt(assets);
+            flowBuy[i] = random.nextBoolean();
+            flowQty[i] = 1 + random.nextInt(10);
+            flowPrice[i] = restingPrice(random, !flowBuy[i]);
+        }
+    }
+
+    /**
+     * Picks a price on one side of the spread
+     */
+    private static int restingPrice(Random random, boolean isBuy) {
+        return isBuy ? MID - 1 - random.nextInt(SPREAD) : MID + 1 + random.nextInt(SPREAD);
+    }
+
+    /**
+     * Enters a limit order into an asset's book
+     * @return the number of fills the order made
+     */
+    private int rest(int asset, boolean isBuy, int qty, int price) {
+        if (book.equals("primitive")) {
+            return primitiveBooks[asset].add(nextID++, isBuy ? 1 : 2, isBuy, qty, price, fills);
+        }
+        return objectBooks[asset].add(new Order(null, assetList[asset], qty, price, isBuy, nextID++)).size();
+    }
+
+    /**
+     * Enters an aggressive order that crosses the spread, then puts the same quantity back on the side it traded
+     * against
+     * @return the number of fills, so the work cannot be optimised away
+     */
+    @Benchmark
+    public int matchAndReplenish() {
+        int i = next++ & (FLOW - 1);
+        int asset = flowAsset[i];
+        boolean isBuy = flowBuy[i];
+        int qty = flowQty[i];
+
+        int aggressivePrice = isBuy ? MID + SPREAD : MID - SPREAD;
+        int trades = rest(asset, isBuy, qty, aggressivePrice);
+        return trades + rest(asset, !isBuy, qty, flowPrice[i]);
+    }
+}
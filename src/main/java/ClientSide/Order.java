@@ -1,12 +1,26 @@
 package ClientSide;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 /**
  * Organises orders
  * @author Alistair Ridge
  */
 public class Order {
+
+    /**
+     * How an order is matched. Limit orders rest in the order book until they are filled or cancelled, the other
+     * types are matched as soon as they are placed and whatever cannot be filled straight away is cancelled.
+     */
+    public enum Type {
+        LIMIT, // Trade at the order price or better, resting until filled
+        MARKET, // Trade at any price, buys are limited to the credits the unit holds
+        IMMEDIATE_OR_CANCEL, // Trade at the order price or better, cancelling anything not filled straight away
+        FILL_OR_KILL // Trade the whole quantity at the order price or better straight away, or not at all
+    }
+
     public int id;
     public Unit unit;
     public Asset asset;
@@ -15,6 +29,9 @@ public class Order {
     public int qty;
     public int price;
     public boolean isBuy; // True for buy orders, False for sell orders
+    public Type type = Type.LIMIT;
+    public long placedNanos; // System.nanoTime() when the order was placed on this server, 0 if not known
+    public LocalDateTime expiry; // When a resting order is cancelled if it has not been filled, null if never
 
     /**
      * This constructor sets the trade ID of the order and adds the trade specific information to the object.
@@ -62,6 +79,60 @@ public class Order {
         this.isBuy = isBuy;
     }
 
+    /**
+     * This constructor creates an order of a specific type.
+     * @param unit Unit of the user that placed the trade
+     * @param asset Asset that is being traded
+     * @param qty Amount of the asset that is being traded
+     * @param price Price at which the asset is being traded, ignored for market orders
+     * @param isBuy Used to track the order type, True for Buy orders, False for Sell orders
+     * @param type How the order is matched
+     */
+    public Order(Unit unit, Asset asset, int qty, int price, Boolean isBuy, Type type) {
+        this(unit, asset, qty, price, isBuy);
+        this.type = type;
+    }
+
+    /**
+     * Check if the order can rest in the order book
+     * @return true for limit orders, false for orders that are only matched when they are placed
+     */
+    public boolean isResting() {
+        return this.type == Type.LIMIT;
+    }
+
+    /**
+     * Makes a limit order good till a time, after which whatever has not been filled is cancelled
+     * @param expiry When the order expires
+     */
+    public void goodTill(LocalDateTime expiry) {
+        this.expiry = expiry;
+    }
+
+    /**
+     * Makes a limit order good for the day it is placed on, so whatever has not been filled by midnight is cancelled
+     */
+    public void goodForDay() {
+        this.expiry = datePlaced.toLocalDate().plusDays(1).atStartOfDay();
+    }
+
+    /**
+     * Getter for the order's expiry as a number
+     * @return milliseconds since the epoch, 0 if the order does not expire
+     */
+    public long getExpiryMillis() {
+        return expiry == null ? 0 : expiry.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Setter for the order's expiry as a number
+     * @param expiryMillis Milliseconds since the epoch, 0 if the order does not expire
+     */
+    public void setExpiryMillis(long expiryMillis) {
+        this.expiry = expiryMillis == 0 ? null
+                : LocalDateTime.ofInstant(Instant.ofEpochMilli(expiryMillis), ZoneId.systemDefault());
+    }
+
     /**
      * Setter for the date resolved variable of the object
      * @param dateResolved The date that the trade was esolved on in the for YYYY-MM-DD HH:MM:SS
@@ -10,7 +10,10 @@ import ClientSide.Unit;
 import ClientSide.User;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * The interface class used to interact with the database specified by the client.
@@ -116,12 +119,38 @@ public interface DatabaseSource {
      */
     void addOrder(Order order) throws OrderException, DoesNotExist;
 
+    /**
+     * Method used to write an order that has already been validated to the orders table in the database
+     * @param order The order that is being placed, its ID is set to the ID given by the database
+     */
+    void insertOrder(Order order);
+
     /**
      * Method used to get outstanding orders from the orders Database
      * @return A list of outstanding orders
      */
     HashMap<Integer, Order> getOrders();
 
+    /**
+     * Method used to get the outstanding orders that were placed after a specified order
+     * @param orderID The ID of the newest order that has already been seen
+     * @return Array list containing the newer outstanding orders, oldest first
+     */
+    ArrayList<Order> getOrdersSince(int orderID);
+
+    /**
+     * Method used to get the orders that have been cancelled after a specified point in the cancellation feed
+     * @param cancelID The ID of the newest cancellation that has already been seen
+     * @return A map of cancellation IDs to the cancelled orders, oldest first
+     */
+    TreeMap<Integer, Order> getCancellationsSince(int cancelID);
+
+    /**
+     * Method used to remove cancellations that have been dealt with from the cancellation feed
+     * @param cancelID The ID of the newest cancellation to remove
+     */
+    void clearCancellations(int cancelID);
+
     /**
      * Method used to get a units outstanding orders from the orders Database
      * @return Array list containing the unit's outstanding orders
@@ -148,6 +177,12 @@ public interface DatabaseSource {
      */
     void cancelOrder(Order order);
 
+    /**
+     * Method used to remove a specified order from the orders table in the database straight away
+     * @param order The order that is being removed
+     */
+    void deleteOrder(Order order);
+
     /**
      * Method used to get a list of outstanding orders for a specified unit
      * @param unit Unit to get a list of outstanding orders for
@@ -270,4 +305,63 @@ public interface DatabaseSource {
      */
     void updateAssetDesc(String id, String desc) throws AlreadyExists;
 
+    // BATCH METHODS ---------------------------------------------------------------------------------------------------
+    // Each of these makes all of its changes in one transaction, so they are written to disk once rather than once per
+    // row. Everything is checked before any change is made, so either every change is made or none are.
+
+    /**
+     * Method used to add many users to the database at once
+     * @param passwords The password of each new user, by username
+     * @param unit The unit the users belong to, null for none
+     * @param access Admin access for the users
+     * @throws IllegalString Throw an exception if a username or password is not a valid string
+     * @throws AlreadyExists Throw an exception if a user already exists
+     */
+    void addUsers(Map<String, String> passwords, String unit, boolean access) throws IllegalString, AlreadyExists;
+
+    /**
+     * Method used to add many Organisations to the database at once
+     * @param balances The initial balance of each new unit, by unit name
+     * @throws IllegalString Throw exception if a unit name is not a valid string
+     * @throws AlreadyExists Throw exception if a unit already exists
+     */
+    void addUnits(Map<String, Integer> balances) throws IllegalString, AlreadyExists;
+
+    /**
+     * Method used to set the credits of many units at once
+     * @param amounts The new amount of credits of each unit, by unit name
+     */
+    void adjustBalances(Map<String, Integer> amounts);
+
+    /**
+     * Method used to set the quantities of many assets held by a unit at once, adding any the unit does not hold yet
+     * @param unitName The unit to have their asset quantities changed
+     * @param quantities The new quantity of each asset, by asset ID
+     * @throws DoesNotExist Throw exception if an asset does not exist
+     */
+    void adjustAssetQuantities(String unitName, Map<Integer, Integer> quantities) throws DoesNotExist;
+
+    /**
+     * Method used to add many existing assets to a unit at once
+     * @param unitName The unit to add the assets to
+     * @param quantities The quantity of each asset, by asset ID
+     * @throws AlreadyExists Throw exception if the unit already holds one of the assets
+     * @throws DoesNotExist Throw exception if an asset does not exist
+     */
+    void addAssetsToUnit(String unitName, Map<Integer, Integer> quantities) throws AlreadyExists, DoesNotExist;
+
+    /**
+     * Method used to add many assets to the database at once
+     * @param descriptions The description of each new asset, by asset ID
+     * @throws AlreadyExists Exception thrown if an asset ID or description already exists in the database
+     */
+    void addAssets(Map<Integer, String> descriptions) throws AlreadyExists;
+
+    /**
+     * Method used to place many limit orders at once
+     * @param orders The orders being placed
+     * @throws OrderException Throw exception if an order is not a limit order or cannot be afforded
+     * @throws DoesNotExist Throw exception if an order is to buy an asset that does not exist
+     */
+    void addOrders(Collection<Order> orders) throws OrderException, DoesNotExist;
 }
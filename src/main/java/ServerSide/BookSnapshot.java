@@ -0,0 +1,164 @@
+package ServerSide;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A copy of every order resting in the matcher's order books, taken at a known point in the order journal. On start
+ * up the books are rebuilt from the newest snapshot and only the journal records written after it are replayed, so
+ * restarting takes about as long as reading the snapshot however many orders the journal has seen.
+ * <p>
+ * The file holds a header (the journal sequence number and position the snapshot was taken at and the newest order
+ * ID entered), each unit name once, then every resting order in priority order, followed by a CRC32 of everything
+ * before it. A snapshot is written to a temporary file that then replaces the old snapshot, so a crash while writing
+ * leaves the previous snapshot in place.
+ */
+public class BookSnapshot {
+    private static final int MAGIC = 0x534e4150; // "SNAP"
+    private static final int VERSION = 1;
+
+    /**
+     * A resting order in the snapshot
+     */
+    public static class Resting {
+        public int orderID;
+        public int assetID;
+        public String unitName;
+        public boolean isBuy;
+        public int qty; // The quantity still to be filled
+        public int price;
+        public long expiry; // Milliseconds since the epoch the order expires at, 0 if it does not
+    }
+
+    public final long journalSequence; // Journal records up to and including this one are in the snapshot
+    public final long journalPosition; // Where the records after the snapshot start in the journal file
+    public final int lastOrderID; // The newest order that had been entered into a book
+    public final ArrayList<Resting> orders = new ArrayList<>();
+
+    /**
+     * Constructor for an empty snapshot
+     * @param journalSequence The sequence number of the newest journal record reflected in the books
+     * @param journalPosition The position in the journal file just after that record
+     * @param lastOrderID The newest order that had been entered into a book
+     */
+    public BookSnapshot(long journalSequence, long journalPosition, int lastOrderID) {
+        this.journalSequence = journalSequence;
+        this.journalPosition = journalPosition;
+        this.lastOrderID = lastOrderID;
+    }
+
+    /**
+     * Method used to add a resting order to the snapshot. Orders for the same asset must be added in the order they
+     * would be matched.
+     * @param orderID The ID of the order
+     * @param assetID The asset the order is for
+     * @param unitName The unit that placed the order
+     * @param isBuy True for a buy order, false for a sell order
+     * @param qty The quantity still to be filled
+     * @param price The limit price of the order
+     * @param expiry Milliseconds since the epoch the order expires at, 0 if it does not
+     */
+    public void add(int orderID, int assetID, String unitName, boolean isBuy, int qty, int price, long expiry) {
+        Resting order = new Resting();
+        order.orderID = orderID;
+        order.assetID = assetID;
+        order.unitName = unitName;
+        order.isBuy = isBuy;
+        order.qty = qty;
+        order.price = price;
+        order.expiry = expiry;
+        orders.add(order);
+    }
+
+    /**
+     * Method used to write the snapshot, replacing any snapshot already in the file once it is durable
+     * @param file The snapshot file
+     * @throws IOException Throws an exception if the snapshot cannot be written
+     */
+    public void write(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        HashMap<String, Integer> units = new HashMap<>();
+        ArrayList<String> names = new ArrayList<>();
+        for (Resting order : orders) {
+            if (units.putIfAbsent(order.unitName, names.size()) == null) {
+                names.add(order.unitName);
+            }
+        }
+
+        try (FileOutputStream stream = new FileOutputStream(temp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalSequence);
+            out.writeLong(journalPosition);
+            out.writeInt(lastOrderID);
+
+            out.writeInt(names.size());
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+            out.writeInt(orders.size());
+            for (Resting order : orders) {
+                out.writeInt(order.orderID);
+                out.writeInt(order.assetID);
+                out.writeInt(units.get(order.unitName));
+                out.writeBoolean(order.isBuy);
+                out.writeInt(order.qty);
+                out.writeInt(order.price);
+                out.writeLong(order.expiry);
+            }
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Method used to read a snapshot
+     * @param file The snapshot file
+     * @return the snapshot, or null if there is no snapshot file
+     * @throws IOException Throws an exception if the file cannot be read or is not a complete snapshot
+     */
+    public static BookSnapshot read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file)), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not an order book snapshot");
+            }
+            BookSnapshot snapshot = new BookSnapshot(in.readLong(), in.readLong(), in.readInt());
+
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+            }
+            int count = in.readInt();
+            snapshot.orders.ensureCapacity(Math.min(count, 1 << 20));
+            for (int i = 0; i < count; i++) {
+                snapshot.add(in.readInt(), in.readInt(), names[in.readInt()], in.readBoolean(), in.readInt(),
+                        in.readInt(), in.readLong());
+            }
+
+            int expected = (int) checked.getChecksum().getValue();
+            if (in.readInt() != expected) {
+                throw new IOException(file + " is corrupt");
+            }
+            return snapshot;
+        } catch (EOFException | ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException(file + " is incomplete", e);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package ServerSide;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of database connections, each with its own cache of prepared statements. A thread leases a
+ * connection for as long as it needs it and gives it back by closing the lease, so threads never share a connection
+ * or a statement and cannot change each other's parameters. A thread that already holds a lease gets the same
+ * connection again, so a method can call other methods that lease a connection inside the same transaction.
+ * <p>
+ * Connections are only opened when every open connection is in use, up to the size of the pool. Once that many
+ * are leased, further threads wait for one to be given back.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    /**
+     * Opens new connections to the database
+     */
+    public interface Opener {
+        /**
+         * Opens a connection
+         * @return the new connection
+         * @throws SQLException Throws an exception if the database cannot be connected to
+         */
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * A connection leased to one thread, with the statements prepared on it. Closing the lease gives the connection
+     * back to the pool once the thread has closed every lease it took.
+     */
+    public class Lease implements AutoCloseable {
+        private final Connection connection;
+        private final HashMap<String, PreparedStatement> statements = new HashMap<>();
+        private final HashMap<String, PreparedStatement> keyedStatements = new HashMap<>();
+        private int depth = 0; // The number of leases the current holder has not closed
+
+        /**
+         * Constructor for a lease of a newly opened connection
+         * @param connection The connection
+         */
+        private Lease(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Getter for the leased connection
+         * @return the connection
+         */
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Getter for a statement prepared on the leased connection, preparing it the first time it is needed
+         * @param sql The SQL of the statement
+         * @return the prepared statement, which is kept for the next lease of the same connection
+         * @throws SQLException Throws an exception if the statement cannot be prepared
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        /**
+         * Getter for a statement prepared on the leased connection that returns the keys the database generates
+         * @param sql The SQL of the statement
+         * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS
+         * @return the prepared statement, which is kept for the next lease of the same connection
+         * @throws SQLException Throws an exception if the statement cannot be prepared
+         */
+        public PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+            PreparedStatement statement = keyedStatements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql, autoGeneratedKeys);
+                keyedStatements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        /**
+         * Gives the connection back to the pool, unless the thread still holds an outer lease of it
+         */
+        @Override
+        public void close() {
+            if (--depth == 0) {
+                release(this);
+            }
+        }
+    }
+
+    private final Opener opener;
+    private final int size;
+    private final long timeoutMillis;
+    private final ArrayDeque<Lease> idle = new ArrayDeque<>();
+    private final ArrayList<Lease> all = new ArrayList<>();
+    private final ThreadLocal<Lease> held = new ThreadLocal<>();
+    private boolean closed = false;
+
+    /**
+     * Constructor for an empty pool
+     * @param opener Opens the pool's connections
+     * @param size The most connections the pool may open
+     * @param timeoutMillis How long to wait for a connection before giving up
+     */
+    public ConnectionPool(Opener opener, int size, long timeoutMillis) {
+        if (size < 1) {
+            throw new IllegalArgumentException("A connection pool needs at least one connection");
+        }
+        this.opener = opener;
+        this.size = size;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Getter for the most connections the pool may open
+     * @return the size of the pool
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Getter for the number of connections the pool has opened
+     * @return the number of open connections
+     */
+    public synchronized int getOpened() {
+        return all.size();
+    }
+
+    /**
+     * Method used to lease a connection for the current thread. The lease must be closed, preferably with
+     * try-with-resources, once the thread is done with the connection.
+     * @return the thread's lease, the same one again if the thread already holds a lease
+     * @throws SQLException Throws an exception if a connection cannot be opened, or none is given back in time
+     */
+    public Lease lease() throws SQLException {
+        Lease lease = held.get();
+        if (lease == null) {
+            lease = acquire();
+            held.set(lease);
+        }
+        lease.depth++;
+        return lease;
+    }
+
+    /**
+     * Takes an idle connection, opens a new one if the pool is not full, or waits for one to be given back
+     * @return the lease of a connection no other thread holds
+     * @throws SQLException Throws an exception if a connection cannot be opened, or none is given back in time
+     */
+    private synchronized Lease acquire() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (idle.isEmpty() && all.size() >= size) {
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (closed || waitMillis <= 0) {
+                throw new SQLException(closed ? "The connection pool has been closed"
+                        : "Timed out waiting for a database connection");
+            }
+            try {
+                wait(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            }
+        }
+        if (closed) {
+            throw new SQLException("The connection pool has been closed");
+        }
+
+        if (!idle.isEmpty()) {
+            return idle.pollFirst();
+        }
+        Lease lease = new Lease(opener.open());
+        all.add(lease);
+        return lease;
+    }
+
+    /**
+     * Gives a connection back to the pool once its holder has closed every lease. A transaction left open by
+     * mistake is rolled back, so that the next thread to lease the connection starts clean.
+     * @param lease The lease being given back
+     */
+    private void release(Lease lease) {
+        held.remove();
+        try {
+            if (!lease.connection.getAutoCommit()) {
+                lease.connection.rollback();
+                lease.connection.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+
+        synchronized (this) {
+            idle.addFirst(lease); // The most recently used connection has the warmest statement cache
+            notify();
+        }
+    }
+
+    /**
+     * Closes every connection the pool has opened. Connections that are still leased are closed as well.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Lease lease : all) {
+            try {
+                lease.connection.close();
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }
+        all.clear();
+        idle.clear();
+        notifyAll();
+    }
+}
@@ -1,72 +1,106 @@
 package ServerSide;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.Properties;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Taken from CAB302 prac 7 and modified to make it easier for setup of the application with a different server
  */
 public class DBConnection {
 
+    private static int TIMEOUT = 1000;
+
+    // Set once the first connection has been opened, so the server reports being connected once rather than once
+    // for every connection in the pool
+    private static final AtomicBoolean connected = new AtomicBoolean(false);
+
     /**
-     * The singleton instance of the database connection.
+     * The SQLite pragmas that can be set from ServerSettings.props: the pragma, the setting it is read from and a
+     * pattern the setting must match, as the value is written into the pragma. The busy timeout is set first so that
+     * changing the journal mode waits for other connections rather than failing.
      */
-    private static Connection instance = null;
-    private static int TIMEOUT = 1000;
+    private static final String[][] PRAGMAS = {
+            {"busy_timeout", "sqliteBusyTimeoutMillis", "\\d+"},
+            {"journal_mode", "sqliteJournalMode", "(?i)DELETE|TRUNCATE|PERSIST|MEMORY|WAL|OFF"},
+            {"synchronous", "sqliteSynchronous", "(?i)OFF|NORMAL|FULL|EXTRA|[0-3]"},
+            {"cache_size", "sqliteCacheSize", "-?\\d+"},
+            {"mmap_size", "sqliteMmapSize", "\\d+"},
+    };
 
     /**
-     * Constructor initializes the connection.
+     * Static access only.
      */
-    private DBConnection() {
-        try {
-            Properties props = new Properties();
-            InputStream inputStream = this.getClass().getResourceAsStream("ServerSettings.props");
-            //InputStream inputStream = new FileInputStream("ServerSettings.props");
+    private DBConnection() {}
 
-            props.load(inputStream);
-            inputStream.close();
+    /**
+     * Opens a new connection to the database described in ServerSettings.props, with the SQLite settings from that
+     * file applied. Every connection in the server's connection pool is opened this way. The settings are read
+     * through ServerSettings, which only loads the file once.
+     * @return the new connection
+     * @throws SQLException Throws an exception if the database cannot be connected to
+     */
+    public static Connection open() throws SQLException {
+        // Get the server information from the Server Settings txt file
+        // specify the data source, username and password
+        String subprotocol = ServerSettings.get("databaseProtocol", "");
+        String username = ServerSettings.get("username", "");
+        String password = ServerSettings.get("password", "");
+        String schema = ServerSettings.get("schema", "");
 
-            // Get the server information from the Server Settings txt file
-            // specify the data source, username and password
-            String subprotocol = props.getProperty("databaseProtocol");
-            String url = props.getProperty("host");
-            String port = props.getProperty("port");
-            String username = props.getProperty("username");
-            String password = props.getProperty("password");
-            String schema = props.getProperty("schema");
+        //Class.forName("org.sqlite.JDBC");
 
-            //Class.forName("org.sqlite.JDBC");
+        // get a connection
+        Connection connection = DriverManager.getConnection("jdbc:" + subprotocol + ":"+ schema + ".db", username,
+                password);
+        if (connection.isValid(TIMEOUT) && connected.compareAndSet(false, true)) {
+            System.out.println(subprotocol + " database connected on " + ServerSettings.get("host", "") + ":"
+                    + ServerSettings.get("port", ""));
+        }
+        if ("sqlite".equalsIgnoreCase(subprotocol)) {
+            configure(connection);
+        }
+        return connection;
+    }
 
-            // get a connection
-            instance = DriverManager.getConnection("jdbc:" + subprotocol + ":"+ schema + ".db", username,
-                    password);
-            if (instance.isValid(TIMEOUT)) {
-                System.out.println(subprotocol + " database connected on " + url + ":" + port);
+    /**
+     * Applies the SQLite settings from ServerSettings.props to a new connection. Settings left empty keep SQLite's
+     * defaults, as do settings that are not valid.
+     * @param connection The new connection
+     * @throws SQLException Throws an exception if a setting cannot be applied
+     */
+    private static void configure(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            for (String[] pragma : PRAGMAS) {
+                String value = ServerSettings.get(pragma[1], "");
+                if (value.isEmpty()) {
+                    continue;
+                }
+                String sql = getPragma(pragma[0], value);
+                if (sql == null) {
+                    System.out.printf("Setting %s=%s is not valid, using SQLite's default\n", pragma[1], value);
+                    continue;
+                }
+                st.execute(sql);
             }
-        } catch (SQLException sqle) {
-            System.err.println(sqle);
-        } catch (FileNotFoundException fnfe) {
-            System.err.println(fnfe);
-        } catch (IOException ex) {
-            ex.printStackTrace();
         }
     }
 
     /**
-     * Provides global access to the singleton instance of the UrlSet.
-     *
-     * @return a handle to the singleton instance of the UrlSet.
+     * Getter for the statement that sets a SQLite pragma, checking the value first since it is written into the
+     * statement
+     * @param pragma The name of the pragma, one of those that can be set from ServerSettings.props
+     * @param value The value to set it to
+     * @return the PRAGMA statement, or null if the pragma cannot be set or the value is not valid for it
      */
-    public static Connection getInstance() {
-        if (instance == null) {
-            new DBConnection();
+    public static String getPragma(String pragma, String value) {
+        for (String[] known : PRAGMAS) {
+            if (known[0].equals(pragma)) {
+                return value.matches(known[2]) ? "PRAGMA " + pragma + "=" + value : null;
+            }
         }
-        return instance;
+        return null;
     }
 }
@@ -0,0 +1,201 @@
+package ServerSide;
+
+import ClientSide.Order;
+
+import java.util.Arrays;
+
+/**
+ * The fills produced by entering one order into a PrimitiveOrderBook. The incoming (taker) order is recorded once
+ * and each resting (maker) order it traded against gets one entry. The buffer is reset and refilled by every call
+ * to PrimitiveOrderBook.add, and its arrays only grow when an order fills against more resting orders than ever
+ * before, so reusing the same buffer means matching allocates nothing.
+ */
+public class FillBuffer {
+    private int assetID;
+    private int takerID;
+    private int takerUnit;
+    private boolean takerIsBuy;
+    private Order.Type takerType;
+    private int takerRemaining;
+
+    private int size;
+    private int[] makerIDs;
+    private int[] makerUnits;
+    private int[] makerRemaining;
+    private int[] quantities;
+    private int[] prices;
+
+    /**
+     * Constructor for an empty buffer.
+     * @param capacity The number of fills that can be held before the buffer has to grow
+     */
+    public FillBuffer(int capacity) {
+        capacity = Math.max(capacity, 1);
+        makerIDs = new int[capacity];
+        makerUnits = new int[capacity];
+        makerRemaining = new int[capacity];
+        quantities = new int[capacity];
+        prices = new int[capacity];
+    }
+
+    /**
+     * Clears the buffer ready for a new incoming order
+     * @param assetID The asset being traded
+     * @param takerID The ID of the incoming order
+     * @param takerUnit The unit ID of the incoming order
+     * @param takerIsBuy True if the incoming order is a buy
+     * @param takerQty The quantity of the incoming order
+     * @param takerType How the incoming order is matched
+     */
+    void reset(int assetID, int takerID, int takerUnit, boolean takerIsBuy, int takerQty, Order.Type takerType) {
+        this.assetID = assetID;
+        this.takerID = takerID;
+        this.takerUnit = takerUnit;
+        this.takerIsBuy = takerIsBuy;
+        this.takerType = takerType;
+        this.takerRemaining = takerQty;
+        this.size = 0;
+    }
+
+    /**
+     * Records a fill against a resting order and reduces the incoming order's remaining quantity
+     * @param makerID The ID of the resting order
+     * @param makerUnit The unit ID of the resting order
+     * @param remaining The quantity of the resting order left after the fill
+     * @param qty The quantity traded
+     * @param price The price the fill executed at
+     */
+    void add(int makerID, int makerUnit, int remaining, int qty, int price) {
+        if (size == makerIDs.length) {
+            grow();
+        }
+        makerIDs[size] = makerID;
+        makerUnits[size] = makerUnit;
+        makerRemaining[size] = remaining;
+        quantities[size] = qty;
+        prices[size] = price;
+        takerRemaining -= qty;
+        size++;
+    }
+
+    /**
+     * Doubles the size of every array, keeping the fills recorded so far
+     */
+    private void grow() {
+        int capacity = makerIDs.length * 2;
+        makerIDs = Arrays.copyOf(makerIDs, capacity);
+        makerUnits = Arrays.copyOf(makerUnits, capacity);
+        makerRemaining = Arrays.copyOf(makerRemaining, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+    }
+
+    /**
+     * Getter for the number of fills in the buffer
+     * @return the number of fills
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if the incoming order traded at all
+     * @return true if there are no fills
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Getter for the asset that was traded
+     * @return the asset ID
+     */
+    public int getAssetID() {
+        return assetID;
+    }
+
+    /**
+     * Getter for the ID of the incoming order
+     * @return the order ID
+     */
+    public int getTakerID() {
+        return takerID;
+    }
+
+    /**
+     * Getter for the unit that placed the incoming order
+     * @return the unit ID
+     */
+    public int getTakerUnit() {
+        return takerUnit;
+    }
+
+    /**
+     * Getter for the side of the incoming order
+     * @return true if the incoming order is a buy
+     */
+    public boolean isTakerBuy() {
+        return takerIsBuy;
+    }
+
+    /**
+     * Getter for how the incoming order was matched
+     * @return the order type
+     */
+    public Order.Type getTakerType() {
+        return takerType;
+    }
+
+    /**
+     * Getter for the quantity of the incoming order that was not filled
+     * @return the remaining quantity, 0 if the order was completely filled
+     */
+    public int getTakerRemaining() {
+        return takerRemaining;
+    }
+
+    /**
+     * Getter for the resting order of a fill
+     * @param fill The index of the fill
+     * @return the order ID
+     */
+    public int getMakerID(int fill) {
+        return makerIDs[fill];
+    }
+
+    /**
+     * Getter for the unit that placed the resting order of a fill
+     * @param fill The index of the fill
+     * @return the unit ID
+     */
+    public int getMakerUnit(int fill) {
+        return makerUnits[fill];
+    }
+
+    /**
+     * Getter for the quantity of the resting order left after a fill
+     * @param fill The index of the fill
+     * @return the remaining quantity, 0 if the resting order was completely filled
+     */
+    public int getMakerRemaining(int fill) {
+        return makerRemaining[fill];
+    }
+
+    /**
+     * Getter for the quantity traded in a fill
+     * @param fill The index of the fill
+     * @return the quantity
+     */
+    public int getQty(int fill) {
+        return quantities[fill];
+    }
+
+    /**
+     * Getter for the price of a fill
+     * @param fill The index of the fill
+     * @return the price per unit of the asset
+     */
+    public int getPrice(int fill) {
+        return prices[fill];
+    }
+}
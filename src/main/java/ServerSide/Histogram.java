@@ -0,0 +1,143 @@
+package ServerSide;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts non-negative values, such as latencies in nanoseconds, in buckets that are never more than 1/16th wider
+ * than their lower bound. Any percentile can be read back to within about 6% using a fixed amount of memory however
+ * many values are recorded. Recording takes no locks, so any number of threads can record into the same histogram
+ * while others read it. Values recorded while a histogram is being read may or may not be included.
+ */
+public class Histogram {
+    private static final int SUB_BUCKETS = 16;
+    private static final int BUCKETS = SUB_BUCKETS * 61; // Enough for every non-negative long
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Method used to count a value
+     * @param value The value, negative values are counted as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Getter for the number of values counted
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Getter for the largest value counted
+     * @return the maximum, 0 if nothing has been counted
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Getter for the average of the values counted
+     * @return the mean, 0 if nothing has been counted
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    /**
+     * Getter for a percentile
+     * @param fraction The percentile as a fraction, e.g. 0.99 for the 99th percentile
+     * @return the value that the fraction of values were at or below, 0 if nothing has been counted
+     */
+    public long getPercentile(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(getMax(), highest(i));
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Method used to forget every value counted so far. Values recorded at the same time may be partly forgotten.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * Summarises the histogram in a chosen unit
+     * @param scale The number of recorded units in one unit of the summary, e.g. 1000 to show nanoseconds as
+     *              microseconds
+     * @param unit The name of the summary's unit
+     * @return the count, mean, percentiles and maximum
+     */
+    public String summary(long scale, String unit) {
+        long n = getCount();
+        if (n == 0) {
+            return "none";
+        }
+        return String.format("%d samples, mean %.1f %s, p50 %d %s, p90 %d %s, p99 %d %s, p99.9 %d %s, max %d %s",
+                n, getMean() / scale, unit, getPercentile(0.5) / scale, unit, getPercentile(0.9) / scale, unit,
+                getPercentile(0.99) / scale, unit, getPercentile(0.999) / scale, unit, getMax() / scale, unit);
+    }
+
+    /**
+     * Getter for the bucket a value is counted in
+     * @param value The value
+     * @return the bucket index
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 4; // Leaves the top 5 bits, the first always 1
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Getter for the highest value counted in a bucket
+     * @param bucket The bucket index
+     * @return the value
+     */
+    private static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long first = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return first + (1L << shift) - 1;
+    }
+}
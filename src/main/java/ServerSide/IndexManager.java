@@ -0,0 +1,147 @@
+package ServerSide;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the secondary indexes the server's queries rely on. At start up every index is created if it is missing and
+ * checked against its definition, so an index left behind with other columns by an older version of the app is
+ * rebuilt. Query plans can be read back with SQLite's EXPLAIN QUERY PLAN to confirm a query is answered from an index
+ * alone rather than scanning or looking up rows in its table.
+ */
+public class IndexManager {
+
+    /**
+     * A secondary index on one table
+     */
+    public static class Index {
+        public final String name;
+        public final String table;
+        public final List<String> columns;
+
+        /**
+         * Constructor for an index definition
+         * @param name The name of the index
+         * @param table The table the index is on
+         * @param columns The indexed columns, in order
+         */
+        public Index(String name, String table, String... columns) {
+            this.name = name;
+            this.table = table;
+            this.columns = List.of(columns);
+        }
+
+        /**
+         * Getter for the statement that creates the index
+         * @return the CREATE INDEX statement
+         */
+        public String getCreateSql() {
+            return String.format("CREATE INDEX IF NOT EXISTS %s ON %s(%s)", name, table, String.join(", ", columns));
+        }
+    }
+
+    /**
+     * The indexes the server expects. Orders and history are looked up by unit or by asset and read in date order,
+     * so the date follows the column searched on and the rows come back already sorted. The remaining columns are
+     * the ones the queries select, which makes each index covering: the query is answered from the index alone
+     * without looking up each row in its table. The order ID is the table's rowid and is in every index already.
+     */
+    public static final Index[] INDEXES = {
+            new Index("orders_unit", "orders", "orgunit", "date", "assetID", "type", "qty", "price"),
+            new Index("orders_asset", "orders", "assetID", "date", "orgunit", "type", "qty", "price"),
+            new Index("history_unit", "history", "orgunit", "date", "assetID", "type", "qty", "price"),
+            new Index("history_asset", "history", "assetID", "type", "date", "price"), // Sell side price history
+            new Index("unit_holdings_asset", "unit_holdings", "assetID"), // Units holding an asset
+    };
+
+    /**
+     * Static access only.
+     */
+    private IndexManager() {}
+
+    /**
+     * Method used to create every index that is missing and rebuild any whose columns do not match its definition
+     * @param connection The database connection, with the tables already created
+     * @return the number of indexes that were created or rebuilt
+     * @throws SQLException if an index cannot be read or created
+     */
+    public static int ensure(Connection connection) throws SQLException {
+        int built = 0;
+        try (Statement st = connection.createStatement()) {
+            for (Index index : INDEXES) {
+                List<String> columns = getColumns(connection, index.name);
+                if (columns.equals(index.columns)) {
+                    continue;
+                }
+                if (!columns.isEmpty()) {
+                    System.out.printf("Rebuilding index %s on %s\n", index.name, index.columns);
+                    st.execute("DROP INDEX " + index.name);
+                }
+                st.execute(index.getCreateSql());
+                built++;
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Getter for the columns of an index in the database
+     * @param connection The database connection
+     * @param name The name of the index
+     * @return the indexed columns in order, empty if there is no such index
+     * @throws SQLException if the index cannot be read
+     */
+    public static List<String> getColumns(Connection connection, String name) throws SQLException {
+        ArrayList<String> columns = new ArrayList<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA index_info(" + name + ")")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name"));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Method used to read how SQLite would run a query. Parameters are left unbound, which does not change the plan.
+     * @param connection The database connection
+     * @param sql The query
+     * @return a line for each step of the plan, e.g. "SEARCH orders USING INDEX orders_unit (orgunit=?)"
+     * @throws SQLException if the query cannot be planned
+     */
+    public static List<String> explain(Connection connection, String sql) throws SQLException {
+        ArrayList<String> plan = new ArrayList<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("EXPLAIN QUERY PLAN " + sql)) {
+            while (rs.next()) {
+                plan.add(rs.getString("detail"));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Check if a query is answered from a given index alone, without reading rows from the index's table
+     * @param connection The database connection
+     * @param sql The query
+     * @param indexName The index that should cover the query
+     * @return true if some step of the query's plan uses the index as a covering index
+     * @throws SQLException if the query cannot be planned
+     */
+    public static boolean covers(Connection connection, String sql, String indexName) throws SQLException {
+        for (String step : explain(connection, sql)) {
+            // A covering step reads "... USING COVERING INDEX name (...)"
+            List<String> words = Arrays.asList(step.split("[ ()]"));
+            int at = words.indexOf(indexName);
+            if (at >= 2 && words.get(at - 2).equals("COVERING")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,99 @@
+package ServerSide;
+
+import ClientSide.Order;
+
+/**
+ * Measurements of the matcher, recorded as orders pass through it. Every time is in nanoseconds.
+ * <ul>
+ *     <li>Entry to fill: from an order being placed through NetworkConnection.addOrder until the trades it caused
+ *     have been settled, for orders that trade as soon as they reach the matcher</li>
+ *     <li>Match time: how long an order book took to match one order, not counting settlement</li>
+ *     <li>Cycle time: how long the reconciliation thread took to handle one batch of placed and cancelled orders,
+ *     either one poll of the orders table or one drain of the sequencer</li>
+ *     <li>Orders per cycle: how many placed and cancelled orders were in each batch</li>
+ * </ul>
+ * The histograms can be read at any time while the matcher is running.
+ */
+public class MatcherMetrics {
+    private final Histogram entryToFill = new Histogram();
+    private final Histogram matchTime = new Histogram();
+    private final Histogram cycleTime = new Histogram();
+    private final Histogram ordersPerCycle = new Histogram();
+
+    /**
+     * Getter for the time from orders being placed until their trades were settled
+     * @return the histogram, in nanoseconds
+     */
+    public Histogram getEntryToFill() {
+        return entryToFill;
+    }
+
+    /**
+     * Getter for the time taken to match each order
+     * @return the histogram, in nanoseconds
+     */
+    public Histogram getMatchTime() {
+        return matchTime;
+    }
+
+    /**
+     * Getter for the time taken by each reconciliation cycle
+     * @return the histogram, in nanoseconds
+     */
+    public Histogram getCycleTime() {
+        return cycleTime;
+    }
+
+    /**
+     * Getter for the number of placed and cancelled orders in each reconciliation cycle
+     * @return the histogram of order counts
+     */
+    public Histogram getOrdersPerCycle() {
+        return ordersPerCycle;
+    }
+
+    /**
+     * Method used to record an order that has been matched and had its trades settled
+     * @param order The incoming order
+     * @param matchNanos How long the order book took to match the order
+     * @param filled True if the order traded
+     */
+    void recordMatch(Order order, long matchNanos, boolean filled) {
+        matchTime.record(matchNanos);
+        if (filled && order.placedNanos != 0) {
+            entryToFill.record(System.nanoTime() - order.placedNanos);
+        }
+    }
+
+    /**
+     * Method used to record a reconciliation cycle
+     * @param nanos How long the cycle took
+     * @param orders The number of placed and cancelled orders handled
+     */
+    void recordCycle(long nanos, int orders) {
+        cycleTime.record(nanos);
+        ordersPerCycle.record(orders);
+    }
+
+    /**
+     * Method used to forget everything recorded so far, e.g. once the server has warmed up
+     */
+    public void reset() {
+        entryToFill.reset();
+        matchTime.reset();
+        cycleTime.reset();
+        ordersPerCycle.reset();
+    }
+
+    /**
+     * Summarises every measurement, with times in microseconds
+     * @return one line per measurement
+     */
+    @Override
+    public String toString() {
+        return "Entry to fill: " + entryToFill.summary(1000, "us") + "\n"
+                + "Match time: " + matchTime.summary(1000, "us") + "\n"
+                + "Cycle time: " + cycleTime.summary(1000, "us") + "\n"
+                + "Orders per cycle: " + ordersPerCycle.summary(1, "orders");
+    }
+}
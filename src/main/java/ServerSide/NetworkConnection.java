@@ -5,9 +5,12 @@ import ClientSide.Exceptions.*;
 import common.DatabaseSource;
 
 import java.sql.*;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The core SQL commands to construct the database and where
@@ -17,7 +20,12 @@ import java.util.*;
 public class NetworkConnection implements DatabaseSource {
     // Network Connection ----------------------------------------------------------------------------------------------
     public EstablishConnection server;
-    public DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // Sequencer that placed and cancelled orders are handed to when trades are reconciled as orders arrive
+    private volatile OrderSequencer sequencer = null;
+
+    // Balances and reservations that placed orders are checked against
+    private final RiskLedger risk = new RiskLedger(new LedgerLoader());
 
     // SQL Statements --------------------------------------------------------------------------------------------------
     /**
@@ -37,10 +45,11 @@ public class NetworkConnection implements DatabaseSource {
                     + " orderID INTEGER PRIMARY KEY AUTOINCREMENT,"
                     + " type VARCHAR(30),"
                     + " orgunit VARCHAR(30),"
-                    + " assetID VARCHAR(30),"
+                    + " assetID INTEGER,"
                     + " qty INTEGER,"
                     + " price INTEGER,"
-                    + " date VARCHAR(19)" + " );";
+                    + " date INTEGER,"
+                    + " expiry INTEGER" + " );"; // Dates are milliseconds since the epoch
 
     public static final String CREATE_ORDER_HISTORY_TABLE =
             "CREATE TABLE IF NOT EXISTS history( "
@@ -50,27 +59,43 @@ public class NetworkConnection implements DatabaseSource {
                     + " assetID INTEGER,"
                     + " qty INTEGER,"
                     + " price INTEGER,"
-                    + " date VARCHAR(19)" + " );"; // Used to track the trade that was used to fulfill the order
+                    + " date INTEGER" + " );"; // Used to track the trade that was used to fulfill the order
+
+    public static final String CREATE_UNITS_TABLE =
+            "CREATE TABLE IF NOT EXISTS units( "
+                    + " unitname VARCHAR(30) PRIMARY KEY NOT NULL,"
+                    + " credits INTEGER NOT NULL" + " );";
+
+    public static final String CREATE_UNIT_HOLDINGS_TABLE =
+            "CREATE TABLE IF NOT EXISTS unit_holdings( "
+                    + " unitname VARCHAR(30) NOT NULL,"
+                    + " assetID INTEGER NOT NULL,"
+                    + " assetqty INTEGER NOT NULL,"
+                    + " PRIMARY KEY (unitname, assetID)" + " ) WITHOUT ROWID;"; // One row per asset a unit holds
+
+    public static final String CREATE_CANCELLATIONS_TABLE =
+            "CREATE TABLE IF NOT EXISTS cancellations( "
+                    + " cancelID INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " orderID INTEGER NOT NULL,"
+                    + " assetID INTEGER" + " );"; // Feed of cancelled orders for the matcher to catch up on
+
+    public static final String CREATE_JOURNAL_SETTLED_TABLE =
+            "CREATE TABLE IF NOT EXISTS journal_settled( "
+                    + " assetID INTEGER PRIMARY KEY NOT NULL,"
+                    + " sequence INTEGER NOT NULL" + " );"; // Newest journal record settled for each asset
 
     public static final String CREATE_ASSETS_TABLE =
             "CREATE TABLE IF NOT EXISTS assets( "
                     + " assetID INTEGER PRIMARY KEY NOT NULL UNIQUE,"
                     + " desc VARCHAR(250) NOT NULL UNIQUE" + " );"; // Needed for search
 
-    public static final String CREATE_ORGUNITS_TABLE =
-            "CREATE TABLE IF NOT EXISTS orgunits( "
-                    + " rowID INTEGER PRIMARY KEY /*!40101 AUTO_INCREMENT */ NOT NULL UNIQUE,"
-                    + " unitname VARCHAR(30) NOT NULL,"
-                    + " credits INTEGER NOT NULL,"
-                    + " assetID VARCHAR(10),"
-                    + " assetqty INTEGER" + " );";
-
     // WARNING RESETS TABLES
     private static final String CLEAR_USER_TABLE = "DELETE FROM main.users";
     private static final String CLEAR_ORDERS_TABLE = "DELETE FROM main.orders";
     private static final String CLEAR_HISTORY_TABLE = "DELETE FROM main.history";
     private static final String CLEAR_ASSETS_TABLE = "DELETE FROM main.assets";
-    private static final String CLEAR_ORGUNITS_TABLE = "DELETE FROM main.orgunits";
+    private static final String CLEAR_UNITS_TABLE = "DELETE FROM main.units";
+    private static final String CLEAR_HOLDINGS_TABLE = "DELETE FROM main.unit_holdings";
 
     // Users table generic sql statements
     private static final String GET_ALL_USERS = "SELECT * FROM main.users;";
@@ -84,16 +109,21 @@ public class NetworkConnection implements DatabaseSource {
     private static final String GET_ALL_USERNAMES = "SELECT username FROM main.users;"; // to check if name is taken
 
     // Unit table generic sql statements
-    private static final String GET_ALL_UNITS = "SELECT * FROM main.orgunits";
-    private static final String GET_UNIT = "SELECT * FROM main.orgunits WHERE unitname=?";
-    private static final String INSERT_UNIT = "INSERT INTO main.orgunits (unitname, credits) VALUES (?, ?);";
-    private static final String ADJUST_BALANCE = "UPDATE main.orgunits SET credits=? WHERE unitname=?;";
-    private static final String ADJUST_QUANTITY = "UPDATE main.orgunits SET assetqty=? WHERE unitname=? AND assetID=?;";
-    private static final String REMOVE_UNIT = "DELETE FROM main.orgunits WHERE unitname=?";
-    private static final String ADD_ASSET_TO_UNIT = "INSERT INTO main.orgunits (unitname, credits, assetID, assetqty) VALUES (?, ?, ?, ?);";
-    private static final String REMOVE_ASSET_FROM_UNIT = "DELETE FROM main.orgunits WHERE unitname=? AND assetID=?";
-    private static final String GET_ASSETS_FROM_UNIT = "SELECT * FROM main.orgunits WHERE unitname=?";
-    private static final String GET_ALL_UNITNAMES = "SELECT unitname FROM main.orgunits"; // to check if name is taken
+    private static final String GET_ALL_UNITS = "SELECT u.unitname, u.credits, h.assetID, h.assetqty, a.desc "
+            + "FROM main.units u LEFT JOIN main.unit_holdings h ON h.unitname=u.unitname "
+            + "LEFT JOIN main.assets a ON a.assetID=h.assetID ORDER BY u.unitname, h.assetID"; // A row per holding
+    private static final String GET_UNIT = "SELECT * FROM main.units WHERE unitname=?";
+    private static final String INSERT_UNIT = "INSERT INTO main.units (unitname, credits) VALUES (?, ?);";
+    private static final String ADJUST_BALANCE = "UPDATE main.units SET credits=? WHERE unitname=?;";
+    private static final String ADJUST_QUANTITY = "UPDATE main.unit_holdings SET assetqty=? WHERE unitname=? AND assetID=?;";
+    private static final String CHANGE_BALANCE = "UPDATE main.units SET credits=credits+? WHERE unitname=?;";
+    private static final String CHANGE_QUANTITY = "UPDATE main.unit_holdings SET assetqty=assetqty+? WHERE unitname=? AND assetID=?;";
+    private static final String REMOVE_UNIT = "DELETE FROM main.units WHERE unitname=?";
+    private static final String REMOVE_UNIT_HOLDINGS = "DELETE FROM main.unit_holdings WHERE unitname=?";
+    private static final String ADD_ASSET_TO_UNIT = "INSERT INTO main.unit_holdings (unitname, assetID, assetqty) VALUES (?, ?, ?);";
+    private static final String REMOVE_ASSET_FROM_UNIT = "DELETE FROM main.unit_holdings WHERE unitname=? AND assetID=?";
+    private static final String GET_ASSETS_FROM_UNIT = "SELECT h.assetID, h.assetqty, a.desc FROM main.unit_holdings h "
+            + "JOIN main.assets a ON a.assetID=h.assetID WHERE h.unitname=?";
 
     // Asset table generic sql statements
     private static final String GET_ALL_ASSET_DESC = "SELECT desc FROM main.assets";
@@ -103,150 +133,67 @@ public class NetworkConnection implements DatabaseSource {
     private static final String REMOVE_ASSET = "DELETE FROM main.assets WHERE assetID=?";
     private static final String UPDATE_ASSET = "UPDATE main.assets SET desc=? WHERE assetID=?";
     private static final String GET_ALL_ASSET_IDS = "SELECT assetID FROM main.assets"; // to check if name is taken
-    private static final String REMOVE_ASSET_FROM_ALL_UNIT = "DELETE FROM main.orgunits WHERE assetID=?";
+    private static final String REMOVE_ASSET_FROM_ALL_UNIT = "DELETE FROM main.unit_holdings WHERE assetID=?";
 
     // Order table generic sql statements
-    private static final String INSERT_ORDER = "INSERT INTO main.orders (orderID, type, orgunit, assetID, qty, price, date) values (?,?,?,?,?,?,?)";
+    private static final String INSERT_ORDER = "INSERT INTO main.orders (orderID, type, orgunit, assetID, qty, price, date, expiry) values (?,?,?,?,?,?,?,?)";
+    private static final String GET_LAST_ORDER_ID = "SELECT last_insert_rowid()";
     private static final String REMOVE_ORDER = "DELETE FROM main.orders WHERE orderID=?";
+    private static final String UPDATE_ORDER_QTY = "UPDATE main.orders SET qty=? WHERE orderID=?";
     private static final String GET_ORDERS = "SELECT * FROM main.orders";
-    private static final String GET_UNIT_ORDERS = "SELECT * FROM main.orders WHERE orgunit=?";
-    private static final String GET_ASSET_ORDERS = "SELECT * FROM main.orders WHERE assetID=?";
+    private static final String GET_ORDERS_SINCE = "SELECT * FROM main.orders WHERE orderID>? ORDER BY orderID";
+    private static final String GET_UNIT_ORDERS = "SELECT orderID, assetID, type, qty, price, date FROM main.orders WHERE orgunit=? ORDER BY date";
+
+    // Cancellation feed generic sql statements
+    private static final String INSERT_CANCELLATION = "INSERT INTO main.cancellations (orderID, assetID) VALUES (?, ?)";
+    private static final String GET_CANCELLATIONS_SINCE = "SELECT * FROM main.cancellations WHERE cancelID>? ORDER BY cancelID";
+    private static final String CLEAR_CANCELLATIONS = "DELETE FROM main.cancellations WHERE cancelID<=?";
+    private static final String GET_ASSET_ORDERS = "SELECT orderID, orgunit, type, qty, price, date FROM main.orders WHERE assetID=? ORDER BY date";
+
+    // Order journal generic sql statements
+    private static final String SET_JOURNAL_SETTLED = "INSERT OR REPLACE INTO main.journal_settled (assetID, sequence) VALUES (?, ?)";
+    private static final String GET_JOURNAL_SETTLED = "SELECT * FROM main.journal_settled";
 
     // Order history generic sql statements
     private static final String INSERT_ORDER_HISTORY = "INSERT INTO main.history (orderID, type, orgunit, assetID, qty, price, date) values (?,?,?,?,?,?,?)";
-    private static final String GET_ORDER_HISTORY = "SELECT * FROM main.orders WHERE assetID=?";
-    private static final String GET_UNIT_ORDER_HISTORY = "SELECT * FROM main.history WHERE orgunit=?";
+    private static final String INSERT_FILL_HISTORY = "INSERT INTO main.history (type, orgunit, assetID, qty, price, date) values (?,?,?,?,?,?)";
+    private static final String GET_ORDER_HISTORY = "SELECT price FROM main.history WHERE assetID=? AND type='false' ORDER BY date DESC";
+    private static final String GET_UNIT_ORDER_HISTORY = "SELECT orderID, assetID, type, qty, price, date FROM main.history WHERE orgunit=? ORDER BY date";
+
+    // The index each query filtering orders or history should search, checked at start up
+    private static final String[][] INDEXED_QUERIES = {
+            {GET_UNIT_ORDERS, "orders_unit"},
+            {GET_ASSET_ORDERS, "orders_asset"},
+            {GET_ORDER_HISTORY, "history_asset"},
+            {GET_UNIT_ORDER_HISTORY, "history_unit"},
+    };
     private static final String REMOVE_ORDER_HISTORY = "";
 
-    // Prepared Statements ---------------------------------------------------------------------------------------------
+    // Connection Pool -----------------------------------------------------------------------------------------------
     /**
-    * These are the statements that will be sent over the network stream to interact with the DB.
-    * These prepared statements will get passed the provided objects parameters to form the final SQL statement.
+    * The statements above are prepared on whichever pooled connection the calling thread has leased, so each thread
+    * passes its parameters to its own copy of a statement. The pool size is read from ServerSettings.props.
     */
-    private Connection connection;
-
-    // RESET TABLES
-    private PreparedStatement clearUsersTable;
-    private PreparedStatement clearOrdersTable;
-    private PreparedStatement clearHistoryTable;
-    private PreparedStatement clearAssetsTable;
-    private PreparedStatement clearUnitsTable;
-
-    // User prepared statements
-    private PreparedStatement getAllUsers;
-    private PreparedStatement getUser;
-    private PreparedStatement addUser;
-    private PreparedStatement removeUser;
-    private PreparedStatement updateUserUnit;
-    private PreparedStatement removeUserUnit;
-    private PreparedStatement updateUserPassword;
-    private PreparedStatement updateUserAccess;
-    private PreparedStatement getAllUsernames;
-
-    // Unit prepared statements
-    private PreparedStatement getAllUnits;
-    private PreparedStatement getUnit;
-    private PreparedStatement addUnit;
-    private PreparedStatement adjustBalance;
-    private PreparedStatement adjustQuantity;
-    private PreparedStatement removeUnit;
-    private PreparedStatement removeAssetFromUnit;
-    private PreparedStatement addAssetToUnit;
-    private PreparedStatement getAllUnitNames;
-
-    // Asset prepared statements
-    private PreparedStatement getAllAssetDesc;
-    private PreparedStatement getAllAssets;
-    private PreparedStatement getAsset;
-    private PreparedStatement addAsset;
-    private PreparedStatement removeAsset;
-    private PreparedStatement updateAsset;
-    private PreparedStatement getUnitAssets;
-    private PreparedStatement getAllAssetID;
-    private PreparedStatement removeAssetFromAllUnits;
-
-    // Order prepared statements
-    private PreparedStatement addOrder;
-    private PreparedStatement removeOrder;
-    private PreparedStatement getOrders;
-    private PreparedStatement getUnitOrders;
-    private PreparedStatement getAssetOrders;
-
-    // Order history prepared statements
-    private PreparedStatement addOrderHistory;
-    private PreparedStatement getOrderHistory;
-    private PreparedStatement getUnitOrderHistory;
-    private PreparedStatement removeOrderHistory;
+    private final ConnectionPool pool = new ConnectionPool(DBConnection::open,
+            Math.max(1, ServerSettings.getInt("connectionPoolSize", 4)),
+            ServerSettings.getInt("connectionTimeoutMillis", 30_000));
 
     // Construct Database Interaction ----------------------------------------------------------------------------------
     /**
      * Constructor that:
      * -establishes the connection
-     * -assigns SQL commands to statements
+     * -creates the tables, or brings them up to date
+     * -creates the indexes and checks the queries use them
      * -adds the configured admin account
      */
     public NetworkConnection() {
         server = new EstablishConnection();
-        connection = DBConnection.getInstance();
-        try {
-            Statement st = connection.createStatement();
-
-            // Execute SQL table creation commands (checks if they exist first)
-            st.execute(CREATE_USERS_TABLE);
-            st.execute(CREATE_ORGUNITS_TABLE);
-            st.execute(CREATE_ASSETS_TABLE);
-            st.execute(CREATE_ORDERS_TABLE);
-            st.execute(CREATE_ORDER_HISTORY_TABLE);
-
-            // WARNING CLEARS DATA FROM ALL TABLES
-            clearUsersTable = connection.prepareStatement(CLEAR_USER_TABLE);
-            clearOrdersTable = connection.prepareStatement(CLEAR_ORDERS_TABLE);
-            clearHistoryTable = connection.prepareStatement(CLEAR_HISTORY_TABLE);
-            clearAssetsTable = connection.prepareStatement(CLEAR_ASSETS_TABLE);
-            clearUnitsTable = connection.prepareStatement(CLEAR_ORGUNITS_TABLE);
-
-            // Users Table: Assign SQL command with prepared statement
-            getAllUsers = connection.prepareStatement(GET_ALL_USERS);
-            getUser = connection.prepareStatement(GET_USER);
-            addUser = connection.prepareStatement(INSERT_USER);
-            removeUser = connection.prepareStatement(REMOVE_USER);
-            updateUserUnit = connection.prepareStatement(UPDATE_USER_UNIT);
-            removeUserUnit = connection.prepareStatement(REMOVE_USER_UNIT);
-            updateUserPassword = connection.prepareStatement(UPDATE_USER_PASSWORD);
-            updateUserAccess = connection.prepareStatement(UPDATE_USER_ACCESS);
-            getAllUsernames = connection.prepareStatement(GET_ALL_USERNAMES);
-
-            // Units Table: Assign SQL command with prepared statement
-            getUnit = connection.prepareStatement(GET_UNIT);
-            addUnit = connection.prepareStatement(INSERT_UNIT);
-            getAllUnits = connection.prepareStatement(GET_ALL_UNITS);
-            adjustBalance = connection.prepareStatement(ADJUST_BALANCE);
-            adjustQuantity = connection.prepareStatement(ADJUST_QUANTITY);
-            removeUnit = connection.prepareStatement(REMOVE_UNIT);
-            removeAssetFromUnit = connection.prepareStatement(REMOVE_ASSET_FROM_UNIT);
-            addAssetToUnit = connection.prepareStatement(ADD_ASSET_TO_UNIT);
-            getAllUnitNames = connection.prepareStatement(GET_ALL_UNITNAMES);
-
-            // Assets Table: Assign SQL command with prepared statement
-            getAllAssetDesc = connection.prepareStatement(GET_ALL_ASSET_DESC);
-            getAllAssets = connection.prepareStatement(GET_ALL_ASSETS);
-            getAsset = connection.prepareStatement(GET_ASSET);
-            addAsset = connection.prepareStatement(INSERT_ASSET);
-            removeAsset = connection.prepareStatement(REMOVE_ASSET);
-            updateAsset = connection.prepareStatement(UPDATE_ASSET);
-            getUnitAssets = connection.prepareStatement(GET_ASSETS_FROM_UNIT);
-            getAllAssetID = connection.prepareStatement(GET_ALL_ASSET_IDS);
-            removeAssetFromAllUnits = connection.prepareStatement(REMOVE_ASSET_FROM_ALL_UNIT);
-
-            // Orders Placed + Orders' History Tables: Assign SQL command with prepared statement
-            addOrder = connection.prepareStatement(INSERT_ORDER);
-            addOrderHistory = connection.prepareStatement(INSERT_ORDER_HISTORY);
-            getOrderHistory = connection.prepareStatement(GET_ORDER_HISTORY);
-            getUnitOrderHistory = connection.prepareStatement(GET_UNIT_ORDER_HISTORY);
-            getOrders = connection.prepareStatement(GET_ORDERS);
-            getUnitOrders = connection.prepareStatement(GET_UNIT_ORDERS);
-            getAssetOrders = connection.prepareStatement(GET_ASSET_ORDERS);
-            removeOrder = connection.prepareStatement(REMOVE_ORDER);
+        try (ConnectionPool.Lease db = pool.lease()) {
+            createTables(db.getConnection());
+            IndexManager.ensure(db.getConnection());
+            for (String query : getUnindexedQueries()) {
+                System.out.printf("WARNING query is not covered by its index: %s\n", query);
+            }
 
             // Add default user configured via the ServerSettings.props file
             String username = server.getUsername();
@@ -267,17 +214,152 @@ public class NetworkConnection implements DatabaseSource {
         }
     }
 
+    /**
+     * Method used to create the tables, or bring them up to date. A new database has every table created as it is now
+     * and starts at the newest schema version, while one created by an older version of the app has its missing tables
+     * created and is then upgraded by SchemaMigrations.
+     * @param connection The database connection
+     * @throws SQLException if a table cannot be created or upgraded
+     */
+    public static void createTables(Connection connection) throws SQLException {
+        boolean created = SchemaMigrations.isNew(connection);
+        try (Statement st = connection.createStatement()) {
+            // Execute SQL table creation commands (checks if they exist first)
+            st.execute(CREATE_USERS_TABLE);
+            st.execute(CREATE_ASSETS_TABLE);
+            st.execute(CREATE_ORDERS_TABLE);
+            st.execute(CREATE_ORDER_HISTORY_TABLE);
+            st.execute(CREATE_CANCELLATIONS_TABLE);
+            st.execute(CREATE_JOURNAL_SETTLED_TABLE);
+            if (created) {
+                // These replaced the orgunits table, which an older database still has until it is upgraded
+                st.execute(CREATE_UNITS_TABLE);
+                st.execute(CREATE_UNIT_HOLDINGS_TABLE);
+                SchemaMigrations.setVersion(connection, SchemaMigrations.getLatestVersion());
+            }
+        }
+        SchemaMigrations.migrate(connection); // Upgrade tables created by older versions
+    }
+
+    /**
+     * Method used to check that the queries filtering orders and history are answered from their covering indexes
+     * rather than scanning or looking up rows in the whole table
+     * @return the queries whose plan does not cover them with their index, empty if every query is covered
+     */
+    public ArrayList<String> getUnindexedQueries() {
+        ArrayList<String> unindexed = new ArrayList<>();
+        try (ConnectionPool.Lease db = pool.lease()) {
+            for (String[] query : INDEXED_QUERIES) {
+                if (!IndexManager.covers(db.getConnection(), query[0], query[1])) {
+                    unindexed.add(query[0]);
+                }
+            }
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+        return unindexed;
+    }
+
     // WARNING Reset tables, fresh start
     public void resetEverything() {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement clearUsersTable = db.prepare(CLEAR_USER_TABLE);
+            PreparedStatement clearOrdersTable = db.prepare(CLEAR_ORDERS_TABLE);
+            PreparedStatement clearHistoryTable = db.prepare(CLEAR_HISTORY_TABLE);
+            PreparedStatement clearAssetsTable = db.prepare(CLEAR_ASSETS_TABLE);
+            PreparedStatement clearUnitsTable = db.prepare(CLEAR_UNITS_TABLE);
+            PreparedStatement clearHoldingsTable = db.prepare(CLEAR_HOLDINGS_TABLE);
             clearUsersTable.execute();
             clearOrdersTable.execute();
             clearHistoryTable.execute();
             clearAssetsTable.execute();
             clearUnitsTable.execute();
+            clearHoldingsTable.execute();
         } catch (SQLException ex) {
             ex.printStackTrace();
         }
+        risk.clear();
+    }
+
+    /**
+     * Method used to load the users, units, assets, holdings and resting orders of a synthetic order flow into an
+     * empty database as a single transaction. Rows are inserted in batches and none of the checks made when adding
+     * one row at a time are repeated, so millions of rows can be loaded in minutes rather than days.
+     * @param flow The generator to take the rows from
+     * @return true if every row was added, false if the transaction was rolled back
+     */
+    public boolean bulkLoad(SyntheticOrderFlow flow) {
+        final int batchSize = 10_000;
+        boolean loaded = inTransaction((db, date) -> {
+            PreparedStatement addAsset = db.prepare(INSERT_ASSET);
+            PreparedStatement addUnit = db.prepare(INSERT_UNIT);
+            PreparedStatement addAssetToUnit = db.prepare(ADD_ASSET_TO_UNIT);
+            PreparedStatement addUser = db.prepare(INSERT_USER);
+            PreparedStatement addOrder = db.prepare(INSERT_ORDER, Statement.RETURN_GENERATED_KEYS);
+            for (int id = 1; id <= flow.assets; id++) {
+                addAsset.setInt(1, id);
+                addAsset.setString(2, SyntheticOrderFlow.assetDescription(id));
+                addAsset.addBatch();
+            }
+            addAsset.executeBatch();
+
+            for (int unit = 0; unit < flow.units; unit++) {
+                String unitName = SyntheticOrderFlow.unitName(unit);
+                addUnit.setString(1, unitName);
+                addUnit.setString(2, String.valueOf(SyntheticOrderFlow.CREDITS));
+                addUnit.addBatch();
+                for (int holding = 0; holding < flow.holdingsPerUnit; holding++) {
+                    addAssetToUnit.setString(1, unitName);
+                    addAssetToUnit.setInt(2, flow.holding(unit, holding));
+                    addAssetToUnit.setInt(3, SyntheticOrderFlow.HOLDING_QTY);
+                    addAssetToUnit.addBatch();
+                }
+                if (unit % batchSize == batchSize - 1) {
+                    addUnit.executeBatch();
+                    addAssetToUnit.executeBatch();
+                }
+            }
+            addUnit.executeBatch();
+            addAssetToUnit.executeBatch();
+
+            for (int user = 0; user < flow.users; user++) {
+                String username = SyntheticOrderFlow.userName(user);
+                String salt = HashPassword.generateSALT(username);
+                try {
+                    addUser.setString(2, HashPassword.hashPassword(SyntheticOrderFlow.PASSWORD, salt));
+                } catch (IllegalString ex) {
+                    throw new SQLException(ex);
+                }
+                addUser.setString(1, username);
+                addUser.setString(3, salt);
+                addUser.setString(4, flow.unitOfUser(user));
+                addUser.setString(5, String.valueOf(false));
+                addUser.addBatch();
+                if (user % batchSize == batchSize - 1) {
+                    addUser.executeBatch();
+                }
+            }
+            addUser.executeBatch();
+
+            Iterator<SyntheticOrderFlow.Step> orders = flow.restingOrders();
+            for (int count = 1; orders.hasNext(); count++) {
+                SyntheticOrderFlow.Step order = orders.next();
+                addOrder.setString(2, String.valueOf(order.isBuy));
+                addOrder.setString(3, order.unitName);
+                addOrder.setInt(4, order.assetID);
+                addOrder.setInt(5, order.qty);
+                addOrder.setInt(6, order.price);
+                addOrder.setLong(7, date);
+                addOrder.setNull(8, Types.INTEGER);
+                addOrder.addBatch();
+                if (count % batchSize == 0) {
+                    addOrder.executeBatch();
+                }
+            }
+            addOrder.executeBatch();
+        });
+        risk.clear(); // Read the loaded balances and orders the next time an order is placed
+        return loaded;
     }
 
     // User methods ----------------------------------------------------------------------------------------------------
@@ -314,7 +396,8 @@ public class NetworkConnection implements DatabaseSource {
     public User getUser(String name) throws DoesNotExist {
         User u = null;
         ResultSet rs;
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getUser = db.prepare(GET_USER);
             // Retrieve the user's data row
             getUser.setString(1, name); //replaces '?' with the field we want
             rs = getUser.executeQuery();
@@ -348,7 +431,9 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void addUser(String username, String password, boolean access) throws IllegalString, AlreadyExists {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getAllUsernames = db.prepare(GET_ALL_USERNAMES);
+            PreparedStatement addUser = db.prepare(INSERT_USER);
             String usernameLC;
 
             // Check the username is valid
@@ -396,7 +481,9 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void addUser(String username, String password, String unit, boolean access) throws IllegalString, AlreadyExists {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getAllUsernames = db.prepare(GET_ALL_USERNAMES);
+            PreparedStatement addUser = db.prepare(INSERT_USER);
             String usernameLC;
 
             // Check the username is valid
@@ -442,7 +529,8 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void removeUser(String username) {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement removeUser = db.prepare(REMOVE_USER);
             removeUser.setString(1, username.toLowerCase());
             removeUser.executeUpdate();
         } catch (SQLException ex) {
@@ -459,7 +547,8 @@ public class NetworkConnection implements DatabaseSource {
     public ArrayList<User> getAllUsers() {
         ArrayList<User> list = new ArrayList<>(); // list of all user instances
         ResultSet rs;
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getAllUsers = db.prepare(GET_ALL_USERS);
             // Retrieve all user rows & create User instances before adding to the list
             rs = getAllUsers.executeQuery();
             while (rs.next()) {
@@ -486,7 +575,8 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void changePassword(String username, String password) throws DoesNotExist, IllegalString {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement updateUserPassword = db.prepare(UPDATE_USER_PASSWORD);
             // For best practice, all usernames entering the database are converted to lowercase
             User u = getUser(username.toLowerCase());
 
@@ -510,7 +600,8 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void updateUsersUnit(String username, String unit) throws DoesNotExist {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement updateUserUnit = db.prepare(UPDATE_USER_UNIT);
             // check if unit exists in the database unit table first
             Unit u = getUnit(unit.toLowerCase());
             if (u == null) {
@@ -534,7 +625,8 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void removeUserUnit(String username) {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement removeUserUnit = db.prepare(REMOVE_USER_UNIT);
             // Update user's records (user's row)
             removeUserUnit.setString(1,username.toLowerCase());
             removeUserUnit.executeUpdate();
@@ -551,7 +643,8 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void updateUsersAccess(String username, boolean access) {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement updateUserAccess = db.prepare(UPDATE_USER_ACCESS);
             // Update user's records (user's row)
             updateUserAccess.setString(1, String.valueOf(access));
             updateUserAccess.setString(2,username.toLowerCase());
@@ -572,80 +665,122 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void addOrder(Order order) throws OrderException, DoesNotExist {
-        ArrayList<Asset> availableAssets = this.getAllAssets();
-        ArrayList <Integer> availableID = new ArrayList<>();
-
-        for (Asset asset: availableAssets) {
-            availableID.add(asset.getId());
-        }
-
-        HashMap<Asset, Integer> unitAssets = getUnitsAssets(order.unit); //order.unit.getAssets();
-        //HashMap<Asset, Integer> unitAssets = order.unit.getAssets();
-        HashMap<Integer, Integer> unitAssetIDs = new HashMap<>();
-
-        for (Asset asset : unitAssets.keySet()) {
-            unitAssetIDs.put(asset.getId(), unitAssets.get(asset));
-        }
-        System.out.println(unitAssetIDs);
-
-        String placedOn = order.datePlaced.format(formatter);
-
-        int totalPrice = order.qty * order.price;
-        int funds = order.unit.getCredits();
-
-        //System.out.println("Asset is in database: " + availableID.contains(order.asset.getId()));
-        //System.out.println("Asset in unit inventory: " + unitAssetIDs.containsKey(order.asset.getId()));
-
-        if (order.isBuy) { // IF BUY ORDER
-            if (availableID.contains(order.asset.getId())) {
-                if (totalPrice <= funds) {
-                    // Add buy order to the order queue to be reconciled
-                    try {
-                        System.out.println("Adding order to Database!");
-                        //addOrder.setInt(1, order.id);
-                        addOrder.setString(2, String.valueOf(order.isBuy));
-                        addOrder.setString(3, order.unit.getName());
-                        addOrder.setString(4, order.asset.getIdString());
-                        addOrder.setInt(5, order.qty);
-                        addOrder.setInt(6, order.price);
-                        addOrder.setString(7, placedOn);
-                        addOrder.executeUpdate();
-                    } catch (SQLException throwables) {
-                        throwables.printStackTrace();
-                    }
-                } else {
-                    System.out.println("Buy too expensive");
-                    throw new OrderException("Order price exceeds the total funds held by the users organisation!");
+        order.placedNanos = System.nanoTime();
+
+        if (order.expiry != null && (!order.isResting() || !order.expiry.isAfter(LocalDateTime.now()))) {
+            throw new OrderException("Only limit orders can expire, and only in the future!");
+        }
+        if (order.isBuy && !risk.hasAsset(order.asset.getId())) {
+            System.out.println("Asset not in database");
+            throw new DoesNotExist("Asset has not yet been added to the database!");
+        }
+        OrderSequencer sequencer = this.sequencer;
+        if (!order.isResting() && sequencer == null) {
+            throw new OrderException("Only limit orders can be placed while trades are reconciled every 6 seconds!");
+        }
+
+        // Reserve what the order could spend or sell, so the unit's other orders cannot use it as well
+        risk.reserve(order);
+        placeOrder(order, sequencer);
+    }
+
+    /**
+     * Places a validated order. If trades are being reconciled as orders arrive the order is handed to the matcher,
+     * which writes it to the database in sequence with every other order, otherwise it is written straight away.
+     * Market, immediate or cancel and fill or kill orders are never written to the orders table. They are matched
+     * as soon as they reach the matcher and this method waits until they have been, after which the order's quantity
+     * is whatever could not be filled.
+     * @param order The order that is being placed
+     * @param sequencer The sequencer orders are handed to the matcher through, null if trades are reconciled every
+     *                  6 seconds
+     * @throws OrderException Throws an exception if the order was handed to the matcher but not matched in time. The
+     *                        matcher still has the order, so it may yet be filled and its reservation is left to the
+     *                        matcher to release.
+     */
+    private void placeOrder(Order order, OrderSequencer sequencer) throws OrderException {
+        if (!order.isResting()) {
+            CountDownLatch matched = new CountDownLatch(1);
+            sequencer.publish(OrderCommand.Type.NEW, order, matched);
+            try {
+                if (!matched.await(5, TimeUnit.SECONDS)) {
+                    throw new OrderException("Timed out waiting for the order to be matched!");
                 }
-            } else {
-                System.out.println("Asset not in database");
-                throw new DoesNotExist("Asset has not yet been added to the database!");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new OrderException("Interrupted while waiting for the order to be matched", ex);
             }
-        } else { // IF SELL ORDER
-            if (unitAssetIDs.containsKey(order.asset.getId())) {
-                if (unitAssetIDs.get(order.asset.getId()) >= order.qty) {
-                    // Add sell order to the order queue to be reconciled
-                    try {
-                        //addOrder.setInt(1, order.id);
-                        addOrder.setString(2, String.valueOf(order.isBuy));
-                        addOrder.setString(3, order.unit.getName());
-                        addOrder.setString(4, order.asset.getIdString());
-                        addOrder.setInt(5, order.qty);
-                        addOrder.setInt(6, order.price);
-                        addOrder.setString(7, placedOn);
-                        addOrder.executeUpdate();
-                    } catch (SQLException throwables) {
-                        throwables.printStackTrace();
-                    }
-                } else {
-                    throw new OrderException("Order quantity exceeds the amount held by the users organisation!");
-                }
-            } else {
-                throw new OrderException("Asset not in Organisations Stock!");
+        } else if (sequencer != null) {
+            sequencer.publish(OrderCommand.Type.NEW, order);
+        } else {
+            insertOrder(order);
+        }
+    }
+
+    /**
+     * Method used to write a validated order to the order table of the database. The ID the database gives the order
+     * is stored in the order object.
+     * @param order The order that is being placed
+     */
+    @Override
+    public void insertOrder(Order order) {
+        boolean inserted = false;
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement addOrder = db.prepare(INSERT_ORDER, Statement.RETURN_GENERATED_KEYS);
+            bindOrder(addOrder, order);
+            addOrder.executeUpdate();
+
+            ResultSet keys = addOrder.getGeneratedKeys();
+            if (keys.next()) {
+                order.id = keys.getInt(1);
+                inserted = true;
             }
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+        }
+        if (inserted) {
+            risk.track(order); // Not while leasing a connection, as the ledger may need to lease one to load
+        }
+    }
+
+    /**
+     * Sets the parameters of INSERT_ORDER for an order, leaving the order ID for the database to give
+     * @param addOrder The insert statement
+     * @param order The order being written
+     * @throws SQLException if a parameter cannot be set
+     */
+    private static void bindOrder(PreparedStatement addOrder, Order order) throws SQLException {
+        addOrder.setNull(1, Types.INTEGER);
+        addOrder.setString(2, String.valueOf(order.isBuy));
+        addOrder.setString(3, order.unit.getName());
+        addOrder.setInt(4, order.asset.getId());
+        addOrder.setInt(5, order.qty);
+        addOrder.setInt(6, order.price);
+        addOrder.setLong(7, toMillis(order.datePlaced));
+        if (order.expiry == null) {
+            addOrder.setNull(8, Types.INTEGER);
+        } else {
+            addOrder.setLong(8, order.getExpiryMillis());
         }
     }
 
+    /**
+     * Getter for the in memory balances and reservations that placed orders are checked against
+     * @return the risk ledger
+     */
+    public RiskLedger getRiskLedger() {
+        return risk;
+    }
+
+    /**
+     * Method used to set the sequencer that placed and cancelled orders are handed to. Setting the sequencer to null
+     * stops orders being handed over, in which case orders are written to the database straight away and the
+     * matcher has to read them from the orders table instead.
+     * @param sequencer The matcher's sequencer, or null
+     */
+    public void setSequencer(OrderSequencer sequencer) {
+        this.sequencer = sequencer;
+    }
+
     /**
      * Method used to get a list of all outstanding orders in the order table of the database.
      * @return A HashMap in the form of (OrderID, Order) where Order is the order object for the OrderID entry in the order table of the database
@@ -656,7 +791,8 @@ public class NetworkConnection implements DatabaseSource {
 
         ResultSet rs;
 
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getOrders = db.prepare(GET_ORDERS);
             rs = getOrders.executeQuery();
             while (rs.next()) {
                 int orderID = rs.getInt(1);
@@ -669,6 +805,7 @@ public class NetworkConnection implements DatabaseSource {
                 int price = rs.getInt(6);
 
                 Order o = new Order(unit, asset, qty, price, isBuy, orderID);
+                o.setExpiryMillis(rs.getLong("expiry")); // 0 when the order does not expire
 
                 outstanding.put(orderID, o);
             }
@@ -679,6 +816,107 @@ public class NetworkConnection implements DatabaseSource {
         return outstanding;
     }
 
+    /**
+     * Method used to get the orders placed after a given order, so that a caller that has already seen every order
+     * up to that ID only loads what is new. Each unit and asset is only read from the database once per call.
+     * @param orderID The ID of the newest order the caller has already seen
+     * @return The newer outstanding orders, oldest first
+     */
+    @Override
+    public ArrayList<Order> getOrdersSince(int orderID) {
+        ArrayList<Order> orders = new ArrayList<>();
+        HashMap<String, Unit> units = new HashMap<>();
+        HashMap<Integer, Asset> assets = new HashMap<>();
+        ResultSet rs;
+
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getOrdersSince = db.prepare(GET_ORDERS_SINCE);
+            getOrdersSince.setInt(1, orderID);
+            rs = getOrdersSince.executeQuery();
+            while (rs.next()) {
+                int id = rs.getInt("orderID");
+                boolean isBuy = Boolean.parseBoolean(rs.getString("type"));
+                Unit unit = units.computeIfAbsent(rs.getString("orgunit"), this::getUnit);
+                Asset asset = assets.computeIfAbsent(rs.getInt("assetID"), this::getAsset);
+                int qty = rs.getInt("qty");
+                int price = rs.getInt("price");
+
+                Order order = new Order(unit, asset, qty, price, isBuy, id);
+                long date = rs.getLong("date");
+                if (date != 0) {
+                    order.datePlaced = fromMillis(date);
+                }
+                order.setExpiryMillis(rs.getLong("expiry")); // 0 when the order does not expire
+                orders.add(order);
+            }
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+        }
+
+        return orders;
+    }
+
+    /**
+     * Adds a cancelled order to the cancellation feed
+     * @param order The order that was cancelled
+     */
+    private void recordCancellation(Order order) {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement addCancellation = db.prepare(INSERT_CANCELLATION);
+            addCancellation.setInt(1, order.id);
+            if (order.asset != null) {
+                addCancellation.setInt(2, order.asset.getId());
+            } else {
+                addCancellation.setNull(2, Types.INTEGER);
+            }
+            addCancellation.executeUpdate();
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+        }
+    }
+
+    /**
+     * Method used to get the orders cancelled after a given point in the cancellation feed. Only the ID and asset of
+     * each cancelled order are filled in.
+     * @param cancelID The ID of the newest cancellation the caller has already seen, 0 for all of them
+     * @return The newer cancellations in the form (CancelID, Order), oldest first
+     */
+    @Override
+    public TreeMap<Integer, Order> getCancellationsSince(int cancelID) {
+        TreeMap<Integer, Order> cancelled = new TreeMap<>();
+        HashMap<Integer, Asset> assets = new HashMap<>();
+        ResultSet rs;
+
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getCancellationsSince = db.prepare(GET_CANCELLATIONS_SINCE);
+            getCancellationsSince.setInt(1, cancelID);
+            rs = getCancellationsSince.executeQuery();
+            while (rs.next()) {
+                Asset asset = assets.computeIfAbsent(rs.getInt("assetID"), this::getAsset);
+                cancelled.put(rs.getInt("cancelID"), new Order(null, asset, 0, 0, false, rs.getInt("orderID")));
+            }
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+        }
+
+        return cancelled;
+    }
+
+    /**
+     * Method used to remove cancellations that have been dealt with from the cancellation feed
+     * @param cancelID The ID of the newest cancellation to remove
+     */
+    @Override
+    public void clearCancellations(int cancelID) {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement clearCancellations = db.prepare(CLEAR_CANCELLATIONS);
+            clearCancellations.setInt(1, cancelID);
+            clearCancellations.executeUpdate();
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+        }
+    }
+
     /**
      * Method used to return a list of outstanding orders for a specified unit.
      * @param unit The unit that's orders are being collected
@@ -689,7 +927,8 @@ public class NetworkConnection implements DatabaseSource {
         ArrayList<Order> orders = new ArrayList<>();
         Order o;
         ResultSet rs;
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getUnitOrders = db.prepare(GET_UNIT_ORDERS);
             getUnitOrders.setString(1, unit.getName());
             rs = getUnitOrders.executeQuery();
             while (rs.next()) {
@@ -698,7 +937,7 @@ public class NetworkConnection implements DatabaseSource {
                 boolean isBuy = rs.getString("type").equalsIgnoreCase("true");
                 int qty = rs.getInt("qty");
                 int price = rs.getInt("price");
-                LocalDateTime date = LocalDateTime.parse(rs.getString("date"), formatter);
+                LocalDateTime date = fromMillis(rs.getLong("date"));
                 o = new Order(unit, a, qty, price, isBuy, orderID);
                 o.setDateResolved(date);
                 orders.add(o);
@@ -720,8 +959,9 @@ public class NetworkConnection implements DatabaseSource {
         ArrayList<Order> orders = new ArrayList<>();
         Order o;
         ResultSet rs;
-        try {
-            getAssetOrders.setString(1, asset.getIdString());
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getAssetOrders = db.prepare(GET_ASSET_ORDERS);
+            getAssetOrders.setInt(1, asset.getId());
             rs = getAssetOrders.executeQuery();
             while (rs.next()) {
                 int orderID = rs.getInt("orderID");
@@ -729,7 +969,7 @@ public class NetworkConnection implements DatabaseSource {
                 boolean isBuy = rs.getString("type").equalsIgnoreCase("true");
                 int qty = rs.getInt("qty");
                 int price = rs.getInt("price");
-                LocalDateTime date = LocalDateTime.parse(rs.getString("date"), formatter);
+                LocalDateTime date = fromMillis(rs.getLong("date"));
                 o = new Order(unit, asset, qty, price, isBuy, orderID);
                 o.setDateResolved(date);
                 orders.add(o);
@@ -747,35 +987,390 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void reconcileOrder(Order order) {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement addOrderHistory = db.prepare(INSERT_ORDER_HISTORY);
             addOrderHistory.setInt(1, order.id);
             addOrderHistory.setString(2, String.valueOf(order.isBuy));
             addOrderHistory.setString(3, order.unit.getName());
             addOrderHistory.setInt(4, order.asset.getId());
             addOrderHistory.setInt(5, order.qty);
             addOrderHistory.setInt(6, order.price);
-            addOrderHistory.setString(7, order.dateResolved.format(formatter));
+            addOrderHistory.setLong(7, toMillis(order.dateResolved));
             addOrderHistory.executeUpdate();
         } catch (SQLException throwables) {
             throwables.printStackTrace();
         }
 
-        cancelOrder(order); // Remove the reconciled order from the outstanding orders table
+        deleteOrder(order); // Remove the reconciled order from the outstanding orders table
     }
 
     /**
-     * Method used to cancel/remove an order from the order table of the database.
+     * Method used to cancel/remove an order from the order table of the database. If trades are being reconciled as
+     * orders arrive the cancellation is handed to the matcher, which removes the order in sequence with every other
+     * order.
      * @param order The order that is being cancelled
      */
     @Override
     public void cancelOrder(Order order) {
-        try {
+        OrderSequencer sequencer = this.sequencer;
+        if (sequencer != null) {
+            sequencer.publish(OrderCommand.Type.CANCEL, order);
+        } else {
+            deleteOrder(order);
+            recordCancellation(order);
+        }
+        System.out.printf("Order %s cancelled\n", order.id);
+    }
+
+    /**
+     * Method used to remove many orders from the order table of the database in a single transaction, e.g. when
+     * orders expire.
+     * @param orderIDs The orders to remove
+     * @return true if the orders were removed, false if the transaction was rolled back
+     */
+    public boolean deleteOrders(List<Integer> orderIDs) {
+        boolean deleted = inTransaction((db, date) -> {
+            PreparedStatement removeOrder = db.prepare(REMOVE_ORDER);
+            for (int orderID : orderIDs) {
+                removeOrder.setInt(1, orderID);
+                removeOrder.addBatch();
+            }
+            removeOrder.executeBatch();
+        });
+        if (deleted) {
+            for (int orderID : orderIDs) {
+                risk.release(orderID);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Method used to remove an order from the order table of the database.
+     * @param order The order that is being removed
+     */
+    @Override
+    public void deleteOrder(Order order) {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement removeOrder = db.prepare(REMOVE_ORDER);
             removeOrder.setInt(1, order.id);
             removeOrder.executeUpdate();
         } catch (SQLException throwables) {
             throwables.printStackTrace();
         }
-        System.out.printf("Order %s cancelled\n", order.id);
+        risk.release(order.id);
+    }
+
+    /**
+     * Method used to settle trades in the database as a single transaction. For every trade the buyer pays the seller
+     * and the asset moves from the seller to the buyer, then a fill record is added to the order history for both
+     * sides. Finally each order involved has its remaining quantity updated, or is removed if it has been filled.
+     * Either all of these changes are made or, if any of them fail, none are.
+     * @param trades The trades to settle, in the order they were executed
+     * @return true if the trades were settled, false if the transaction was rolled back
+     */
+    public boolean settleTrades(List<Trade> trades) {
+        return settleTrades(trades, 0);
+    }
+
+    /**
+     * Method used to settle trades in the database as a single transaction, recording the journal record the trades
+     * came from in the same transaction so that they are never settled twice when the journal is replayed.
+     * @param trades The trades to settle, in the order they were executed
+     * @param journalSequence The sequence number of the journalled order that caused the trades, 0 if not journalled
+     * @return true if the trades were settled, false if the transaction was rolled back
+     */
+    public boolean settleTrades(List<Trade> trades, long journalSequence) {
+        boolean settled = inTransaction((db, date) -> {
+            LinkedHashSet<Order> orders = new LinkedHashSet<>();
+            for (Trade trade : trades) {
+                int assetID = trade.buy.asset.getId();
+
+                int value = tradeValue(trade.qty, trade.price);
+
+                changeHolding(db, trade.buy.unit.getName(), assetID, trade.qty);
+                changeBalance(db, trade.buy.unit.getName(), -value);
+                changeHolding(db, trade.sell.unit.getName(), assetID, -trade.qty);
+                changeBalance(db, trade.sell.unit.getName(), value);
+
+                addFill(db, true, trade.buy.unit.getName(), assetID, trade.qty, trade.price, date);
+                addFill(db, false, trade.sell.unit.getName(), assetID, trade.qty, trade.price, date);
+                orders.add(trade.buy);
+                orders.add(trade.sell);
+            }
+
+            for (Order order : orders) {
+                if (order.isResting()) {
+                    setOrderQuantity(db, order.id, order.qty);
+                }
+            }
+            if (journalSequence > 0) {
+                setJournalSettled(db, trades.get(0).buy.asset.getId(), journalSequence);
+            }
+        });
+
+        if (settled) {
+            for (Trade trade : trades) {
+                risk.fill(trade.buy.unit.getName(), trade.buy.id, trade.sell.unit.getName(), trade.sell.id,
+                        trade.buy.asset.getId(), trade.qty, trade.price);
+            }
+        }
+        return settled;
+    }
+
+    /**
+     * Method used to settle the fills from a primitive order book in the database as a single transaction. The
+     * database changes are the same as for settleTrades, with the units looked up by their IDs.
+     * @param fills The fills produced by entering one order into a book
+     * @param units The unit IDs the book was given
+     * @param journalSequence The sequence number of the journalled order that caused the fills, 0 if not journalled
+     * @return true if the fills were settled, false if the transaction was rolled back
+     */
+    public boolean settleFills(FillBuffer fills, UnitIDs units, long journalSequence) {
+        boolean settled = inTransaction((db, date) -> {
+            int assetID = fills.getAssetID();
+            String taker = units.nameOf(fills.getTakerUnit());
+            boolean takerIsBuy = fills.isTakerBuy();
+
+            for (int i = 0; i < fills.size(); i++) {
+                String maker = units.nameOf(fills.getMakerUnit(i));
+                String buyer = takerIsBuy ? taker : maker;
+                String seller = takerIsBuy ? maker : taker;
+                int qty = fills.getQty(i);
+                int price = fills.getPrice(i);
+                int value = tradeValue(qty, price);
+
+                changeHolding(db, buyer, assetID, qty);
+                changeBalance(db, buyer, -value);
+                changeHolding(db, seller, assetID, -qty);
+                changeBalance(db, seller, value);
+
+                addFill(db, true, buyer, assetID, qty, price, date);
+                addFill(db, false, seller, assetID, qty, price, date);
+                setOrderQuantity(db, fills.getMakerID(i), fills.getMakerRemaining(i));
+            }
+            if (fills.getTakerType() == Order.Type.LIMIT) {
+                setOrderQuantity(db, fills.getTakerID(), fills.getTakerRemaining());
+            }
+            if (journalSequence > 0) {
+                setJournalSettled(db, assetID, journalSequence);
+            }
+        });
+
+        if (settled) {
+            String taker = units.nameOf(fills.getTakerUnit());
+            for (int i = 0; i < fills.size(); i++) {
+                String maker = units.nameOf(fills.getMakerUnit(i));
+                if (fills.isTakerBuy()) {
+                    risk.fill(taker, fills.getTakerID(), maker, fills.getMakerID(i), fills.getAssetID(),
+                            fills.getQty(i), fills.getPrice(i));
+                } else {
+                    risk.fill(maker, fills.getMakerID(i), taker, fills.getTakerID(), fills.getAssetID(),
+                            fills.getQty(i), fills.getPrice(i));
+                }
+            }
+        }
+        return settled;
+    }
+
+    /**
+     * Method used to get how far through the order journal each asset has been settled
+     * @return The newest settled journal sequence number in the form (AssetID, Sequence)
+     */
+    public HashMap<Integer, Long> getJournalSettled() {
+        HashMap<Integer, Long> settled = new HashMap<>();
+        ResultSet rs;
+
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getJournalSettled = db.prepare(GET_JOURNAL_SETTLED);
+            rs = getJournalSettled.executeQuery();
+            while (rs.next()) {
+                settled.put(rs.getInt("assetID"), rs.getLong("sequence"));
+            }
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+        }
+
+        return settled;
+    }
+
+    /**
+     * Records the newest journal record settled for an asset as part of a settlement
+     * @param db The connection the settlement is on
+     * @param assetID The asset that was traded
+     * @param journalSequence The sequence number of the journalled order that caused the trades
+     * @throws SQLException if the update fails
+     */
+    private void setJournalSettled(ConnectionPool.Lease db, int assetID, long journalSequence) throws SQLException {
+        PreparedStatement setJournalSettled = db.prepare(SET_JOURNAL_SETTLED);
+        setJournalSettled.setInt(1, assetID);
+        setJournalSettled.setLong(2, journalSequence);
+        setJournalSettled.executeUpdate();
+    }
+
+    /**
+     * The database changes made together in one transaction
+     */
+    private interface Work {
+        /**
+         * Makes the changes
+         * @param db The connection the transaction is on
+         * @param date The date of the transaction in milliseconds since the epoch
+         * @throws SQLException if any change fails
+         */
+        void apply(ConnectionPool.Lease db, long date) throws SQLException;
+    }
+
+    /**
+     * Runs some changes as a single transaction, rolling back every change if any of them fail
+     * @param work The changes to make
+     * @return true if the changes were committed, false if the transaction was rolled back
+     */
+    private boolean inTransaction(Work work) {
+        ConnectionPool.Lease db;
+        try {
+            db = pool.lease();
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+
+        Connection connection = db.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            work.apply(db, System.currentTimeMillis());
+            connection.commit();
+            return true;
+        } catch (SQLException ex) {
+            System.out.println("Changes could not be committed, rolling back");
+            ex.printStackTrace();
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackEx) {
+                rollbackEx.printStackTrace();
+            }
+            return false;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+            db.close();
+        }
+    }
+
+    /**
+     * Converts a date to the number it is stored in the database as
+     * @param date The date in the server's time zone
+     * @return milliseconds since the epoch
+     */
+    private static long toMillis(LocalDateTime date) {
+        return date.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Converts a date stored in the database back to a date
+     * @param millis Milliseconds since the epoch
+     * @return the date in the server's time zone
+     */
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    /**
+     * Sets the remaining quantity of an order as part of a settlement, removing the order once it has been filled
+     * @param db The connection the settlement is on
+     * @param orderID The order to update
+     * @param qty The quantity still to be filled
+     * @throws SQLException if the update fails
+     */
+    private void setOrderQuantity(ConnectionPool.Lease db, int orderID, int qty) throws SQLException {
+        PreparedStatement removeOrder = db.prepare(REMOVE_ORDER);
+        PreparedStatement updateOrderQty = db.prepare(UPDATE_ORDER_QTY);
+        if (qty == 0) {
+            removeOrder.setInt(1, orderID);
+            removeOrder.executeUpdate();
+        } else {
+            updateOrderQty.setInt(1, qty);
+            updateOrderQty.setInt(2, orderID);
+            updateOrderQty.executeUpdate();
+        }
+    }
+
+    /**
+     * Getter for the number of credits a trade moves from the buyer to the seller
+     * @param qty The quantity traded
+     * @param price The price per unit of the asset
+     * @return the value of the trade
+     * @throws SQLException if the value does not fit in the credits column, so the settlement is rolled back
+     */
+    private static int tradeValue(int qty, int price) throws SQLException {
+        try {
+            return Math.multiplyExact(qty, price);
+        } catch (ArithmeticException ex) {
+            throw new SQLException(String.format("Trade of %d at %d overflows the credits column", qty, price));
+        }
+    }
+
+    /**
+     * Adds to (or subtracts from) a unit's balance as part of a settlement
+     * @param db The connection the settlement is on
+     * @param unitName The unit whose balance is changing
+     * @param amount The number of credits to add, negative to subtract
+     * @throws SQLException if the update fails
+     */
+    private void changeBalance(ConnectionPool.Lease db, String unitName, int amount) throws SQLException {
+        PreparedStatement changeBalance = db.prepare(CHANGE_BALANCE);
+        changeBalance.setInt(1, amount);
+        changeBalance.setString(2, unitName.toLowerCase());
+        changeBalance.executeUpdate();
+    }
+
+    /**
+     * Adds to (or subtracts from) the quantity of an asset held by a unit as part of a settlement. A unit that does
+     * not hold the asset yet is given a new holding.
+     * @param db The connection the settlement is on
+     * @param unitName The unit whose holding is changing
+     * @param assetID The asset being traded
+     * @param qty The quantity to add, negative to subtract
+     * @throws SQLException if the update fails
+     */
+    private void changeHolding(ConnectionPool.Lease db, String unitName, int assetID, int qty) throws SQLException {
+        PreparedStatement changeQuantity = db.prepare(CHANGE_QUANTITY);
+        PreparedStatement addHolding = db.prepare(ADD_ASSET_TO_UNIT);
+        changeQuantity.setInt(1, qty);
+        changeQuantity.setString(2, unitName.toLowerCase());
+        changeQuantity.setInt(3, assetID);
+        if (changeQuantity.executeUpdate() == 0) {
+            addHolding.setString(1, unitName.toLowerCase());
+            addHolding.setInt(2, assetID);
+            addHolding.setInt(3, qty);
+            addHolding.executeUpdate();
+        }
+    }
+
+    /**
+     * Adds one side of a trade to the order history as part of a settlement
+     * @param db The connection the settlement is on
+     * @param isBuy True for the buy side of the trade, false for the sell side
+     * @param unitName The unit on that side of the trade
+     * @param assetID The asset that was traded
+     * @param qty The quantity traded
+     * @param price The price the trade executed at
+     * @param date The date of the settlement in milliseconds since the epoch
+     * @throws SQLException if the insert fails
+     */
+    private void addFill(ConnectionPool.Lease db, boolean isBuy, String unitName, int assetID, int qty, int price,
+                         long date) throws SQLException {
+        PreparedStatement addFillHistory = db.prepare(INSERT_FILL_HISTORY);
+        addFillHistory.setString(1, String.valueOf(isBuy));
+        addFillHistory.setString(2, unitName);
+        addFillHistory.setInt(3, assetID);
+        addFillHistory.setInt(4, qty);
+        addFillHistory.setInt(5, price);
+        addFillHistory.setLong(6, date);
+        addFillHistory.executeUpdate();
     }
 
     /**
@@ -788,7 +1383,8 @@ public class NetworkConnection implements DatabaseSource {
         ArrayList<Order> orders = new ArrayList<>();
         Order o;
         ResultSet rs;
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getUnitOrderHistory = db.prepare(GET_UNIT_ORDER_HISTORY);
             getUnitOrderHistory.setString(1, unit.getName());
             rs = getUnitOrderHistory.executeQuery();
             while (rs.next()) {
@@ -797,7 +1393,7 @@ public class NetworkConnection implements DatabaseSource {
                 boolean isBuy = rs.getString("type").equalsIgnoreCase("buy");
                 int qty = rs.getInt("qty");
                 int price = rs.getInt("price");
-                LocalDateTime date = LocalDateTime.parse(rs.getString("date"), formatter);
+                LocalDateTime date = fromMillis(rs.getLong("date"));
                 o = new Order(unit, a, qty, price, isBuy, orderID);
                 o.setDateResolved(date);
                 orders.add(o);
@@ -811,33 +1407,33 @@ public class NetworkConnection implements DatabaseSource {
 
 
     /**
-     * Method used to get the historical price for a specified asset.
+     * Method used to get the historical price for a specified asset, read from the sell side of its fills.
      * @param assetID The asset to get price history of
-     * @return most recent 10 prices (sell orders)
+     * @return most recent 15 prices (sell orders), newest first
      */
     @Override
     public ArrayList<Integer> getAssetOrderHistory(String assetID) {
         ArrayList<Integer> prices = new ArrayList<>();
         ResultSet rs;
-        try {
-            getOrderHistory.setString(1, assetID);
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getOrderHistory = db.prepare(GET_ORDER_HISTORY);
+            getOrderHistory.setInt(1, Integer.parseInt(assetID));
             rs = getOrderHistory.executeQuery();
             while (rs.next()) {
                 prices.add(rs.getInt("price")); // add the prices
             }
+        } catch (SQLException | NumberFormatException ex) {
+            ex.printStackTrace();
+        }
 
-            // ensure there are exactly 15 prices
-            while (prices.size() < 15) {
-                prices.add(0);
-            }
-
-            // ensure there are exactly 15 prices
-            while (prices.size() > 15) {
-                prices.remove(prices.size() - 1);
-            }
+        // ensure there are exactly 15 prices
+        while (prices.size() < 15) {
+            prices.add(0);
+        }
 
-        } catch (SQLException ex) {
-            ex.printStackTrace();
+        // ensure there are exactly 15 prices
+        while (prices.size() > 15) {
+            prices.remove(prices.size() - 1);
         }
         return prices;
     };
@@ -856,22 +1452,25 @@ public class NetworkConnection implements DatabaseSource {
 
         ResultSet rs;
         // Try to get the unit name and credits from the database
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getUnit = db.prepare(GET_UNIT);
+            PreparedStatement getAssetsFromUnit = db.prepare(GET_ASSETS_FROM_UNIT);
             getUnit.setString(1, unitName); //replaces '?' with the field we want
             rs = getUnit.executeQuery();
+            if (!rs.next()) {
+                throw new SQLException("No unit named " + unitName);
+            }
 
             // Gather the data required to construct a Unit
             String name = rs.getString("unitname");
             int credits = rs.getInt("credits");
             HashMap<Asset, Integer> assets = new HashMap<>();
 
+            // Get the units list of assets
+            getAssetsFromUnit.setString(1, name);
+            rs = getAssetsFromUnit.executeQuery();
             while (rs.next()) {
-                // Get the units list of assets
-                if (!(rs.getString("assetID") == null)) {
-                    assets.put(
-                            getAsset(Integer.parseInt(rs.getString("assetID"))),
-                            rs.getInt("assetqty"));
-                }
+                assets.put(new Asset(rs.getInt("assetID"), rs.getString("desc")), rs.getInt("assetqty"));
             }
 
             // Construct the unit object
@@ -895,7 +1494,9 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void addUnit(String orgName, int balance) throws IllegalString, AlreadyExists {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getUnit = db.prepare(GET_UNIT);
+            PreparedStatement addUnit = db.prepare(INSERT_UNIT);
             String orgNameLC;
 
             // Check the org name is valid
@@ -906,13 +1507,9 @@ public class NetworkConnection implements DatabaseSource {
             }
 
             // Check if the unit name is taken
-            Set<String> names = new TreeSet<>();
-            ResultSet rs = getAllUnitNames.executeQuery();
-            while (rs.next()) {
-                names.add(rs.getString("unitname"));
-            }
-
-            if (names.contains(orgNameLC)) {
+            getUnit.setString(1, orgNameLC);
+            ResultSet rs = getUnit.executeQuery();
+            if (rs.next()) {
                 throw new AlreadyExists("Unit name '%s' is already taken.", orgName);
             }
 
@@ -924,6 +1521,7 @@ public class NetworkConnection implements DatabaseSource {
             System.out.printf("could not add unit");
             //ex.printStackTrace();
         }
+        risk.refresh(orgName.toLowerCase());
     }
 
     /**
@@ -932,13 +1530,16 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void removeUnit(String unitname) {
-        // Try to remove the unit from the database
-        try {
+        // Try to remove the unit and its holdings from the database
+        inTransaction((db, date) -> {
+            PreparedStatement removeUnit = db.prepare(REMOVE_UNIT);
+            PreparedStatement removeUnitHoldings = db.prepare(REMOVE_UNIT_HOLDINGS);
             removeUnit.setString(1, unitname);
             removeUnit.executeUpdate();
-        } catch (SQLException ex) {
-            ex.printStackTrace();
-        }
+            removeUnitHoldings.setString(1, unitname);
+            removeUnitHoldings.executeUpdate();
+        });
+        risk.refresh(unitname);
         // If successful, print message
         System.out.printf("%s deleted\n", unitname);
     }
@@ -951,7 +1552,8 @@ public class NetworkConnection implements DatabaseSource {
     @Override
     public void adjustBalance(String unitname, int amount) {
         // Try to update the credits in the database
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement adjustBalance = db.prepare(ADJUST_BALANCE);
             adjustBalance.setString(1, String.valueOf(amount));
             adjustBalance.setString(2, unitname.toLowerCase());
             adjustBalance.executeUpdate();
@@ -959,6 +1561,7 @@ public class NetworkConnection implements DatabaseSource {
             System.out.println(ex.getMessage());
             ex.printStackTrace();
         }
+        risk.refresh(unitname.toLowerCase());
 
     }
 
@@ -971,7 +1574,8 @@ public class NetworkConnection implements DatabaseSource {
     @Override
     public void adjustAssetQuantity(String unitName, int assetID, int qty) {
         // Try find the units current assets
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement adjustQuantity = db.prepare(ADJUST_QUANTITY);
             unitName = unitName.toLowerCase();
             HashMap<Asset, Integer> unitAssets = getUnitsAssets(getUnit(unitName));
             ArrayList<Integer> unitIDs = new ArrayList<>();
@@ -988,7 +1592,7 @@ public class NetworkConnection implements DatabaseSource {
                 // Update unit's records
                 adjustQuantity.setInt(1, qty);
                 adjustQuantity.setString(2, unitName.toLowerCase());
-                adjustQuantity.setString(3, String.valueOf(assetID));
+                adjustQuantity.setInt(3, assetID);
                 adjustQuantity.executeUpdate();
             }
         } catch (SQLException ex) {
@@ -999,13 +1603,14 @@ public class NetworkConnection implements DatabaseSource {
         } catch (AlreadyExists alreadyExists) {
             alreadyExists.printStackTrace();
         }
+        risk.refresh(unitName.toLowerCase());
 
     }
 
     /**
      * Add an existing asset from the database to a unit
      * @param unitname the unit to add an asset to
-     * @param balance the units new credit balance
+     * @param balance the units credit balance, which is left as it is as credits are kept once per unit
      * @param assetID the asset which will be added to the unit
      * @param assetqty the quantity of the asset
      * @throws AlreadyExists if the asset is already held by the unit
@@ -1013,15 +1618,17 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void addAssetToUnit(String unitname, int balance, int assetID, int assetqty) throws AlreadyExists, DoesNotExist {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getAllAssetID = db.prepare(GET_ALL_ASSET_IDS);
+            PreparedStatement addAssetToUnit = db.prepare(ADD_ASSET_TO_UNIT);
             // Check if the asset exists first
-            Set<String> ids = new TreeSet<>();
+            Set<Integer> ids = new TreeSet<>();
             ResultSet rs = getAllAssetID.executeQuery();
             while (rs.next()) {
-                ids.add(rs.getString("assetID"));
+                ids.add(rs.getInt("assetID"));
             }
 
-            if (!ids.contains(String.valueOf(assetID))) {
+            if (!ids.contains(assetID)) {
                 throw new DoesNotExist("Asset '%s' does not exist.", String.valueOf(assetID));
             }
 
@@ -1038,14 +1645,14 @@ public class NetworkConnection implements DatabaseSource {
 
             // New record for an existing unit but with the new asset
             addAssetToUnit.setString(1, unitname.toLowerCase());
-            addAssetToUnit.setString(2, String.valueOf(balance));
-            addAssetToUnit.setString(3, String.valueOf(assetID));
-            addAssetToUnit.setString(4, String.valueOf(assetqty));
+            addAssetToUnit.setInt(2, assetID);
+            addAssetToUnit.setInt(3, assetqty);
             addAssetToUnit.executeUpdate();
         } catch (SQLException ex) {
             System.out.println(ex.getMessage());
             ex.printStackTrace();
         }
+        risk.refresh(unitname.toLowerCase());
 
     }
 
@@ -1056,15 +1663,17 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void removeAssetFromUnit(String unitname, int assetID) {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement removeAssetFromUnit = db.prepare(REMOVE_ASSET_FROM_UNIT);
             // Remove all records of unit's with this asset
             removeAssetFromUnit.setString(1, unitname.toLowerCase());
-            removeAssetFromUnit.setString(2, String.valueOf(assetID));
+            removeAssetFromUnit.setInt(2, assetID);
             removeAssetFromUnit.executeUpdate();
         } catch (SQLException ex) {
             System.out.println(ex.getMessage());
             ex.printStackTrace();
         }
+        risk.refresh(unitname.toLowerCase());
 
     }
 
@@ -1078,7 +1687,8 @@ public class NetworkConnection implements DatabaseSource {
         ResultSet rs;
 
         // Try to add each unit from the database into an ArrayList
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getAllUnits = db.prepare(GET_ALL_UNITS);
             rs = getAllUnits.executeQuery();
             while (rs.next()) {
 
@@ -1087,7 +1697,7 @@ public class NetworkConnection implements DatabaseSource {
                 String assetID = rs.getString("assetID");
                 HashMap<Asset, Integer> assets = new HashMap<>();
                 if (!(assetID == null))
-                    assets.put(getAsset(Integer.parseInt(assetID)), rs.getInt("assetqty"));
+                    assets.put(new Asset(rs.getInt("assetID"), rs.getString("desc")), rs.getInt("assetqty"));
 
                 list.add(new Unit(name, credits, assets));
             }
@@ -1107,21 +1717,14 @@ public class NetworkConnection implements DatabaseSource {
     public HashMap<Asset, Integer> getUnitsAssets(Unit unit) {
         HashMap<Asset, Integer> list = new HashMap<>();
         ResultSet rs;
-        try {
-            getUnit.setString(1, unit.getName()); //replaces '?' with the field we want
-            rs = getUnit.executeQuery();
-            // While there are still rows
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getAssetsFromUnit = db.prepare(GET_ASSETS_FROM_UNIT);
+            getAssetsFromUnit.setString(1, unit.getName()); //replaces '?' with the field we want
+            rs = getAssetsFromUnit.executeQuery();
+            // While there are still rows, add the asset and quantity to the HashMap
             while (rs.next()) {
-                // skips blank unit rows (from creating a unit with no asset)
-                String assetIDString = rs.getString("assetID");
-                if (!(assetIDString == null)) {
-                    // Add asset and quantity to HashMap
-                    int assetID = Integer.parseInt(assetIDString);
-                    int qty = Integer.parseInt(rs.getString("assetqty"));
-                    String description = getAsset(assetID).getDescription();
-                    Asset a = new Asset(assetID, description);
-                    list.put(a, qty);
-                }
+                Asset a = new Asset(rs.getInt("assetID"), rs.getString("desc"));
+                list.put(a, rs.getInt("assetqty"));
             }
 
 
@@ -1145,7 +1748,8 @@ public class NetworkConnection implements DatabaseSource {
         Asset a = null;
         ResultSet rs;
         // Try to create the object with data from the database
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getAsset = db.prepare(GET_ASSET);
             getAsset.setInt(1, assetID); //replaces '?' with the field we want
             rs = getAsset.executeQuery();
             rs.next();
@@ -1169,7 +1773,8 @@ public class NetworkConnection implements DatabaseSource {
         ResultSet rs;
 
         // Try to construct an Asset object for every asset in the database and add it to the ArrayList
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement getAllAssets = db.prepare(GET_ALL_ASSETS);
             rs = getAllAssets.executeQuery();
             while (rs.next()) {
                 int assetID = rs.getInt("assetID");
@@ -1192,7 +1797,8 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void addAsset(String id, String desc) throws AlreadyExists {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement addAsset = db.prepare(INSERT_ASSET);
             // Get all assets and check if the asset ID and desc has already been taken
             ArrayList<Asset> list = getAllAssets();
             for (Asset a : list) {
@@ -1202,12 +1808,13 @@ public class NetworkConnection implements DatabaseSource {
             }
 
             // If the above exception is never caught, we can now add the asset
-            addAsset.setString(1, id);
+            addAsset.setInt(1, Integer.parseInt(id));
             addAsset.setString(2, desc);
             addAsset.executeUpdate();
-        } catch (SQLException ex) {
+        } catch (SQLException | NumberFormatException ex) {
             ex.printStackTrace();
         }
+        risk.refreshAssets();
     }
 
     /**
@@ -1216,17 +1823,19 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void removeAsset(String id) {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement removeAsset = db.prepare(REMOVE_ASSET);
+            PreparedStatement removeAssetFromAllUnits = db.prepare(REMOVE_ASSET_FROM_ALL_UNIT);
             // Check if the asset ID exists first, execute then break when found
             ArrayList<Asset> list = getAllAssets();
             for (Asset a : list) {
                 if (String.valueOf(a.getId()).equalsIgnoreCase(id)) {
                     // If the above exception is never caught, we can now add the asset
-                    removeAsset.setString(1, id);
+                    removeAsset.setInt(1, a.getId());
                     removeAsset.executeUpdate();
 
                     // remove the asset from all unit's too
-                    removeAssetFromAllUnits.setString(1, id);
+                    removeAssetFromAllUnits.setInt(1, a.getId());
                     removeAssetFromAllUnits.executeUpdate();
                     break;
                 }
@@ -1234,6 +1843,7 @@ public class NetworkConnection implements DatabaseSource {
         } catch (SQLException ex) {
             ex.printStackTrace();
         }
+        risk.refreshAssets();
 
     }
 
@@ -1245,7 +1855,8 @@ public class NetworkConnection implements DatabaseSource {
      */
     @Override
     public void updateAssetDesc(String id, String desc) throws AlreadyExists {
-        try {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            PreparedStatement updateAsset = db.prepare(UPDATE_ASSET);
             // Get all assets and check if the asset desc has already been taken
             ArrayList<Asset> list = getAllAssets();
             for (Asset a : list) {
@@ -1261,7 +1872,7 @@ public class NetworkConnection implements DatabaseSource {
                 if (String.valueOf(a.getId()).equalsIgnoreCase(id)) {
                     // If the above exception is never caught, we can now update the asset
                     updateAsset.setString(1, desc);
-                    updateAsset.setString(2, id);
+                    updateAsset.setInt(2, a.getId());
                     updateAsset.executeUpdate();
                     break;
                 }
@@ -1272,4 +1883,385 @@ public class NetworkConnection implements DatabaseSource {
 
     }
 
+    // Batch methods ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Adds many users to the database as one transaction, hashing every password before any user is added
+     * @param passwords The password of each new user, by username
+     * @param unit The unit the users belong to, null for none
+     * @param access Admin access for the users
+     * @throws IllegalString if a username contains numbers, special characters or spaces, or a password is invalid
+     * @throws AlreadyExists if a username is already in the database or is given twice
+     */
+    @Override
+    public void addUsers(Map<String, String> passwords, String unit, boolean access) throws IllegalString, AlreadyExists {
+        TreeMap<String, String[]> users = new TreeMap<>(); // Hashed password and salt, by lower case username
+        try (ConnectionPool.Lease db = pool.lease()) {
+            for (Map.Entry<String, String> user : passwords.entrySet()) {
+                String username = user.getKey();
+                if (!username.matches("[a-zA-Z]+")) {
+                    throw new IllegalString("Username '%s' must be letters only. Please try again.", username);
+                }
+                String usernameLC = username.toLowerCase();
+                if (users.containsKey(usernameLC) || exists(db, GET_USER, usernameLC)) {
+                    throw new AlreadyExists("Username '%s' is already taken.", username);
+                }
+                String salt = HashPassword.generateSALT(username);
+                users.put(usernameLC, new String[]{HashPassword.hashPassword(user.getValue(), salt), salt});
+            }
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return;
+        }
+
+        inTransaction((db, date) -> {
+            PreparedStatement addUser = db.prepare(INSERT_USER);
+            for (Map.Entry<String, String[]> user : users.entrySet()) {
+                addUser.setString(1, user.getKey());
+                addUser.setString(2, user.getValue()[0]);
+                addUser.setString(3, user.getValue()[1]);
+                addUser.setString(4, unit);
+                addUser.setString(5, String.valueOf(access));
+                addUser.addBatch();
+            }
+            addUser.executeBatch();
+        });
+    }
+
+    /**
+     * Adds many units to the database as one transaction
+     * @param balances The initial balance of each new unit, by unit name
+     * @throws IllegalString if a unit name contains numbers, special characters or spaces
+     * @throws AlreadyExists if a unit name is already in the database or is given twice
+     */
+    @Override
+    public void addUnits(Map<String, Integer> balances) throws IllegalString, AlreadyExists {
+        TreeMap<String, Integer> units = new TreeMap<>(); // By lower case unit name
+        try (ConnectionPool.Lease db = pool.lease()) {
+            for (Map.Entry<String, Integer> unit : balances.entrySet()) {
+                String orgName = unit.getKey();
+                if (!orgName.matches("[a-zA-Z]+")) {
+                    throw new IllegalString("Unit name '%s' must be letters only. Please try again.", orgName);
+                }
+                String orgNameLC = orgName.toLowerCase();
+                if (units.containsKey(orgNameLC) || exists(db, GET_UNIT, orgNameLC)) {
+                    throw new AlreadyExists("Unit name '%s' is already taken.", orgName);
+                }
+                units.put(orgNameLC, unit.getValue());
+            }
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return;
+        }
+
+        inTransaction((db, date) -> {
+            PreparedStatement addUnit = db.prepare(INSERT_UNIT);
+            for (Map.Entry<String, Integer> unit : units.entrySet()) {
+                addUnit.setString(1, unit.getKey());
+                addUnit.setInt(2, unit.getValue());
+                addUnit.addBatch();
+            }
+            addUnit.executeBatch();
+        });
+        for (String unitName : units.keySet()) {
+            risk.refresh(unitName);
+        }
+    }
+
+    /**
+     * Changes the credits of many units as one transaction
+     * @param amounts The new amount of credits of each unit, by unit name
+     */
+    @Override
+    public void adjustBalances(Map<String, Integer> amounts) {
+        inTransaction((db, date) -> {
+            PreparedStatement adjustBalance = db.prepare(ADJUST_BALANCE);
+            for (Map.Entry<String, Integer> unit : amounts.entrySet()) {
+                adjustBalance.setInt(1, unit.getValue());
+                adjustBalance.setString(2, unit.getKey().toLowerCase());
+                adjustBalance.addBatch();
+            }
+            adjustBalance.executeBatch();
+        });
+        for (String unitName : amounts.keySet()) {
+            risk.refresh(unitName.toLowerCase());
+        }
+    }
+
+    /**
+     * Changes the quantities of many assets held by a unit as one transaction, adding any the unit does not hold yet
+     * @param unitName The unit to have their asset quantities changed
+     * @param quantities The new quantity of each asset, by asset ID
+     * @throws DoesNotExist if an asset does not exist
+     */
+    @Override
+    public void adjustAssetQuantities(String unitName, Map<Integer, Integer> quantities) throws DoesNotExist {
+        String unitNameLC = unitName.toLowerCase();
+        if (!assetsExist(quantities.keySet())) {
+            return;
+        }
+
+        inTransaction((db, date) -> {
+            PreparedStatement getAssetsFromUnit = db.prepare(GET_ASSETS_FROM_UNIT);
+            PreparedStatement adjustQuantity = db.prepare(ADJUST_QUANTITY);
+            PreparedStatement addAssetToUnit = db.prepare(ADD_ASSET_TO_UNIT);
+            HashSet<Integer> held = new HashSet<>();
+            getAssetsFromUnit.setString(1, unitNameLC);
+            ResultSet rs = getAssetsFromUnit.executeQuery();
+            while (rs.next()) {
+                held.add(rs.getInt("assetID"));
+            }
+
+            for (Map.Entry<Integer, Integer> asset : quantities.entrySet()) {
+                if (held.contains(asset.getKey())) {
+                    adjustQuantity.setInt(1, asset.getValue());
+                    adjustQuantity.setString(2, unitNameLC);
+                    adjustQuantity.setInt(3, asset.getKey());
+                    adjustQuantity.addBatch();
+                } else {
+                    addAssetToUnit.setString(1, unitNameLC);
+                    addAssetToUnit.setInt(2, asset.getKey());
+                    addAssetToUnit.setInt(3, asset.getValue());
+                    addAssetToUnit.addBatch();
+                }
+            }
+            adjustQuantity.executeBatch();
+            addAssetToUnit.executeBatch();
+        });
+        risk.refresh(unitNameLC);
+    }
+
+    /**
+     * Adds many existing assets to a unit as one transaction
+     * @param unitName The unit to add the assets to
+     * @param quantities The quantity of each asset, by asset ID
+     * @throws AlreadyExists if the unit already holds one of the assets
+     * @throws DoesNotExist if an asset does not exist
+     */
+    @Override
+    public void addAssetsToUnit(String unitName, Map<Integer, Integer> quantities) throws AlreadyExists, DoesNotExist {
+        String unitNameLC = unitName.toLowerCase();
+        if (!assetsExist(quantities.keySet())) {
+            return;
+        }
+        Unit unit = getUnit(unitNameLC);
+        if (unit != null) {
+            for (Asset a : unit.getAssets().keySet()) {
+                if (quantities.containsKey(a.getId())) {
+                    throw new AlreadyExists("Unit '%s' already has the asset '%s'.", unitName, a.getIdString());
+                }
+            }
+        }
+
+        inTransaction((db, date) -> {
+            PreparedStatement addAssetToUnit = db.prepare(ADD_ASSET_TO_UNIT);
+            for (Map.Entry<Integer, Integer> asset : quantities.entrySet()) {
+                addAssetToUnit.setString(1, unitNameLC);
+                addAssetToUnit.setInt(2, asset.getKey());
+                addAssetToUnit.setInt(3, asset.getValue());
+                addAssetToUnit.addBatch();
+            }
+            addAssetToUnit.executeBatch();
+        });
+        risk.refresh(unitNameLC);
+    }
+
+    /**
+     * Adds many assets to the database as one transaction
+     * @param descriptions The description of each new asset, by asset ID
+     * @throws AlreadyExists if an asset ID or description is already in the database or is given twice
+     */
+    @Override
+    public void addAssets(Map<Integer, String> descriptions) throws AlreadyExists {
+        Set<String> descs = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (Asset a : getAllAssets()) {
+            if (descriptions.containsKey(a.getId())) {
+                throw new AlreadyExists("The asset ID '%s' or description has already been taken in the database.",
+                        a.getIdString());
+            }
+            descs.add(a.getDescription());
+        }
+        for (Map.Entry<Integer, String> asset : descriptions.entrySet()) {
+            if (!descs.add(asset.getValue())) {
+                throw new AlreadyExists("The asset ID '%s' or description has already been taken in the database.",
+                        String.valueOf(asset.getKey()));
+            }
+        }
+
+        inTransaction((db, date) -> {
+            PreparedStatement addAsset = db.prepare(INSERT_ASSET);
+            for (Map.Entry<Integer, String> asset : descriptions.entrySet()) {
+                addAsset.setInt(1, asset.getKey());
+                addAsset.setString(2, asset.getValue());
+                addAsset.addBatch();
+            }
+            addAsset.executeBatch();
+        });
+        risk.refreshAssets();
+    }
+
+    /**
+     * Places many limit orders as one transaction. Every order is checked and reserved before any is written, and if
+     * any of them cannot be placed nothing is reserved. When trades are reconciled as orders arrive the orders are
+     * handed to the matcher one by one instead, as the matcher writes each order in sequence with every other order.
+     * @param orders The orders being placed, each given the ID the database gives it
+     * @throws OrderException if an order is not a limit order, expires in the past, or cannot be afforded
+     * @throws DoesNotExist if an order is to buy an asset that does not exist
+     */
+    @Override
+    public void addOrders(Collection<Order> orders) throws OrderException, DoesNotExist {
+        if (orders.isEmpty()) {
+            return;
+        }
+        for (Order order : orders) {
+            order.placedNanos = System.nanoTime();
+            if (!order.isResting()) {
+                throw new OrderException("Only limit orders can be placed in a batch!");
+            }
+            if (order.expiry != null && !order.expiry.isAfter(LocalDateTime.now())) {
+                throw new OrderException("Only limit orders can expire, and only in the future!");
+            }
+            if (order.isBuy && !risk.hasAsset(order.asset.getId())) {
+                throw new DoesNotExist("Asset has not yet been added to the database!");
+            }
+        }
+
+        ArrayList<Order> reserved = new ArrayList<>();
+        try {
+            for (Order order : orders) {
+                risk.reserve(order);
+                reserved.add(order);
+            }
+        } catch (OrderException ex) {
+            reserved.forEach(risk::release);
+            throw ex;
+        }
+
+        OrderSequencer sequencer = this.sequencer;
+        if (sequencer != null) {
+            for (Order order : orders) {
+                sequencer.publish(OrderCommand.Type.NEW, order);
+            }
+            return;
+        }
+
+        long[] lastID = new long[1];
+        boolean inserted = inTransaction((db, date) -> {
+            PreparedStatement addOrder = db.prepare(INSERT_ORDER);
+            for (Order order : orders) {
+                bindOrder(addOrder, order);
+                addOrder.addBatch();
+            }
+            addOrder.executeBatch();
+            try (ResultSet rs = db.prepare(GET_LAST_ORDER_ID).executeQuery()) {
+                lastID[0] = rs.next() ? rs.getLong(1) : 0;
+            }
+        });
+        if (!inserted) {
+            reserved.forEach(risk::release);
+            return;
+        }
+
+        // Nothing else can insert while the transaction is open, so the orders were given consecutive IDs
+        int id = (int) lastID[0] - orders.size();
+        for (Order order : orders) {
+            order.id = ++id;
+            risk.track(order);
+        }
+    }
+
+    /**
+     * Check if a row can be found by its key
+     * @param db The connection to read on
+     * @param sql A query selecting rows by a single key
+     * @param key The key to look for
+     * @return true if there is a row with the key
+     * @throws SQLException if the query fails
+     */
+    private boolean exists(ConnectionPool.Lease db, String sql, Object key) throws SQLException {
+        PreparedStatement query = db.prepare(sql);
+        query.setObject(1, key);
+        try (ResultSet rs = query.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Check that every asset in a batch is in the database
+     * @param assetIDs The assets
+     * @return true if they all exist, false if the database could not be read
+     * @throws DoesNotExist if an asset does not exist
+     */
+    private boolean assetsExist(Set<Integer> assetIDs) throws DoesNotExist {
+        try (ConnectionPool.Lease db = pool.lease()) {
+            for (int assetID : assetIDs) {
+                if (!exists(db, GET_ASSET, assetID)) {
+                    throw new DoesNotExist("Asset '%s' does not exist.", String.valueOf(assetID));
+                }
+            }
+            return true;
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    // Risk ledger -----------------------------------------------------------------------------------------------------
+
+    /**
+     * Reads the starting state of the risk ledger with the connection's prepared statements
+     */
+    private class LedgerLoader implements RiskLedger.Loader {
+
+        @Override
+        public Set<Integer> loadAssets() {
+            HashSet<Integer> ids = new HashSet<>();
+            try (ConnectionPool.Lease db = pool.lease()) {
+                PreparedStatement getAllAssetID = db.prepare(GET_ALL_ASSET_IDS);
+                ResultSet rs = getAllAssetID.executeQuery();
+                while (rs.next()) {
+                    ids.add(rs.getInt("assetID"));
+                }
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+            return ids;
+        }
+
+        @Override
+        public long loadBalances(String unitName, HashMap<Integer, Long> holdings) {
+            long credits = 0;
+            try (ConnectionPool.Lease db = pool.lease()) {
+                PreparedStatement getUnit = db.prepare(GET_UNIT);
+                PreparedStatement getAssetsFromUnit = db.prepare(GET_ASSETS_FROM_UNIT);
+                getUnit.setString(1, unitName);
+                ResultSet rs = getUnit.executeQuery();
+                if (rs.next()) {
+                    credits = rs.getLong("credits");
+                }
+                getAssetsFromUnit.setString(1, unitName);
+                rs = getAssetsFromUnit.executeQuery();
+                while (rs.next()) {
+                    holdings.put(rs.getInt("assetID"), rs.getLong("assetqty"));
+                }
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+            return credits;
+        }
+
+        @Override
+        public void loadRestingOrders(RiskLedger ledger) {
+            try (ConnectionPool.Lease db = pool.lease()) {
+                PreparedStatement getOrders = db.prepare(GET_ORDERS);
+                ResultSet rs = getOrders.executeQuery();
+                while (rs.next()) {
+                    ledger.restore(rs.getInt("orderID"), rs.getString("orgunit"), rs.getInt("assetID"),
+                            Boolean.parseBoolean(rs.getString("type")), rs.getInt("qty"), rs.getInt("price"));
+                }
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
 }
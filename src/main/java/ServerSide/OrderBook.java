@@ -0,0 +1,334 @@
+package ServerSide;
+
+import ClientSide.Order;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory limit order book for a single asset. Buy orders (bids) are kept highest price first and sell orders
+ * (asks) lowest price first, with orders at the same price queued in the order they arrived (price-time priority).
+ * Finding the best price on either side is a TreeMap lookup, so matching an incoming order costs O(log n) in the
+ * number of price levels rather than a scan of every outstanding order.
+ */
+public class OrderBook {
+    private final int assetID;
+    private final TreeMap<Integer, ArrayDeque<Order>> bids = new TreeMap<>(Comparator.reverseOrder());
+    private final TreeMap<Integer, ArrayDeque<Order>> asks = new TreeMap<>();
+    private final HashMap<Integer, Order> orders = new HashMap<>(); // Resting orders by order ID
+
+    /**
+     * Constructor for an empty order book.
+     * @param assetID The ID of the asset that is traded in this book
+     */
+    public OrderBook(int assetID) {
+        this.assetID = assetID;
+    }
+
+    /**
+     * Getter for the asset traded in this book
+     * @return the asset ID
+     */
+    public int getAssetID() {
+        return assetID;
+    }
+
+    /**
+     * Method used to match an incoming order against the opposite side of the book. The order sweeps through as many
+     * price levels as it needs, partially filling resting orders where necessary, until it is filled or the best
+     * price no longer crosses. Any quantity of a limit order that cannot be matched is left resting in the book, for
+     * the other order types it is cancelled. Market buys stop once the unit's credits have been spent, and fill or
+     * kill orders only trade if their whole quantity can be filled. Trades always execute at the price of the resting
+     * order, and the quantity of both orders is reduced by what was traded.
+     * @param order The order being entered into the book
+     * @return The trades that occurred, in the order they were executed
+     */
+    public ArrayList<Trade> add(Order order) {
+        return add(order, order.type == Order.Type.MARKET && order.isBuy ? order.unit.getCredits() : Integer.MAX_VALUE);
+    }
+
+    /**
+     * Method used to match an incoming order against the opposite side of the book with an explicit limit on how
+     * much a buy may spend, e.g. the credits a unit held when its market order was first placed.
+     * @param order The order being entered into the book
+     * @param budget The most credits the order may spend, Integer.MAX_VALUE for no limit
+     * @return The trades that occurred, in the order they were executed
+     */
+    public ArrayList<Trade> add(Order order, int budget) {
+        ArrayList<Trade> trades = new ArrayList<>();
+        TreeMap<Integer, ArrayDeque<Order>> opposite = order.isBuy ? asks : bids;
+
+        if (order.type == Order.Type.FILL_OR_KILL && available(order, opposite) < order.qty) {
+            return trades;
+        }
+
+        while (order.qty > 0) {
+            Map.Entry<Integer, ArrayDeque<Order>> best = opposite.firstEntry();
+            if (best == null || !crosses(order, best.getKey())) {
+                break;
+            }
+
+            Order resting = best.getValue().peekFirst();
+            int qty = Math.min(order.qty, resting.qty);
+            if (resting.price > 0) {
+                qty = Math.min(qty, budget / resting.price);
+            }
+            if (qty == 0) {
+                break; // A market buy that cannot afford any more
+            }
+            budget -= qty * resting.price;
+
+            trades.add(order.isBuy
+                    ? new Trade(order, resting, qty, resting.price)
+                    : new Trade(resting, order, qty, resting.price));
+
+            order.qty -= qty;
+            resting.qty -= qty;
+            if (resting.qty == 0) {
+                removeHead(opposite, best);
+            }
+        }
+
+        if (order.qty > 0 && order.isResting()) {
+            rest(order);
+        }
+        return trades;
+    }
+
+    /**
+     * Method used to add a limit order to the book without matching it, for books that are cleared by call auction.
+     * The bids and asks may cross until the next auction.
+     * @param order The limit order to collect
+     */
+    public void collect(Order order) {
+        if (order.qty > 0) {
+            rest(order);
+        }
+    }
+
+    /**
+     * Method used to clear the book by call auction. Every crossing order trades at a single price, chosen to trade
+     * the largest quantity, then to leave the least quantity unfilled on either side at that price, then as the
+     * middle of any prices still tied. Orders trade in price-time priority and whatever is left of them rests in the
+     * book, which no longer crosses.
+     * @return The trades that occurred, all at the clearing price, or an empty list if the book does not cross
+     */
+    public ArrayList<Trade> auction() {
+        ArrayList<Trade> trades = new ArrayList<>();
+        if (bids.isEmpty() || asks.isEmpty() || bids.firstKey() < asks.firstKey()) {
+            return trades;
+        }
+
+        // The quantity bid at or above, and offered at or below, each price someone is willing to trade at
+        TreeSet<Integer> prices = new TreeSet<>(bids.keySet());
+        prices.addAll(asks.keySet());
+        int[] candidates = prices.stream().mapToInt(Integer::intValue).toArray();
+        long[] demand = new long[candidates.length];
+        long[] supply = new long[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            supply[i] = (i > 0 ? supply[i - 1] : 0) + levelQty(asks.get(candidates[i]));
+        }
+        for (int i = candidates.length - 1; i >= 0; i--) {
+            demand[i] = (i < candidates.length - 1 ? demand[i + 1] : 0) + levelQty(bids.get(candidates[i]));
+        }
+
+        long bestVolume = 0;
+        long bestImbalance = 0;
+        ArrayList<Integer> tied = new ArrayList<>();
+        for (int i = 0; i < candidates.length; i++) {
+            long volume = Math.min(demand[i], supply[i]);
+            long imbalance = Math.abs(demand[i] - supply[i]);
+            if (volume > bestVolume || (volume == bestVolume && volume > 0 && imbalance < bestImbalance)) {
+                bestVolume = volume;
+                bestImbalance = imbalance;
+                tied.clear();
+            }
+            if (volume == bestVolume && volume > 0 && imbalance == bestImbalance) {
+                tied.add(candidates[i]);
+            }
+        }
+        int price = tied.get((tied.size() - 1) / 2);
+
+        while (!bids.isEmpty() && !asks.isEmpty() && bids.firstKey() >= price && asks.firstKey() <= price) {
+            Map.Entry<Integer, ArrayDeque<Order>> bid = bids.firstEntry();
+            Map.Entry<Integer, ArrayDeque<Order>> ask = asks.firstEntry();
+            Order buy = bid.getValue().peekFirst();
+            Order sell = ask.getValue().peekFirst();
+            int qty = Math.min(buy.qty, sell.qty);
+            trades.add(new Trade(buy, sell, qty, price));
+
+            buy.qty -= qty;
+            sell.qty -= qty;
+            if (buy.qty == 0) {
+                removeHead(bids, bid);
+            }
+            if (sell.qty == 0) {
+                removeHead(asks, ask);
+            }
+        }
+        return trades;
+    }
+
+    /**
+     * Adds up the quantity resting at a price level
+     * @param level The orders at the price, or null if there are none
+     * @return the total quantity
+     */
+    private static long levelQty(ArrayDeque<Order> level) {
+        long qty = 0;
+        if (level != null) {
+            for (Order order : level) {
+                qty += order.qty;
+            }
+        }
+        return qty;
+    }
+
+    /**
+     * Check if an order is willing to trade at a price on the opposite side of the book
+     * @param order The incoming order
+     * @param price The best price on the opposite side
+     * @return true for a market order, a buy at or above the price, or a sell at or below it
+     */
+    private static boolean crosses(Order order, int price) {
+        if (order.type == Order.Type.MARKET) {
+            return true;
+        }
+        return order.isBuy ? order.price >= price : order.price <= price;
+    }
+
+    /**
+     * Adds up the quantity an incoming order could trade against, stopping once there is enough to fill it
+     * @param order The incoming order
+     * @param opposite The opposite side of the book
+     * @return the quantity resting at prices the order crosses, up to at least the order's quantity
+     */
+    private static int available(Order order, TreeMap<Integer, ArrayDeque<Order>> opposite) {
+        int available = 0;
+        for (Map.Entry<Integer, ArrayDeque<Order>> level : opposite.entrySet()) {
+            if (!crosses(order, level.getKey())) {
+                break;
+            }
+            for (Order resting : level.getValue()) {
+                available += resting.qty;
+                if (available >= order.qty) {
+                    return available;
+                }
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Method used to remove a resting order from the book
+     * @param orderID The ID of the order to remove
+     * @return The removed order, or null if the order is not resting in this book
+     */
+    public Order cancel(int orderID) {
+        Order order = orders.remove(orderID);
+        if (order == null) {
+            return null;
+        }
+
+        TreeMap<Integer, ArrayDeque<Order>> side = order.isBuy ? bids : asks;
+        ArrayDeque<Order> level = side.get(order.price);
+        level.remove(order);
+        if (level.isEmpty()) {
+            side.remove(order.price);
+        }
+        return order;
+    }
+
+    /**
+     * Method used to remove every resting order whose ID is not in the given set, e.g. orders that have been
+     * cancelled directly in the database.
+     * @param orderIDs The IDs of the orders that should remain in the book
+     */
+    public void retain(Set<Integer> orderIDs) {
+        for (Integer id : new ArrayList<>(orders.keySet())) {
+            if (!orderIDs.contains(id)) {
+                cancel(id);
+            }
+        }
+    }
+
+    /**
+     * Check if an order is resting in the book
+     * @param orderID The ID of the order
+     * @return true if the order is resting in the book
+     */
+    public boolean contains(int orderID) {
+        return orders.containsKey(orderID);
+    }
+
+    /**
+     * Getter for a resting order
+     * @param orderID The ID of the order
+     * @return the resting order, or null if it is not in the book
+     */
+    public Order get(int orderID) {
+        return orders.get(orderID);
+    }
+
+    /**
+     * Getter for the number of orders resting in the book
+     * @return the number of resting orders
+     */
+    public int size() {
+        return orders.size();
+    }
+
+    /**
+     * Method used to visit every resting order, the bids best price first and then the asks best price first, with
+     * the orders at each price in the order they arrived. Adding the orders to an empty book in this order rebuilds
+     * the same book.
+     * @param action Called for each resting order
+     */
+    public void forEach(Consumer<Order> action) {
+        for (ArrayDeque<Order> level : bids.values()) {
+            level.forEach(action);
+        }
+        for (ArrayDeque<Order> level : asks.values()) {
+            level.forEach(action);
+        }
+    }
+
+    /**
+     * Getter for the highest buy price in the book
+     * @return the best bid price, or null if there are no buy orders
+     */
+    public Integer bestBid() {
+        return bids.isEmpty() ? null : bids.firstKey();
+    }
+
+    /**
+     * Getter for the lowest sell price in the book
+     * @return the best ask price, or null if there are no sell orders
+     */
+    public Integer bestAsk() {
+        return asks.isEmpty() ? null : asks.firstKey();
+    }
+
+    /**
+     * Adds an order to the back of the queue at its price level
+     * @param order The order to rest in the book
+     */
+    private void rest(Order order) {
+        TreeMap<Integer, ArrayDeque<Order>> side = order.isBuy ? bids : asks;
+        side.computeIfAbsent(order.price, price -> new ArrayDeque<>()).addLast(order);
+        orders.put(order.id, order);
+    }
+
+    /**
+     * Removes the order at the front of a price level, dropping the level if it is now empty
+     * @param side The side of the book the level belongs to
+     * @param level The price level to remove the front order from
+     */
+    private void removeHead(TreeMap<Integer, ArrayDeque<Order>> side, Map.Entry<Integer, ArrayDeque<Order>> level) {
+        Order head = level.getValue().pollFirst();
+        orders.remove(head.id);
+        if (level.getValue().isEmpty()) {
+            side.remove(level.getKey());
+        }
+    }
+}
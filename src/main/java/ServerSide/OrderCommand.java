@@ -0,0 +1,23 @@
+package ServerSide;
+
+import ClientSide.Order;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A request sent to the matcher when an order is placed or cancelled, so that it can update its order books
+ * without having to reload the orders table. Commands live in the slots of an OrderSequencer and are reused once
+ * the matcher has processed them, so a command should not be held on to after it has been handled.
+ */
+public class OrderCommand {
+
+    /**
+     * The kinds of change that can be made to an order book
+     */
+    public enum Type { NEW, CANCEL }
+
+    public Type type;
+    public Order order;
+    public long sequence; // Global position of the command, assigned by the sequencer
+    public CountDownLatch matched; // Counted down once a non-resting order has been matched, null for other commands
+}
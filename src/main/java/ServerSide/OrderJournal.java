@@ -0,0 +1,362 @@
+package ServerSide;
+
+import ClientSide.Order;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the orders the matcher has been given, the orders it has cancelled and the fills it has
+ * made, each with its own sequence number. Records are written to the end of a single file and only forced to disk
+ * when sync() is called, so a burst of orders costs one fsync rather than one per order. Replaying the journal on
+ * start up feeds every record back in sequence order, which is enough to rebuild the order books exactly.
+ * <p>
+ * Each record is stored as its length, the sequence number, the kind of record, the record's fields and a CRC32 of
+ * everything but the length. A record that was only partly written when the server stopped fails its check, and it
+ * and anything after it are cut off when the journal is opened.
+ */
+public class OrderJournal implements Closeable {
+
+    /**
+     * The kinds of record in the journal
+     */
+    public enum Kind { NEW, CANCEL, FILL, AUCTION }
+
+    /**
+     * A record read back from the journal. The same record is reused for every call to the replay handler, so it
+     * should not be held on to. Fields that do not apply to a kind of record are left at 0 or null.
+     */
+    public static class Record {
+        public long sequence;
+        public Kind kind;
+        public int orderID; // The placed or cancelled order, or the incoming order of a fill (the buy in an auction)
+        public int assetID;
+        public String unitName; // NEW only
+        public int qty;
+        public int price;
+        public boolean isBuy; // NEW only
+        public Order.Type type; // NEW only
+        public int budget; // NEW only, the most the order may spend
+        public long expiry; // NEW only, milliseconds since the epoch the order expires at, 0 if it does not
+        public int makerID; // FILL only, the resting order (the sell in an auction)
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int HEADER = Integer.BYTES; // The record length
+    private static final int TRAILER = Integer.BYTES; // The CRC
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private long sequence; // The sequence number of the last record appended
+    private boolean dirty = false; // True if records have been appended since the last sync
+
+    /**
+     * Opens a journal, creating the file if it does not exist. Any partly written record at the end of the file is
+     * removed.
+     * @param path The journal file
+     * @throws IOException Throws an exception if the file cannot be read or written
+     */
+    public OrderJournal(Path path) throws IOException {
+        this.path = path;
+        long end = scan(null, 0);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() > end) {
+            System.out.printf("Discarding %d bytes from the end of the order journal\n", channel.size() - end);
+            channel.truncate(end);
+            channel.force(true);
+        }
+        channel.position(end);
+    }
+
+    /**
+     * Getter for the sequence number of the newest record
+     * @return the last sequence number, 0 if the journal is empty
+     */
+    public synchronized long getLastSequence() {
+        return sequence;
+    }
+
+    /**
+     * Method used to journal an order that has been given to the matcher. The order must already have its ID.
+     * @param order The placed order
+     * @param budget The most credits the order may spend, so that market buys replay exactly
+     * @return the sequence number of the record
+     * @throws IOException Throws an exception if the record cannot be written
+     */
+    public synchronized long appendNew(Order order, int budget) throws IOException {
+        byte[] unitName = order.unit.getName().getBytes(StandardCharsets.UTF_8);
+        int start = begin(Kind.NEW, 5 * Integer.BYTES + 2 + Short.BYTES + unitName.length + Long.BYTES);
+        buffer.putInt(order.id);
+        buffer.putInt(order.asset.getId());
+        buffer.putInt(order.qty);
+        buffer.putInt(order.price);
+        buffer.putInt(budget);
+        buffer.put((byte) (order.isBuy ? 1 : 0));
+        buffer.put((byte) order.type.ordinal());
+        buffer.putShort((short) unitName.length);
+        buffer.put(unitName);
+        buffer.putLong(order.getExpiryMillis());
+        return end(start);
+    }
+
+    /**
+     * Method used to journal an order being cancelled
+     * @param orderID The cancelled order
+     * @param assetID The asset of the cancelled order
+     * @return the sequence number of the record
+     * @throws IOException Throws an exception if the record cannot be written
+     */
+    public synchronized long appendCancel(int orderID, int assetID) throws IOException {
+        int start = begin(Kind.CANCEL, 2 * Integer.BYTES);
+        buffer.putInt(orderID);
+        buffer.putInt(assetID);
+        return end(start);
+    }
+
+    /**
+     * Method used to journal a fill between an incoming order and a resting order
+     * @param assetID The asset that was traded
+     * @param takerID The incoming order
+     * @param makerID The resting order
+     * @param qty The quantity traded
+     * @param price The price the fill executed at
+     * @return the sequence number of the record
+     * @throws IOException Throws an exception if the record cannot be written
+     */
+    public synchronized long appendFill(int assetID, int takerID, int makerID, int qty, int price) throws IOException {
+        int start = begin(Kind.FILL, 5 * Integer.BYTES);
+        buffer.putInt(takerID);
+        buffer.putInt(assetID);
+        buffer.putInt(qty);
+        buffer.putInt(price);
+        buffer.putInt(makerID);
+        return end(start);
+    }
+
+    /**
+     * Method used to journal a call auction of an asset's order book, so that it is run again at the same point
+     * when the journal is replayed
+     * @param assetID The asset whose book was auctioned
+     * @return the sequence number of the record
+     * @throws IOException Throws an exception if the record cannot be written
+     */
+    public synchronized long appendAuction(int assetID) throws IOException {
+        int start = begin(Kind.AUCTION, 2 * Integer.BYTES);
+        buffer.putInt(0);
+        buffer.putInt(assetID);
+        return end(start);
+    }
+
+    /**
+     * Method used to make every record appended so far durable. Does nothing if nothing has been appended since the
+     * last sync.
+     * @throws IOException Throws an exception if the records cannot be written
+     */
+    public synchronized void sync() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        flush();
+        channel.force(false);
+        dirty = false;
+    }
+
+    /**
+     * Method used to read back every record in the journal, oldest first. Records that have been appended but not
+     * synced are not included.
+     * @param handler Called once for each record
+     * @throws IOException Throws an exception if the journal cannot be read
+     */
+    public void replay(Consumer<Record> handler) throws IOException {
+        scan(handler, 0);
+    }
+
+    /**
+     * Method used to read back the records from a position in the journal onwards, e.g. the records written since a
+     * snapshot of the order books was taken. The whole journal is read if the position is past its end.
+     * @param position A position returned by getEnd
+     * @param handler Called once for each record
+     * @throws IOException Throws an exception if the journal cannot be read
+     */
+    public void replay(long position, Consumer<Record> handler) throws IOException {
+        scan(handler, Files.exists(path) && position <= Files.size(path) ? position : 0);
+    }
+
+    /**
+     * Getter for the position just after the newest record, writing out any buffered records first so the position
+     * is in the file
+     * @return the position to replay from to read only the records appended after this call
+     * @throws IOException Throws an exception if the buffered records cannot be written
+     */
+    public synchronized long getEnd() throws IOException {
+        flush();
+        return channel.position();
+    }
+
+    /**
+     * Syncs any outstanding records and closes the journal file
+     * @throws IOException Throws an exception if the records cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    /**
+     * Starts a record in the write buffer, writing out the buffer first if the record would not fit
+     * @param kind The kind of record
+     * @param size The size of the record's fields in bytes
+     * @return the position of the record in the buffer
+     * @throws IOException Throws an exception if the buffer cannot be written out
+     */
+    private int begin(Kind kind, int size) throws IOException {
+        int recordSize = HEADER + Long.BYTES + 1 + size + TRAILER;
+        if (recordSize > buffer.capacity()) {
+            throw new IOException("Journal record too large: " + recordSize + " bytes");
+        }
+        if (buffer.remaining() < recordSize) {
+            flush();
+        }
+
+        int start = buffer.position();
+        buffer.putInt(recordSize - HEADER);
+        buffer.putLong(sequence + 1);
+        buffer.put((byte) kind.ordinal());
+        return start;
+    }
+
+    /**
+     * Finishes the record started at a position in the write buffer by adding its CRC
+     * @param start The position returned by begin
+     * @return the sequence number of the record
+     */
+    private long end(int start) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(start + HEADER).limit(buffer.position());
+        crc.reset();
+        crc.update(record);
+        buffer.putInt((int) crc.getValue());
+
+        dirty = true;
+        return ++sequence;
+    }
+
+    /**
+     * Writes the contents of the write buffer to the end of the file
+     * @throws IOException Throws an exception if the write fails
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads through the journal file, checking every record, and sets the last sequence number
+     * @param handler Called for each valid record, or null to only check the records
+     * @param from The position to start reading at, which must be the start of a record
+     * @return the position in the file just after the last valid record
+     * @throws IOException Throws an exception if the file cannot be read
+     */
+    private long scan(Consumer<Record> handler, long from) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        Record record = new Record();
+        CRC32 check = new CRC32();
+        long position = from;
+        long last = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            in.skipNBytes(from);
+            while (true) {
+                int length;
+                byte[] body;
+                try {
+                    length = in.readInt();
+                    if (length < Long.BYTES + 1 + TRAILER || length > BUFFER_SIZE) {
+                        break;
+                    }
+                    body = new byte[length - TRAILER];
+                    in.readFully(body);
+                    check.reset();
+                    check.update(body);
+                    if (in.readInt() != (int) check.getValue()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break; // The last record was only partly written
+                }
+
+                ByteBuffer fields = ByteBuffer.wrap(body);
+                last = fields.getLong();
+                if (handler != null) {
+                    read(fields, record);
+                    record.sequence = last;
+                    handler.accept(record);
+                }
+                position += HEADER + length;
+            }
+        }
+
+        if (handler == null) {
+            this.sequence = last;
+        }
+        return position;
+    }
+
+    /**
+     * Decodes the fields of a record
+     * @param fields The record, positioned just after the sequence number
+     * @param record The record to fill in
+     */
+    private static void read(ByteBuffer fields, Record record) {
+        record.kind = Kind.values()[fields.get()];
+        record.orderID = fields.getInt();
+        record.assetID = fields.getInt();
+        record.unitName = null;
+        record.qty = 0;
+        record.price = 0;
+        record.isBuy = false;
+        record.type = null;
+        record.budget = 0;
+        record.expiry = 0;
+        record.makerID = 0;
+
+        switch (record.kind) {
+            case NEW:
+                record.qty = fields.getInt();
+                record.price = fields.getInt();
+                record.budget = fields.getInt();
+                record.isBuy = fields.get() == 1;
+                record.type = Order.Type.values()[fields.get()];
+                byte[] unitName = new byte[fields.getShort()];
+                fields.get(unitName);
+                record.unitName = new String(unitName, StandardCharsets.UTF_8);
+                if (fields.remaining() >= Long.BYTES) {
+                    record.expiry = fields.getLong(); // Not written by older versions
+                }
+                break;
+            case FILL:
+                record.qty = fields.getInt();
+                record.price = fields.getInt();
+                record.makerID = fields.getInt();
+                break;
+            default:
+                break;
+        }
+    }
+}
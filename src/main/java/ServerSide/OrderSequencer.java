@@ -0,0 +1,145 @@
+package ServerSide;
+
+import ClientSide.Order;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Puts every placed and cancelled order into a single sequence that is consumed by one matching thread.
+ * Commands are written into a ring of pre-allocated slots: any number of threads may publish, each claiming the
+ * next sequence number with an atomic increment, and a single consumer reads the slots back in sequence order.
+ * No locks are taken on either side, and the only waiting is a publisher spinning while the ring is full.
+ */
+public class OrderSequencer {
+    private static final int SPIN_TRIES = 200;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final OrderCommand[] slots;
+    private final int mask;
+    private final AtomicLongArray published; // The sequence last published into each slot
+    private final AtomicLong claimed = new AtomicLong(-1); // The last sequence handed to a publisher
+    private final AtomicLong consumed = new AtomicLong(-1); // The last sequence the consumer has finished with
+
+    /**
+     * Constructor for a sequencer with a fixed number of slots.
+     * @param capacity The number of commands that can be waiting at once, must be a power of two
+     */
+    public OrderSequencer(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Sequencer capacity must be a power of two: " + capacity);
+        }
+
+        slots = new OrderCommand[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new OrderCommand();
+            published.set(i, -1);
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Method used to add a command to the end of the sequence. If the ring is full the calling thread waits until
+     * the consumer has caught up.
+     * @param type Whether the order is being placed or cancelled
+     * @param order The order the command applies to
+     * @return the sequence number given to the command
+     */
+    public long publish(OrderCommand.Type type, Order order) {
+        return publish(type, order, null);
+    }
+
+    /**
+     * Method used to add a command to the end of the sequence along with a latch the matcher counts down once the
+     * order has been matched, so the publisher can wait for the result.
+     * @param type Whether the order is being placed or cancelled
+     * @param order The order the command applies to
+     * @param matched The latch to count down, or null
+     * @return the sequence number given to the command
+     */
+    public long publish(OrderCommand.Type type, Order order, CountDownLatch matched) {
+        long sequence = claimed.incrementAndGet();
+
+        // Wait for the consumer to finish with the command that used this slot one lap ago
+        while (sequence - slots.length > consumed.get()) {
+            Thread.yield();
+        }
+
+        int index = (int) sequence & mask;
+        OrderCommand slot = slots[index];
+        slot.type = type;
+        slot.order = order;
+        slot.sequence = sequence;
+        slot.matched = matched;
+        published.set(index, sequence); // Volatile write makes the slot's fields visible to the consumer
+        return sequence;
+    }
+
+    /**
+     * Method used by the consuming thread to handle every command that has been published, in sequence order.
+     * If nothing has been published the thread waits up to the timeout for a command to arrive. The handler must
+     * not keep a reference to the command as its slot is reused afterwards.
+     * @param handler Called once for each command
+     * @param timeout The longest time to wait for a command
+     * @param unit The unit of the timeout
+     * @return the number of commands handled
+     */
+    public int drain(Consumer<OrderCommand> handler, long timeout, TimeUnit unit) {
+        long next = consumed.get() + 1;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int tries = 0;
+
+        while (!isPublished(next)) {
+            if (System.nanoTime() - deadline >= 0) {
+                return 0;
+            }
+            if (tries++ < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+
+        int handled = 0;
+        while (isPublished(next)) {
+            try {
+                handler.accept(slots[(int) next & mask]);
+            } finally {
+                consumed.set(next); // Free the slot even if the handler failed so publishers are never stuck
+            }
+            next++;
+            handled++;
+        }
+        return handled;
+    }
+
+    /**
+     * Check if the command with a sequence number has been fully written to its slot
+     * @param sequence The sequence number
+     * @return true if the command can be consumed
+     */
+    private boolean isPublished(long sequence) {
+        return published.get((int) sequence & mask) == sequence;
+    }
+
+    /**
+     * Check if every published command has been consumed
+     * @return true if no commands are waiting
+     */
+    public boolean isEmpty() {
+        return consumed.get() == claimed.get();
+    }
+
+    /**
+     * Getter for the sequence number of the last command the consumer handled
+     * @return the last consumed sequence number, -1 if nothing has been consumed
+     */
+    public long getConsumedSequence() {
+        return consumed.get();
+    }
+}
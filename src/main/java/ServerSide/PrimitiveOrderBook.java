@@ -0,0 +1,487 @@
+package ServerSide;
+
+import ClientSide.Order;
+
+import java.util.Arrays;
+
+/**
+ * An in-memory limit order book for a single asset that is stored entirely in primitive arrays. It matches with the
+ * same price-time priority as OrderBook, but instead of holding Order objects each resting order is a slot across a
+ * set of int arrays (order ID, unit ID, quantity, price and the links to the orders either side of it at the same
+ * price). Price levels are kept in sorted arrays with the best price last, and fills are written into a FillBuffer
+ * supplied by the caller. Freed slots are reused, so once the arrays have grown to fit the busiest the book has been,
+ * entering and cancelling orders allocates nothing.
+ */
+public class PrimitiveOrderBook {
+    private static final int NONE = -1;
+
+    /**
+     * Called for each resting order by forEach
+     */
+    public interface Visitor {
+        /**
+         * Visits a resting order
+         * @param orderID The ID of the order
+         * @param unitID The ID of the unit that placed the order
+         * @param isBuy True for a buy order, false for a sell order
+         * @param qty The quantity still to be filled
+         * @param price The limit price of the order
+         */
+        void visit(int orderID, int unitID, boolean isBuy, int qty, int price);
+    }
+
+    private final int assetID;
+
+    // One slot per resting order
+    private int[] orderIDs;
+    private int[] unitIDs;
+    private int[] quantities;
+    private int[] prices;
+    private boolean[] buys;
+    private int[] previous; // The slot of the order in front of this one at the same price
+    private int[] next; // The slot of the order behind this one at the same price, or the next free slot
+    private int freeSlot = NONE;
+    private int usedSlots = 0; // Slots below this have been handed out at least once
+    private int size = 0;
+
+    private final Levels bids = new Levels(true);
+    private final Levels asks = new Levels(false);
+    private final SlotIndex index; // Slot of each resting order by order ID
+
+    /**
+     * Constructor for an empty order book.
+     * @param assetID The ID of the asset that is traded in this book
+     * @param capacity The number of resting orders the book can hold before its arrays have to grow
+     */
+    public PrimitiveOrderBook(int assetID, int capacity) {
+        this.assetID = assetID;
+        capacity = Math.max(capacity, 1);
+        orderIDs = new int[capacity];
+        unitIDs = new int[capacity];
+        quantities = new int[capacity];
+        prices = new int[capacity];
+        buys = new boolean[capacity];
+        previous = new int[capacity];
+        next = new int[capacity];
+        index = new SlotIndex(capacity);
+    }
+
+    /**
+     * Getter for the asset traded in this book
+     * @return the asset ID
+     */
+    public int getAssetID() {
+        return assetID;
+    }
+
+    /**
+     * Method used to match an incoming limit order against the opposite side of the book. The order sweeps through as
+     * many price levels as it needs, partially filling resting orders where necessary, until it is filled or the best
+     * price no longer crosses. Any quantity that cannot be matched is left resting in the book. Trades always execute
+     * at the price of the resting order.
+     * @param orderID The ID of the incoming order
+     * @param unitID The ID of the unit that placed the order
+     * @param isBuy True for a buy order, false for a sell order
+     * @param qty The quantity of the order
+     * @param price The limit price of the order
+     * @param fills The buffer to write the fills into, it is cleared first
+     * @return the number of fills
+     */
+    public int add(int orderID, int unitID, boolean isBuy, int qty, int price, FillBuffer fills) {
+        return add(orderID, unitID, isBuy, qty, price, Order.Type.LIMIT, Integer.MAX_VALUE, fills);
+    }
+
+    /**
+     * Method used to match an incoming order of any type against the opposite side of the book, in the same way as
+     * OrderBook. Only limit orders rest, market orders trade at any price, and fill or kill orders only trade if
+     * their whole quantity can be filled.
+     * @param orderID The ID of the incoming order
+     * @param unitID The ID of the unit that placed the order
+     * @param isBuy True for a buy order, false for a sell order
+     * @param qty The quantity of the order
+     * @param price The limit price of the order, ignored for market orders
+     * @param type How the order is matched
+     * @param budget The most credits a buy may spend, Integer.MAX_VALUE for no limit
+     * @param fills The buffer to write the fills into, it is cleared first
+     * @return the number of fills
+     */
+    public int add(int orderID, int unitID, boolean isBuy, int qty, int price, Order.Type type, int budget,
+                   FillBuffer fills) {
+        fills.reset(assetID, orderID, unitID, isBuy, qty, type);
+        Levels opposite = isBuy ? asks : bids;
+        if (type == Order.Type.MARKET) {
+            price = isBuy ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+        }
+        if (type == Order.Type.FILL_OR_KILL && available(opposite, isBuy, qty, price) < qty) {
+            return 0;
+        }
+
+        while (qty > 0 && opposite.count > 0) {
+            int best = opposite.count - 1;
+            int bestPrice = opposite.prices[best];
+            if (isBuy ? price < bestPrice : price > bestPrice) {
+                break;
+            }
+
+            int slot = opposite.heads[best];
+            int traded = Math.min(qty, quantities[slot]);
+            if (bestPrice > 0) {
+                traded = Math.min(traded, budget / bestPrice);
+            }
+            if (traded == 0) {
+                break; // A buy that cannot afford any more
+            }
+            budget -= traded * bestPrice;
+            qty -= traded;
+            quantities[slot] -= traded;
+            fills.add(orderIDs[slot], unitIDs[slot], quantities[slot], traded, bestPrice);
+            if (quantities[slot] == 0) {
+                remove(slot);
+            }
+        }
+
+        if (qty > 0 && type == Order.Type.LIMIT) {
+            rest(orderID, unitID, isBuy, qty, price);
+        }
+        return fills.size();
+    }
+
+    /**
+     * Adds up the quantity an incoming order could trade against, stopping once there is enough to fill it
+     * @param opposite The opposite side of the book
+     * @param isBuy True if the incoming order is a buy
+     * @param qty The quantity of the incoming order
+     * @param price The limit price of the incoming order
+     * @return the quantity resting at prices the order crosses, up to at least the order's quantity
+     */
+    private int available(Levels opposite, boolean isBuy, int qty, int price) {
+        int available = 0;
+        for (int level = opposite.count - 1; level >= 0; level--) {
+            int levelPrice = opposite.prices[level];
+            if (isBuy ? price < levelPrice : price > levelPrice) {
+                break;
+            }
+            for (int slot = opposite.heads[level]; slot != NONE; slot = next[slot]) {
+                available += quantities[slot];
+                if (available >= qty) {
+                    return available;
+                }
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Method used to remove a resting order from the book
+     * @param orderID The ID of the order to remove
+     * @return the quantity that was still resting, or 0 if the order is not resting in this book
+     */
+    public int cancel(int orderID) {
+        int slot = index.get(orderID);
+        if (slot == NONE) {
+            return 0;
+        }
+
+        int qty = quantities[slot];
+        remove(slot);
+        return qty;
+    }
+
+    /**
+     * Check if an order is resting in the book
+     * @param orderID The ID of the order
+     * @return true if the order is resting in the book
+     */
+    public boolean contains(int orderID) {
+        return index.get(orderID) != NONE;
+    }
+
+    /**
+     * Getter for the quantity of a resting order that is still to be filled
+     * @param orderID The ID of the order
+     * @return the remaining quantity, or 0 if the order is not resting in this book
+     */
+    public int getQty(int orderID) {
+        int slot = index.get(orderID);
+        return slot == NONE ? 0 : quantities[slot];
+    }
+
+    /**
+     * Getter for the number of orders resting in the book
+     * @return the number of resting orders
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method used to visit every resting order, the bids best price first and then the asks best price first, with
+     * the orders at each price in the order they arrived. Adding the orders to an empty book in this order rebuilds
+     * the same book.
+     * @param visitor Called for each resting order
+     */
+    public void forEach(Visitor visitor) {
+        for (Levels side : new Levels[] {bids, asks}) {
+            for (int level = side.count - 1; level >= 0; level--) {
+                for (int slot = side.heads[level]; slot != NONE; slot = next[slot]) {
+                    visitor.visit(orderIDs[slot], unitIDs[slot], buys[slot], quantities[slot], prices[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Getter for the highest buy price in the book
+     * @return the best bid price, or -1 if there are no buy orders
+     */
+    public int bestBid() {
+        return bids.count == 0 ? NONE : bids.prices[bids.count - 1];
+    }
+
+    /**
+     * Getter for the lowest sell price in the book
+     * @return the best ask price, or -1 if there are no sell orders
+     */
+    public int bestAsk() {
+        return asks.count == 0 ? NONE : asks.prices[asks.count - 1];
+    }
+
+    /**
+     * Adds an order to the back of the queue at its price level
+     */
+    private void rest(int orderID, int unitID, boolean isBuy, int qty, int price) {
+        int slot = allocate();
+        orderIDs[slot] = orderID;
+        unitIDs[slot] = unitID;
+        quantities[slot] = qty;
+        prices[slot] = price;
+        buys[slot] = isBuy;
+        next[slot] = NONE;
+
+        Levels side = isBuy ? bids : asks;
+        int level = side.find(price);
+        if (level < 0) {
+            level = side.insert(-level - 1, price);
+            side.heads[level] = slot;
+            previous[slot] = NONE;
+        } else {
+            int tail = side.tails[level];
+            next[tail] = slot;
+            previous[slot] = tail;
+        }
+        side.tails[level] = slot;
+
+        index.put(orderID, slot);
+        size++;
+    }
+
+    /**
+     * Unlinks a resting order from its price level, dropping the level if it is now empty, and frees its slot
+     * @param slot The slot of the order to remove
+     */
+    private void remove(int slot) {
+        Levels side = buys[slot] ? bids : asks;
+        int level = side.find(prices[slot]);
+
+        if (previous[slot] == NONE) {
+            side.heads[level] = next[slot];
+        } else {
+            next[previous[slot]] = next[slot];
+        }
+        if (next[slot] == NONE) {
+            side.tails[level] = previous[slot];
+        } else {
+            previous[next[slot]] = previous[slot];
+        }
+        if (side.heads[level] == NONE) {
+            side.remove(level);
+        }
+
+        index.remove(orderIDs[slot]);
+        next[slot] = freeSlot;
+        freeSlot = slot;
+        size--;
+    }
+
+    /**
+     * Hands out a free slot, growing the arrays if every slot is in use
+     * @return the slot to store an order in
+     */
+    private int allocate() {
+        if (freeSlot != NONE) {
+            int slot = freeSlot;
+            freeSlot = next[slot];
+            return slot;
+        }
+
+        if (usedSlots == orderIDs.length) {
+            int capacity = orderIDs.length * 2;
+            orderIDs = Arrays.copyOf(orderIDs, capacity);
+            unitIDs = Arrays.copyOf(unitIDs, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            buys = Arrays.copyOf(buys, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return usedSlots++;
+    }
+
+    /**
+     * The price levels on one side of the book, sorted so the best price is last. Each level holds the first and
+     * last slot of the queue of orders at that price.
+     */
+    private static final class Levels {
+        private final boolean highestBest;
+        private int[] prices = new int[16];
+        private int[] heads = new int[16];
+        private int[] tails = new int[16];
+        private int count = 0;
+
+        private Levels(boolean highestBest) {
+            this.highestBest = highestBest;
+        }
+
+        /**
+         * Binary search for a price level
+         * @param price The price to find
+         * @return the index of the level, or (-(insertion point) - 1) if there is no level at that price
+         */
+        private int find(int price) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int compare = highestBest
+                        ? Integer.compare(prices[middle], price)
+                        : Integer.compare(price, prices[middle]);
+                if (compare < 0) {
+                    low = middle + 1;
+                } else if (compare > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * Opens an empty price level, shifting the better priced levels along
+         * @param level The index to open the level at
+         * @param price The price of the level
+         * @return the index of the new level
+         */
+        private int insert(int level, int price) {
+            if (count == prices.length) {
+                prices = Arrays.copyOf(prices, count * 2);
+                heads = Arrays.copyOf(heads, count * 2);
+                tails = Arrays.copyOf(tails, count * 2);
+            }
+            System.arraycopy(prices, level, prices, level + 1, count - level);
+            System.arraycopy(heads, level, heads, level + 1, count - level);
+            System.arraycopy(tails, level, tails, level + 1, count - level);
+            prices[level] = price;
+            count++;
+            return level;
+        }
+
+        /**
+         * Drops an empty price level. Removing the best level is the common case and moves nothing.
+         * @param level The index of the level
+         */
+        private void remove(int level) {
+            int moved = count - level - 1;
+            System.arraycopy(prices, level + 1, prices, level, moved);
+            System.arraycopy(heads, level + 1, heads, level, moved);
+            System.arraycopy(tails, level + 1, tails, level, moved);
+            count--;
+        }
+    }
+
+    /**
+     * Open addressing hash table from order ID to slot, using linear probing. Removed entries are filled by shifting
+     * later entries back, so lookups never have to skip over deleted markers.
+     */
+    private static final class SlotIndex {
+        private int[] keys;
+        private int[] slots; // Slot + 1, so 0 marks an empty entry
+        private int mask;
+        private int shift; // Keeps the top bits of the hash, which are the best mixed
+        private int count = 0;
+
+        private SlotIndex(int capacity) {
+            int tableSize = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) * 2;
+            keys = new int[tableSize];
+            slots = new int[tableSize];
+            mask = tableSize - 1;
+            shift = Integer.numberOfLeadingZeros(tableSize) + 1;
+        }
+
+        private int position(int key) {
+            return (key * 0x9E3779B9) >>> shift; // Fibonacci hashing spreads sequential order IDs
+        }
+
+        private int get(int key) {
+            for (int i = position(key); slots[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return slots[i] - 1;
+                }
+            }
+            return NONE;
+        }
+
+        private void put(int key, int slot) {
+            if ((count + 1) * 2 > keys.length) {
+                resize();
+            }
+            int i = position(key);
+            while (slots[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (slots[i] == 0) {
+                count++;
+            }
+            keys[i] = key;
+            slots[i] = slot + 1;
+        }
+
+        private void remove(int key) {
+            int i = position(key);
+            while (slots[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (slots[i] == 0) {
+                return;
+            }
+
+            // Move back any later entry in the same run that would otherwise become unreachable
+            int gap = i;
+            for (int j = (i + 1) & mask; slots[j] != 0; j = (j + 1) & mask) {
+                int home = position(keys[j]);
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    slots[gap] = slots[j];
+                    gap = j;
+                }
+            }
+            slots[gap] = 0;
+            count--;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldSlots = slots;
+            keys = new int[oldKeys.length * 2];
+            slots = new int[oldSlots.length * 2];
+            mask = keys.length - 1;
+            shift--;
+            count = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldSlots[i] != 0) {
+                    put(oldKeys[i], oldSlots[i] - 1);
+                }
+            }
+        }
+    }
+}
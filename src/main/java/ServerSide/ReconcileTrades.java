@@ -1,12 +1,19 @@
 package ServerSide;
 
 import ClientSide.Asset;
-import ClientSide.Exceptions.InvalidAmount;
 import ClientSide.Order;
+import ClientSide.Unit;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -16,9 +23,47 @@ import java.util.concurrent.TimeUnit;
 public class ReconcileTrades implements Runnable {
     private NetworkConnection data;
     private HashMap<Integer, Order> outstanding;
-    private ArrayList<Integer> AssetIDs;
-    private ArrayList<Order> buys = new ArrayList<>();
-    private ArrayList<Order> sells = new ArrayList<>();
+    private ConcurrentHashMap<Integer, OrderBook> books = new ConcurrentHashMap<>(); // One order book per asset ID
+    private ConcurrentHashMap<Integer, PrimitiveOrderBook> primitiveBooks = new ConcurrentHashMap<>();
+    private int lastOrderID = 0; // The newest order that has been entered into a book
+    private int lastCancelID = 0; // The newest cancellation that has been removed from a book, when polling
+
+    // When sharded, each asset's book is only ever touched by the worker its ID maps to
+    private final ExecutorService[] workers;
+    private final Object dataLock = new Object(); // The matcher writes to the database one thread at a time
+
+    private final boolean eventDriven;
+    private final boolean primitive; // Match in primitive order books instead of books of Order objects
+    private final UnitIDs unitIDs = new UnitIDs();
+    // Fill buffers each matcher thread has finished settling, kept so that matching does not allocate new ones
+    private final ThreadLocal<ArrayDeque<FillBuffer>> spareFills = ThreadLocal.withInitial(ArrayDeque::new);
+    private final OrderSequencer sequencer; // Placed and cancelled orders in the order they were sent, when event driven
+    private final ArrayList<OrderCommand> batch = new ArrayList<>(); // Copies of the commands drained, reused
+    private int batchSize = 0; // The number of commands in the current batch
+
+    private final OrderJournal journal; // Null unless orders are journalled
+    private final long replayedUpTo; // Journal records up to this sequence number were written before start up
+    private HashMap<Integer, Long> journalSettled = new HashMap<>(); // Journal sequence settled for each asset
+    // Settlements each matcher thread has journalled the fills of, waiting for its next flush to make them durable
+    private final ThreadLocal<ArrayList<Runnable>> unsynced = ThreadLocal.withInitial(ArrayList::new);
+
+    private TradeTape tape; // Null unless settled trades are written to a trade tape
+    private Path snapshotFile; // Null unless the order books are snapshotted
+    private long snapshotIntervalNanos;
+    private long nextSnapshot;
+    private final MatcherMetrics metrics = new MatcherMetrics();
+    private long cycleStart = 0; // When the first order of the current drain was handled, 0 between drains
+
+    private final long expiryTickMillis;
+    private final TimingWheel expiries; // Resting orders that expire, only used by the reconciliation thread
+    private final ArrayList<Integer> expiredOrders = new ArrayList<>();
+    private final ArrayList<Integer> expiredAssets = new ArrayList<>();
+
+    // Assets whose books are cleared by call auction rather than matched continuously
+    private final TreeSet<Integer> auctionAssets;
+    private final long auctionIntervalNanos;
+    private long nextAuction;
+    private final HashSet<Integer> auctionPending = new HashSet<>(); // Given orders since their last auction
 
     private volatile boolean running = true;
 
@@ -27,13 +72,66 @@ public class ReconcileTrades implements Runnable {
      */
     public void terminate() {
         running = false;
+        if (eventDriven) {
+            data.setSequencer(null); // Orders placed from now on are written straight to the orders table
+        }
     }
 
     /**
-     * Allows the reconcile method to be run on a thread every six seconds.
+     * Allows the reconcile method to be run on a thread, either every six seconds or as orders are placed
+     * depending on the reconcile mode.
      */
     @Override
     public void run() {
+        if (eventDriven) {
+            runEventDriven();
+        } else {
+            runPolling();
+        }
+
+        if (workers != null) {
+            for (ExecutorService worker : workers) {
+                worker.shutdown(); // Lets the workers finish any queued matching first
+            }
+        }
+
+        if (journal != null || tape != null) {
+            try {
+                if (workers != null) {
+                    for (ExecutorService worker : workers) {
+                        worker.awaitTermination(10, TimeUnit.SECONDS); // Workers may still be settling trades
+                    }
+                }
+                if (journal != null) {
+                    journal.close();
+                }
+                if (tape != null) {
+                    tape.close();
+                }
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Loads the outstanding orders table once, then every six seconds fetches only the orders placed and cancelled
+     * since the last check. Placed orders are found by order ID, which only ever increases, and cancelled orders are
+     * read from the cancellations table and cleared once they have been removed from the books.
+     */
+    private void runPolling() {
+        synchronized (dataLock) {
+            // Cancellations from before start up are already reflected in the orders table
+            TreeMap<Integer, Order> cancelled = data.getCancellationsSince(0);
+            if (!cancelled.isEmpty()) {
+                lastCancelID = cancelled.lastKey();
+                data.clearCancellations(lastCancelID);
+            }
+            this.outstanding = data.getOrders();
+        }
+        checkOrders();
+        expireOrders();
+
         while (running) {
             //System.out.println("i'm running in the background around every 6 seconds!");
             try {
@@ -42,112 +140,1038 @@ public class ReconcileTrades implements Runnable {
                 e.printStackTrace();
             }
 
-            this.outstanding = data.getOrders();
+            long start = System.nanoTime();
+            ArrayList<Order> placed;
+            TreeMap<Integer, Order> cancelled;
+            synchronized (dataLock) {
+                placed = data.getOrdersSince(lastOrderID);
+                cancelled = data.getCancellationsSince(lastCancelID);
+            }
 
             //reconcile trade method();
-            getOrderType();
-            checkOrders();
+            for (Order order : cancelled.values()) {
+                expiries.cancel(order.id);
+                if (order.asset != null) {
+                    int assetID = order.asset.getId();
+                    cancel(assetID, order.id);
+                }
+            }
+            for (Order order : placed) {
+                order.placedNanos = placedNanos(order, start); // Read back from the table, so only to the second
+                enter(order);
+            }
+            expireOrders();
+            runAuctions();
+
+            if (!cancelled.isEmpty()) {
+                lastCancelID = cancelled.lastKey();
+                synchronized (dataLock) {
+                    data.clearCancellations(lastCancelID);
+                }
+            }
+            metrics.recordCycle(System.nanoTime() - start, placed.size() + cancelled.size());
         }
     }
 
+    /**
+     * Matches orders as they are handed over by the database connection. On start up the order books are rebuilt
+     * from the newest snapshot and the order journal, if there is one, and any orders in the orders table that are
+     * newer than the journal are loaded. After that the thread sleeps until an order is placed or cancelled. This is
+     * the only thread that writes placed and cancelled orders to the orders table, so every order is applied to both
+     * the database and the order books in the same sequence.
+     */
+    private void runEventDriven() {
+        if (journal != null) {
+            replayJournal(loadSnapshot());
+        }
+
+        ArrayList<Order> placed;
+        synchronized (dataLock) {
+            placed = data.getOrdersSince(lastOrderID);
+        }
+        for (Order order : placed) {
+            enter(order);
+        }
+        flushWorkers();
+        syncJournal();
+        expireOrders();
+
+        while (running) {
+            // Wake up every tick to expire orders and check for terminate()
+            int drained = sequencer.drain(this::queue, expiryTickMillis, TimeUnit.MILLISECONDS);
+            processBatch();
+            if (drained > 0) {
+                metrics.recordCycle(System.nanoTime() - cycleStart, drained);
+                cycleStart = 0;
+            }
+            expireOrders();
+            runAuctions();
+            flushWorkers(); // One fsync per matcher thread for the fills of everything above
+            if (snapshotFile != null && System.nanoTime() - nextSnapshot >= 0) {
+                writeSnapshot();
+            }
+        }
+
+        // Orders sent before terminate() still need to be written to the database
+        while (!sequencer.isEmpty()) {
+            sequencer.drain(this::queue, 10, TimeUnit.MILLISECONDS);
+            processBatch();
+        }
+        flushWorkers();
+        syncJournal();
+        if (snapshotFile != null) {
+            writeSnapshot(); // So the next start up has nothing to replay
+        }
+    }
+
+    /**
+     * Reads the newest snapshot of the order books, if there is one that matches the order journal
+     * @return the snapshot, or null to replay the whole journal
+     */
+    private BookSnapshot loadSnapshot() {
+        if (snapshotFile == null) {
+            return null;
+        }
+
+        try {
+            BookSnapshot snapshot = BookSnapshot.read(snapshotFile);
+            if (snapshot != null && snapshot.journalSequence > replayedUpTo) {
+                System.out.println("Ignoring an order book snapshot that is newer than the order journal");
+                return null;
+            }
+            return snapshot;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of every resting order to the snapshot file. When sharded, the workers first finish
+     * everything queued so far, so the books hold exactly the journal records written up to this point.
+     */
+    private void writeSnapshot() {
+        nextSnapshot = System.nanoTime() + snapshotIntervalNanos;
+        awaitWorkers();
+
+        try {
+            syncJournal();
+            BookSnapshot snapshot = new BookSnapshot(journal.getLastSequence(), journal.getEnd(), lastOrderID);
+            for (PrimitiveOrderBook book : primitiveBooks.values()) {
+                book.forEach((orderID, unitID, isBuy, qty, price) -> snapshot.add(orderID, book.getAssetID(),
+                        unitIDs.nameOf(unitID), isBuy, qty, price, expiries.getExpiryMillis(orderID)));
+            }
+            for (OrderBook book : books.values()) { // Auctioned assets use these even with primitive books
+                book.forEach(order -> snapshot.add(order.id, book.getAssetID(), order.unit.getName(),
+                        order.isBuy, order.qty, order.price, expiries.getExpiryMillis(order.id)));
+            }
+            snapshot.write(snapshotFile);
+            System.out.printf("Order book snapshot of %d resting order(s) written\n", snapshot.orders.size());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Waits until every worker has finished the tasks queued on it so far. Only the reconciliation thread queues
+     * tasks, so the books are not changed again until it queues more.
+     */
+    private void awaitWorkers() {
+        if (workers == null) {
+            return;
+        }
+
+        CountDownLatch idle = new CountDownLatch(workers.length);
+        for (ExecutorService worker : workers) {
+            worker.execute(idle::countDown);
+        }
+        try {
+            idle.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Rebuilds the order books from a snapshot and the order journal. The snapshot's resting orders are put back in
+     * the books in priority order, then the journal records written after the snapshot are replayed. Placed orders
+     * are matched again in the order they were first matched, which reproduces the same fills, and cancelled orders
+     * are cancelled again. Fills the database already holds are not settled a second time, but fills that were lost
+     * when the server stopped before settling them are. Each unit and asset is only read from the database once.
+     * @param snapshot The snapshot to start from, or null to replay the whole journal
+     */
+    private void replayJournal(BookSnapshot snapshot) {
+        HashMap<String, Unit> units = new HashMap<>();
+        HashMap<Integer, Asset> assets = new HashMap<>();
+        synchronized (dataLock) {
+            journalSettled = data.getJournalSettled();
+        }
+
+        long after = 0;
+        long position = 0;
+        if (snapshot != null) {
+            for (BookSnapshot.Resting resting : snapshot.orders) {
+                Order order;
+                synchronized (dataLock) {
+                    order = new Order(units.computeIfAbsent(resting.unitName, data::getUnit),
+                            assets.computeIfAbsent(resting.assetID, data::getAsset), resting.qty, resting.price,
+                            resting.isBuy, resting.orderID);
+                }
+                order.setExpiryMillis(resting.expiry);
+                scheduleExpiry(order);
+                match(order, null, 0, Integer.MAX_VALUE, false); // Rests, as the snapshot's books never cross
+            }
+            lastOrderID = snapshot.lastOrderID;
+            after = snapshot.journalSequence;
+            position = snapshot.journalPosition;
+            System.out.printf("Loaded %d resting order(s) from the order book snapshot\n", snapshot.orders.size());
+        }
+
+        final long replayAfter = after;
+        try {
+            journal.replay(position, record -> {
+                if (record.sequence <= replayAfter) {
+                    return; // Already in the snapshot
+                }
+                if (record.kind == OrderJournal.Kind.NEW) {
+                    Unit unit;
+                    Asset asset;
+                    synchronized (dataLock) {
+                        unit = units.computeIfAbsent(record.unitName, data::getUnit);
+                        asset = assets.computeIfAbsent(record.assetID, data::getAsset);
+                    }
+                    Order order = new Order(unit, asset, record.qty, record.price, record.isBuy, record.orderID);
+                    order.type = record.type;
+                    order.setExpiryMillis(record.expiry);
+                    if (order.isResting()) {
+                        lastOrderID = Math.max(lastOrderID, order.id);
+                        scheduleExpiry(order);
+                    }
+                    match(order, null, record.sequence, record.budget, false);
+                } else if (record.kind == OrderJournal.Kind.CANCEL) {
+                    expiries.cancel(record.orderID);
+                    synchronized (dataLock) {
+                        data.deleteOrder(new Order(null, null, 0, 0, false, record.orderID)); // In case it was not
+                    }
+                    cancel(record.assetID, record.orderID);
+                } else if (record.kind == OrderJournal.Kind.AUCTION) {
+                    auction(record.assetID, record.sequence);
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        System.out.printf("Replayed %d order journal record(s)\n", replayedUpTo - after);
+    }
+
     /**
      * Constructor used to initialise the reconciliation method. This class checks the outstanding orders table of the specified
-     * database for any trades that can be reconciled.
+     * database for any trades that can be reconciled. The reconcile mode, number of matcher threads and type of order
+     * book are read from ServerSettings.props.
      * @param data The database connection.
      */
     public ReconcileTrades(NetworkConnection data) {
+        this(data, ServerSettings.get("reconcileMode", "poll").equalsIgnoreCase("event"),
+                ServerSettings.getInt("matcherThreads", 1),
+                ServerSettings.get("orderBook", "object").equalsIgnoreCase("primitive"),
+                openJournal());
+        setTradeTape(openTradeTape());
+        String snapshots = ServerSettings.get("snapshotFile", "");
+        if (!snapshots.isEmpty()) {
+            setSnapshots(Paths.get(snapshots), ServerSettings.getInt("snapshotIntervalSeconds", 300));
+        }
+    }
+
+    /**
+     * Opens the trade tape named in ServerSettings.props.
+     * @return the tape, or null if there is no tape file set or it cannot be opened
+     */
+    private static TradeTape openTradeTape() {
+        String file = ServerSettings.get("tradeTapeFile", "");
+        if (file.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return new TradeTape(Paths.get(file), ServerSettings.getInt("tradeTapeCapacity", 1 << 20));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Method used to set the trade tape that every settled trade is appended to. This should be set before the
+     * reconciliation thread is started, and the tape is closed when the thread finishes.
+     * @param tape The trade tape, or null to not record trades
+     */
+    public void setTradeTape(TradeTape tape) {
+        this.tape = tape;
+    }
+
+    /**
+     * Method used to snapshot the order books to a file every so often, so that on start up only the order journal
+     * records written since the newest snapshot have to be replayed. Snapshots are only taken when orders are
+     * journalled, and should be set up before the reconciliation thread is started.
+     * @param file The snapshot file, or null to not take snapshots
+     * @param intervalSeconds How often to take a snapshot
+     */
+    public void setSnapshots(Path file, long intervalSeconds) {
+        this.snapshotFile = journal == null ? null : file;
+        this.snapshotIntervalNanos = TimeUnit.SECONDS.toNanos(Math.max(1, intervalSeconds));
+        this.nextSnapshot = System.nanoTime() + snapshotIntervalNanos;
+    }
+
+    /**
+     * Getter for the measurements of the matcher, which are updated while it runs
+     * @return the matcher's metrics
+     */
+    public MatcherMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Works out when an order read from the orders table was placed, on the System.nanoTime() clock
+     * @param order The order, with the date it was placed
+     * @param now System.nanoTime() when the order was read
+     * @return the time the order was placed
+     */
+    private static long placedNanos(Order order, long now) {
+        if (order.datePlaced == null) {
+            return 0;
+        }
+        return now - Duration.between(order.datePlaced, LocalDateTime.now()).toNanos();
+    }
+
+    /**
+     * Opens the order journal named in ServerSettings.props. The journal is only used when orders are matched as
+     * they are placed.
+     * @return the journal, or null if there is no journal file set or it cannot be opened
+     */
+    private static OrderJournal openJournal() {
+        String file = ServerSettings.get("journalFile", "");
+        if (file.isEmpty() || !ServerSettings.get("reconcileMode", "poll").equalsIgnoreCase("event")) {
+            return null;
+        }
+
+        try {
+            return new OrderJournal(Paths.get(file));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Constructor used to initialise the reconciliation method with an explicit reconcile mode, matching on the
+     * reconciliation thread.
+     * @param data The database connection.
+     * @param eventDriven True to match orders as soon as they are placed, false to check the orders table every
+     *                    six seconds
+     */
+    public ReconcileTrades(NetworkConnection data, boolean eventDriven) {
+        this(data, eventDriven, 1);
+    }
+
+    /**
+     * Constructor used to initialise the reconciliation method with an explicit reconcile mode and number of matcher
+     * threads. With more than one thread the assets are shared between the threads by asset ID, so orders for
+     * different assets are matched in parallel while orders for the same asset are still matched in the order they
+     * were placed.
+     * @param data The database connection.
+     * @param eventDriven True to match orders as soon as they are placed, false to check the orders table every
+     *                    six seconds
+     * @param matcherThreads The number of threads to match orders on, 1 to match on the reconciliation thread
+     */
+    public ReconcileTrades(NetworkConnection data, boolean eventDriven, int matcherThreads) {
+        this(data, eventDriven, matcherThreads, false);
+    }
+
+    /**
+     * Constructor used to initialise the reconciliation method with an explicit reconcile mode, number of matcher
+     * threads and type of order book. Primitive order books hold orders in int arrays rather than as Order objects,
+     * so matching an order creates no garbage.
+     * @param data The database connection.
+     * @param eventDriven True to match orders as soon as they are placed, false to check the orders table every
+     *                    six seconds
+     * @param matcherThreads The number of threads to match orders on, 1 to match on the reconciliation thread
+     * @param primitive True to match in primitive order books, false to match in books of Order objects
+     */
+    public ReconcileTrades(NetworkConnection data, boolean eventDriven, int matcherThreads, boolean primitive) {
+        this(data, eventDriven, matcherThreads, primitive, null);
+    }
+
+    /**
+     * Constructor used to initialise the reconciliation method with every option, including an order journal. When
+     * matching orders as they are placed every placed order, cancellation and fill is written to the journal, and on
+     * start up the journal is replayed to rebuild the order books.
+     * @param data The database connection.
+     * @param eventDriven True to match orders as soon as they are placed, false to check the orders table every
+     *                    six seconds
+     * @param matcherThreads The number of threads to match orders on, 1 to match on the reconciliation thread
+     * @param primitive True to match in primitive order books, false to match in books of Order objects
+     * @param journal The order journal, or null to not journal orders. Ignored unless event driven
+     */
+    public ReconcileTrades(NetworkConnection data, boolean eventDriven, int matcherThreads, boolean primitive,
+                           OrderJournal journal) {
         this.data = data;
+        this.eventDriven = eventDriven;
+        this.primitive = primitive;
+        this.journal = eventDriven ? journal : null;
+        this.replayedUpTo = this.journal == null ? 0 : this.journal.getLastSequence();
+        this.expiryTickMillis = Math.max(1, ServerSettings.getInt("expiryTickMillis", 100));
+        this.expiries = new TimingWheel(expiryTickMillis, System.currentTimeMillis());
+        this.auctionAssets = readAuctionAssets();
+        this.auctionIntervalNanos = TimeUnit.SECONDS.toNanos(
+                Math.max(1, ServerSettings.getInt("auctionIntervalSeconds", 60)));
+        this.nextAuction = System.nanoTime() + auctionIntervalNanos;
+
+        if (matcherThreads > 1) {
+            workers = new ExecutorService[matcherThreads];
+            for (int i = 0; i < matcherThreads; i++) {
+                String name = "matcher-" + i;
+                workers[i] = Executors.newSingleThreadExecutor(task -> {
+                    Thread thread = new Thread(task, name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        } else {
+            workers = null;
+        }
+
+        if (eventDriven) {
+            sequencer = new OrderSequencer(ServerSettings.getInt("sequencerCapacity", 1024));
+            data.setSequencer(sequencer); // Start sequencing straight away so no orders are missed before run()
+        } else {
+            sequencer = null;
+        }
     }
 
     /**
-     * Method used to split the outstanding trades in the database into a list for buy orders and a list for sell orders
+     * Reads the assets that are cleared by call auction from ServerSettings.props
+     * @return the asset IDs, empty if every asset is matched continuously
      */
-    private void getOrderType() {
-        // Add the buy and sell orders to their respective lists
-        for (int i : this.outstanding.keySet()) {
-            if (this.outstanding.get(i).isBuy) {
-                this.buys.add(this.outstanding.get(i));
-            } else {
-                this.sells.add(this.outstanding.get(i));
+    private static TreeSet<Integer> readAuctionAssets() {
+        TreeSet<Integer> assetIDs = new TreeSet<>();
+        for (String assetID : ServerSettings.get("auctionAssets", "").split(",")) {
+            if (assetID.isBlank()) {
+                continue;
+            }
+            try {
+                assetIDs.add(Integer.parseInt(assetID.trim()));
+            } catch (NumberFormatException ex) {
+                System.out.printf("Setting auctionAssets has an asset ID that is not a number: %s\n", assetID);
             }
         }
+        return assetIDs;
+    }
+
+    /**
+     * Check if an asset's orders are held in a primitive order book. Auctioned assets always use a book of Order
+     * objects, as an auction settles orders from both sides of the book at once.
+     * @param assetID The asset
+     * @return true if the asset's book is a primitive order book
+     */
+    private boolean isPrimitive(int assetID) {
+        return primitive && !auctionAssets.contains(assetID);
+    }
+
+    /**
+     * Runs a task that reads or changes an asset's order book. When sharded the task is queued on the worker that owns
+     * the asset, otherwise it is run straight away on the current thread.
+     * @param assetID The asset whose book the task uses
+     * @param task The task to run
+     */
+    private void execute(int assetID, Runnable task) {
+        if (workers == null) {
+            task.run();
+        } else {
+            workers[Math.floorMod(assetID, workers.length)].execute(task);
+        }
+    }
+
+    /**
+     * Method used to add a command handed over by the database connection to the current batch. Cancellations are
+     * journalled straight away, but nothing is changed until the whole batch is processed.
+     * @param command The command, which is copied as its slot in the sequencer is reused
+     */
+    private void queue(OrderCommand command) {
+        if (cycleStart == 0) {
+            cycleStart = System.nanoTime();
+        }
+        if (batchSize == batch.size()) {
+            batch.add(new OrderCommand());
+        }
+        OrderCommand copy = batch.get(batchSize++);
+        copy.type = command.type;
+        copy.order = command.order;
+        copy.sequence = command.sequence;
+        copy.matched = command.matched;
+
+        Order order = command.order;
+        if (command.type == OrderCommand.Type.CANCEL && order.asset != null && journal != null) {
+            try {
+                journal.appendCancel(order.id, order.asset.getId());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Method used to process every command in the current batch in the order they were sent. The journal is synced
+     * once first, so the batch's cancellations survive a restart before any of the orders leave the table.
+     */
+    private void processBatch() {
+        if (batchSize == 0) {
+            return;
+        }
+
+        syncJournal();
+        for (int i = 0; i < batchSize; i++) {
+            OrderCommand command = batch.get(i);
+            process(command);
+            command.order = null; // So the batch does not hold on to orders once they have been handled
+            command.matched = null;
+        }
+        batchSize = 0;
+    }
+
+    /**
+     * Method used to apply a placed or cancelled order to the database and the order books
+     * @param command The command handed over by the database connection, with any cancellation already journalled
+     */
+    private void process(OrderCommand command) {
+        Order order = command.order;
+        if (command.type == OrderCommand.Type.CANCEL) {
+            expiries.cancel(order.id);
+            synchronized (dataLock) {
+                data.deleteOrder(order);
+            }
+            if (order.asset != null) {
+                int assetID = order.asset.getId();
+                cancel(assetID, order.id);
+            }
+        } else if (order.isResting()) {
+            synchronized (dataLock) {
+                data.insertOrder(order);
+            }
+            enter(order);
+        } else {
+            int budget = budget(order);
+            // Never written to the orders table
+            match(order, command.matched, journal(order, budget), budget, true);
+        }
+    }
+
+    /**
+     * Getter for the most an order may spend when it is matched. A market buy reserves every credit its unit has not
+     * already reserved, which is released once the order has been matched.
+     * @param order The placed order
+     * @return the unit's available credits for a market buy, otherwise Integer.MAX_VALUE as the order's price
+     *         limits it
+     */
+    private int budget(Order order) {
+        if (order.type == Order.Type.MARKET && order.isBuy && order.unit != null) {
+            return data.getRiskLedger().reserveBudget(order.unit.getName());
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Method used to release what an order that is only matched when it is placed had reserved, once it has been
+     * matched. Its fills have already been paid for, so the whole reservation is released.
+     * @param order The matched order
+     * @param qty The quantity the order was placed with
+     * @param budget The credits reserved for a market buy
+     */
+    private void release(Order order, int qty, int budget) {
+        if (order.unit == null || order.asset == null) {
+            return;
+        }
+        RiskLedger risk = data.getRiskLedger();
+        if (order.type == Order.Type.MARKET && order.isBuy) {
+            risk.release(order.unit.getName(), order.asset.getId(), budget, 0);
+        } else {
+            risk.release(order.unit.getName(), order.asset.getId(),
+                    order.isBuy ? (long) qty * order.price : 0, order.isBuy ? 0 : qty);
+        }
+    }
+
+    /**
+     * Method used to write a placed order to the order journal
+     * @param order The placed order
+     * @param budget The most the order may spend
+     * @return the sequence number of the journal record, 0 if orders are not journalled
+     */
+    private long journal(Order order, int budget) {
+        if (journal == null || order.asset == null || order.unit == null) {
+            return 0;
+        }
+
+        try {
+            return journal.appendNew(order, budget);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Method used to make every journal record written so far durable
+     */
+    private void syncJournal() {
+        if (journal == null) {
+            return;
+        }
+
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method used to run a settlement once the fills it journalled are durable. Settlements that journalled nothing
+     * run straight away, unless earlier ones on the same thread are still waiting, so each thread settles in the order
+     * it matched.
+     * @param journalled True if the settlement's fills were written to the journal
+     * @param settlement The database changes and anything that must follow them
+     */
+    private void afterSync(boolean journalled, Runnable settlement) {
+        ArrayList<Runnable> waiting = unsynced.get();
+        if (journalled || !waiting.isEmpty()) {
+            waiting.add(settlement);
+        } else {
+            settlement.run();
+        }
+    }
+
+    /**
+     * Method used to sync the journal once for every fill the current thread has journalled since it last flushed,
+     * then run the settlements that were waiting for it
+     */
+    private void flushSettlements() {
+        ArrayList<Runnable> waiting = unsynced.get();
+        if (waiting.isEmpty()) {
+            return;
+        }
+
+        syncJournal();
+        for (Runnable settlement : waiting) {
+            try {
+                settlement.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        waiting.clear();
+    }
+
+    /**
+     * Method used to flush the settlements of every matcher thread. When sharded a flush is queued on each worker
+     * behind the matching already queued there, otherwise the current thread flushes straight away.
+     */
+    private void flushWorkers() {
+        if (workers == null) {
+            flushSettlements();
+            return;
+        }
+
+        for (ExecutorService worker : workers) {
+            worker.execute(this::flushSettlements);
+        }
+    }
+
+    /**
+     * Getter for a fill buffer to match an order into, reusing one the current thread has finished with if it can
+     * @return an empty fill buffer
+     */
+    private FillBuffer takeFills() {
+        ArrayDeque<FillBuffer> spare = spareFills.get();
+        return spare.isEmpty() ? new FillBuffer(16) : spare.pop();
+    }
+
+    /**
+     * Method used to finish an order once it has been matched and its trades settled
+     * @param order The matched order
+     * @param matched A latch to count down, or null
+     * @param reserved True to release what the order reserved
+     * @param placedQty The quantity the order was placed with
+     * @param budget The most the order could spend
+     */
+    private void finish(Order order, CountDownLatch matched, boolean reserved, int placedQty, int budget) {
+        if (reserved) {
+            release(order, placedQty, budget);
+        }
+        if (matched != null) {
+            matched.countDown();
+        }
+    }
+
+    /**
+     * Getter for the order book of an asset, creating an empty book the first time the asset is seen
+     * @param assetID The asset the book is for
+     * @return the asset's order book
+     */
+    public OrderBook getBook(int assetID) {
+        return books.computeIfAbsent(assetID, OrderBook::new);
+    }
+
+    /**
+     * Getter for the primitive order book of an asset, creating an empty book the first time the asset is seen
+     * @param assetID The asset the book is for
+     * @return the asset's primitive order book
+     */
+    public PrimitiveOrderBook getPrimitiveBook(int assetID) {
+        return primitiveBooks.computeIfAbsent(assetID, id -> new PrimitiveOrderBook(id, 1024));
+    }
+
+    /**
+     * Method used to remove a cancelled order from its asset's order book
+     * @param assetID The asset the order is for
+     * @param orderID The ID of the cancelled order
+     */
+    private void cancel(int assetID, int orderID) {
+        if (isPrimitive(assetID)) {
+            execute(assetID, () -> getPrimitiveBook(assetID).cancel(orderID));
+        } else {
+            execute(assetID, () -> getBook(assetID).cancel(orderID));
+        }
     }
 
     /**
      * Method used to check the outstanding orders to see if any orders can be reconciled.
-     * If an order can be reconciled both the database and client side instances of the order are updated to reflect the
-     * reconciliation. A buy order is reconciled if there is a sell order for the same asset, with either the exact or
-     * a greater number of the asset. Furthermore the reconciliation only occurs if the buy price is greater than or
-     * equal to the sell price. In the case where the sell price is less than the buy price the trade occurs at the lower
-     * price.
+     * Orders that have not been seen before are entered into their asset's order book oldest first, where they are
+     * matched against the best priced orders on the other side of the book. If a buy price is greater than or equal
+     * to a sell price the trade occurs at the price of the order that was placed first. Orders that cannot be
+     * matched stay in the book for the next reconciliation.
      */
     private void checkOrders() {
-        try {
-            if (!buys.isEmpty()) {
-                for (Order bo : buys) {
-                    if (!sells.isEmpty()) {
-                        for (Order so : sells) {
-                            Asset ba = bo.asset;
-                            Asset sa = so.asset;
-
-                            int bq = bo.qty;
-                            int sq = so.qty;
-
-                            int bp = bo.price;
-                            int sp = so.price;
-                            // Check to see if a reconciliation can occur
-                            if (bo.asset.getId() == so.asset.getId() && bo.qty <= so.qty && bo.price >= so.price) {
-                                try {
-                                    bo.unit.adjustBalance(bo.price * bo.qty * -1); // Subtract the required number of credits from the buyers balance
-                                    data.adjustBalance(bo.unit.getName(), bo.unit.getCredits()); // Update the database
-                                    bo.unit.adjustAsset(bo.asset, bo.qty); // Add the bought qty of assets to the unit
-
-                                    HashMap<Asset, Integer> bassets = bo.unit.getAssets();
-                                    HashMap<Integer, Integer> baIDs = new HashMap<>();
-                                    for (Asset buyAssetID : bassets.keySet()) {
-                                        baIDs.put(sa.getId(), bassets.get(buyAssetID));
-                                    }
-
-                                    data.adjustAssetQuantity(bo.unit.getName(), bo.asset.getId(), baIDs.get(ba.getId())+bo.qty); // Update the database
-
-
-                                    so.unit.adjustBalance(bo.price * bo.qty); // Add the required number of credits to the sellers balance
-                                    data.adjustBalance(so.unit.getName(), so.unit.getCredits()); // Update the database
-                                    so.unit.adjustAsset(bo.asset, bo.qty * -1); // Subtract the qty of assets sold to the buys from the unit
-
-                                    HashMap<Asset, Integer> sassets = so.unit.getAssets();
-                                    HashMap<Integer, Integer> saIDs = new HashMap<>();
-                                    for (Asset sellAssetID : sassets.keySet()) {
-                                        saIDs.put(sa.getId(), sassets.get(sellAssetID));
-                                    }
-
-                                    data.adjustAssetQuantity(so.unit.getName(), so.asset.getId(), saIDs.get(sa.getId())- bo.qty); // Update the database
-                                } catch (InvalidAmount invalidAmount) {
-                                    invalidAmount.printStackTrace();
-                                }
-                                int sellQty = so.qty;
-                                so.qty = sellQty - bo.qty;
-
-                                if (so.qty == 0) {
-                                    System.out.println("\nAll of an asset's orders have been reconciled...\n" +
-                                            "Now cancelling these orders as they are complete");
-                                    this.data.cancelOrder(so); // Cancel the sell order if it has no more assets to sell
-                                    this.sells.remove(so); // Remove the empty order from the checking list
-                                }
-                                bo.setDateResolved(LocalDateTime.now());
-                                System.out.println("Trade reconciled");
-                                this.data.reconcileOrder(bo); // Reconcile the buy order
-                                this.buys.remove(bo); // remove the fulfilled order from the checking list
+        ArrayList<Integer> orderIDs = new ArrayList<>(this.outstanding.keySet());
+        Collections.sort(orderIDs); // Order IDs are auto incremented so this is the order they were placed in
+
+        for (int id : orderIDs) {
+            enter(this.outstanding.get(id));
+        }
+    }
+
+    /**
+     * Method used to enter a newly placed order into its asset's order book and settle any resulting trades.
+     * Orders that are older than the newest order already entered have either been entered before or have
+     * since been filled or cancelled, so they are ignored.
+     * @param order The order to enter
+     */
+    private void enter(Order order) {
+        if (order.id <= lastOrderID) {
+            return;
+        }
+        lastOrderID = order.id;
+        scheduleExpiry(order);
+        int budget = budget(order);
+        match(order, null, journal(order, budget), budget, false);
+    }
+
+    /**
+     * Method used to schedule a resting order to be cancelled when it expires
+     * @param order The order, which is ignored if it does not expire
+     */
+    private void scheduleExpiry(Order order) {
+        if (order.expiry != null && order.isResting() && order.asset != null) {
+            expiries.schedule(order.id, order.asset.getId(), order.getExpiryMillis());
+        }
+    }
+
+    /**
+     * Method used to cancel every resting order whose expiry has passed. The cancellations are journalled and made
+     * durable with one sync, then the orders are removed from the orders table in one transaction and from their
+     * books. Orders that were filled or cancelled since they were scheduled are no longer in either, so removing
+     * them again does nothing.
+     */
+    private void expireOrders() {
+        expiries.advance(System.currentTimeMillis(), (orderID, assetID) -> {
+            expiredOrders.add(orderID);
+            expiredAssets.add(assetID);
+        });
+        if (expiredOrders.isEmpty()) {
+            return;
+        }
+
+        if (journal != null) {
+            try {
+                for (int i = 0; i < expiredOrders.size(); i++) {
+                    journal.appendCancel(expiredOrders.get(i), expiredAssets.get(i));
+                }
+                journal.sync(); // The cancellations must survive a restart once the orders leave the table
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        synchronized (dataLock) {
+            data.deleteOrders(expiredOrders);
+        }
+        for (int i = 0; i < expiredOrders.size(); i++) {
+            cancel(expiredAssets.get(i), expiredOrders.get(i));
+        }
+
+        System.out.printf("%d order(s) expired\n", expiredOrders.size());
+        expiredOrders.clear();
+        expiredAssets.clear();
+    }
+
+    /**
+     * Method used to run a call auction for every auctioned asset that has been given orders since its last auction,
+     * once the auction interval has passed. Each auction is journalled before it is run, so replaying the journal
+     * runs it again between the same orders.
+     */
+    private void runAuctions() {
+        if (auctionAssets.isEmpty() || System.nanoTime() - nextAuction < 0) {
+            return;
+        }
+        nextAuction = System.nanoTime() + auctionIntervalNanos;
+
+        for (int assetID : auctionAssets) {
+            if (!auctionPending.remove(assetID)) {
+                continue; // Nothing can cross that did not cross at the last auction
+            }
+            long sequence = 0;
+            if (journal != null) {
+                try {
+                    sequence = journal.appendAuction(assetID);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            auction(assetID, sequence);
+        }
+    }
+
+    /**
+     * Method used to clear an asset's order book by call auction and settle every resulting trade in one transaction
+     * @param assetID The asset to auction
+     * @param sequence The sequence number of the auction's journal record, 0 if it is not journalled
+     */
+    private void auction(int assetID, long sequence) {
+        execute(assetID, () -> {
+            ArrayList<Trade> trades = getBook(assetID).auction();
+            if (!trades.isEmpty()) {
+                System.out.printf("Call auction for asset %d cleared at %d\n", assetID, trades.get(0).price);
+            }
+            settle(assetID, null, trades, sequence, () -> {});
+        });
+    }
+
+    /**
+     * Method used to match an order in its asset's order book and settle any resulting trades. Once the order has
+     * been matched its quantity is whatever could not be filled. Limit orders for auctioned assets are only collected
+     * in the book until the next auction, while orders that do not rest still trade against them straight away.
+     * @param order The order to match
+     * @param matched A latch to count down once the order has been matched, or null
+     * @param sequence The sequence number of the order's journal record, 0 if it is not journalled
+     * @param budget The most the order may spend
+     * @param reserved True to release what the order reserved once it has been matched, for orders that are only
+     *                 matched when they are placed
+     */
+    private void match(Order order, CountDownLatch matched, long sequence, int budget, boolean reserved) {
+        int placedQty = order.qty;
+        if (order.asset == null || order.unit == null) {
+            if (matched != null) {
+                matched.countDown();
+            }
+            return; // The asset or unit has since been removed from the database
+        }
+
+        int assetID = order.asset.getId();
+        boolean collect = auctionAssets.contains(assetID) && order.isResting();
+        if (collect) {
+            auctionPending.add(assetID);
+        }
+        if (isPrimitive(assetID)) {
+            int unitID = unitIDs.idOf(order.unit.getName());
+            execute(assetID, () -> {
+                boolean settling = false;
+                try {
+                    FillBuffer buffer = takeFills();
+                    long start = System.nanoTime();
+                    getPrimitiveBook(assetID).add(order.id, unitID, order.isBuy, order.qty, order.price, order.type,
+                            budget, buffer);
+                    long matchNanos = System.nanoTime() - start;
+                    order.qty = buffer.getTakerRemaining();
+                    boolean filled = !buffer.isEmpty();
+                    settle(buffer, sequence, () -> {
+                        metrics.recordMatch(order, matchNanos, filled);
+                        finish(order, matched, reserved, placedQty, budget);
+                    });
+                    settling = true;
+                } finally {
+                    if (!settling) {
+                        finish(order, matched, reserved, placedQty, budget);
+                    }
+                }
+            });
+        } else {
+            execute(assetID, () -> {
+                boolean settling = false;
+                try {
+                    long start = System.nanoTime();
+                    ArrayList<Trade> trades;
+                    if (collect) {
+                        getBook(assetID).collect(order); // Waits for the next auction
+                        trades = new ArrayList<>();
+                    } else {
+                        trades = getBook(assetID).add(order, budget);
+                    }
+                    long matchNanos = System.nanoTime() - start;
+                    settle(assetID, order, trades, sequence, () -> {
+                        metrics.recordMatch(order, matchNanos, !trades.isEmpty());
+                        finish(order, matched, reserved, placedQty, budget);
+                    });
+                    settling = true;
+                } finally {
+                    if (!settling) {
+                        finish(order, matched, reserved, placedQty, budget);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Method used to update the database to reflect a list of trades. The credits and assets of both units, the order
+     * history and the remaining quantity of every order involved are all updated in a single transaction, so either
+     * the whole list is settled or none of it is.
+     * Fills that come from the order journal are journalled before the database is changed, and the database records
+     * the journal sequence number it has settled up to in the same transaction. The database is only changed once the
+     * thread's next flush has made the fills durable, so one sync covers every order the thread matched in between.
+     * @param assetID The asset that was traded
+     * @param taker The incoming order that caused the trades, or null for the trades of a call auction
+     * @param trades The trades to settle
+     * @param sequence The sequence number of the incoming order's or auction's journal record, 0 if it is not
+     *                 journalled
+     * @param then Run once the trades have been settled, or straight away if there is nothing to settle
+     */
+    private void settle(int assetID, Order taker, ArrayList<Trade> trades, long sequence, Runnable then) {
+        if (trades.isEmpty() || isSettled(assetID, sequence)) {
+            afterSync(false, then);
+            return;
+        }
+
+        boolean journalled = false;
+        if (sequence > replayedUpTo) {
+            try {
+                for (Trade trade : trades) {
+                    if (taker == null) {
+                        journal.appendFill(assetID, trade.buy.id, trade.sell.id, trade.qty, trade.price);
+                    } else {
+                        Order maker = trade.buy == taker ? trade.sell : trade.buy;
+                        journal.appendFill(assetID, taker.id, maker.id, trade.qty, trade.price);
+                    }
+                }
+                journalled = true;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        afterSync(journalled, () -> {
+            try {
+                boolean settled;
+                synchronized (dataLock) {
+                    settled = data.settleTrades(trades, sequence);
+                }
+
+                if (settled) {
+                    System.out.printf("%d trade(s) reconciled\n", trades.size());
+                    if (tape != null) {
+                        try {
+                            for (Trade trade : trades) {
+                                tape.append(assetID, trade.price, trade.qty, trade.buy.unit.getName(),
+                                        trade.sell.unit.getName());
                             }
+                        } catch (IOException e) {
+                            e.printStackTrace();
                         }
                     }
                 }
+            } finally {
+                then.run();
+            }
+        });
+    }
+
+    /**
+     * Method used to update the database to reflect the fills from a primitive order book, in a single transaction.
+     * As with trades, the database is only changed once the fills are durable. The buffer is given back to the
+     * thread's spare buffers afterwards.
+     * @param fills The fills to settle
+     * @param sequence The sequence number of the incoming order's journal record, 0 if it is not journalled
+     * @param then Run once the fills have been settled, or straight away if there is nothing to settle
+     */
+    private void settle(FillBuffer fills, long sequence, Runnable then) {
+        boolean journalled = false;
+        if (!fills.isEmpty() && !isSettled(fills.getAssetID(), sequence) && sequence > replayedUpTo) {
+            try {
+                for (int i = 0; i < fills.size(); i++) {
+                    journal.appendFill(fills.getAssetID(), fills.getTakerID(), fills.getMakerID(i), fills.getQty(i),
+                            fills.getPrice(i));
+                }
+                journalled = true;
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-        } catch (Exception e) {
-            // acting like a fisherman and catching errors
         }
+
+        afterSync(journalled, () -> {
+            try {
+                if (!fills.isEmpty() && !isSettled(fills.getAssetID(), sequence)) {
+                    settleNow(fills, sequence);
+                }
+            } finally {
+                spareFills.get().push(fills);
+                then.run();
+            }
+        });
     }
 
+    /**
+     * Method used to change the database for the fills from a primitive order book and record them on the trade tape
+     * @param fills The fills to settle
+     * @param sequence The sequence number of the incoming order's journal record, 0 if it is not journalled
+     */
+    private void settleNow(FillBuffer fills, long sequence) {
+        boolean settled;
+        synchronized (dataLock) {
+            settled = data.settleFills(fills, unitIDs, sequence);
+        }
+
+        if (settled) {
+            System.out.printf("%d trade(s) reconciled\n", fills.size());
+            if (tape != null) {
+                try {
+                    String taker = unitIDs.nameOf(fills.getTakerUnit());
+                    for (int i = 0; i < fills.size(); i++) {
+                        String maker = unitIDs.nameOf(fills.getMakerUnit(i));
+                        tape.append(fills.getAssetID(), fills.getPrice(i), fills.getQty(i),
+                                fills.isTakerBuy() ? taker : maker, fills.isTakerBuy() ? maker : taker);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
 
+    /**
+     * Check if the trades caused by a journalled order were settled before the journal was replayed
+     * @param assetID The asset that was traded
+     * @param sequence The sequence number of the order's journal record, 0 if it is not journalled
+     * @return true if the database already holds the trades
+     */
+    private boolean isSettled(int assetID, long sequence) {
+        return sequence > 0 && sequence <= replayedUpTo && sequence <= journalSettled.getOrDefault(assetID, 0L);
+    }
 
 }
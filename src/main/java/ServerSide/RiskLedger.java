@@ -0,0 +1,381 @@
+package ServerSide;
+
+import ClientSide.Exceptions.OrderException;
+import ClientSide.Order;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Keeps every unit's credits and holdings in memory, along with how much of each is reserved by orders that have been
+ * placed but not yet filled or cancelled, so that orders can be checked before they are placed without reading the
+ * database. A buy reserves the credits it could spend and a sell reserves the quantity it could sell, so a unit can
+ * never place orders that together spend more credits or sell more of an asset than it has.
+ * <p>
+ * A unit's credits and holdings are read from the database the first time the unit places an order, and read again
+ * after they are changed other than by trading. Resting orders are read from the orders table the first time the
+ * ledger is used. Every method is synchronized, so the ledger can be used by the threads placing orders and the
+ * matcher at the same time.
+ */
+public class RiskLedger {
+
+    /**
+     * Reads the starting state of the ledger from the database
+     */
+    public interface Loader {
+        /**
+         * Reads the ID of every asset that can be traded
+         * @return the asset IDs
+         */
+        Set<Integer> loadAssets();
+
+        /**
+         * Reads a unit's credits and holdings
+         * @param unitName The unit
+         * @param holdings Filled with the quantity the unit holds of each asset, by asset ID
+         * @return the unit's credits, 0 if the unit does not exist
+         */
+        long loadBalances(String unitName, HashMap<Integer, Long> holdings);
+
+        /**
+         * Reads every resting order and restores its reservation with RiskLedger.restore
+         * @param ledger The ledger to restore the orders to
+         */
+        void loadRestingOrders(RiskLedger ledger);
+    }
+
+    /**
+     * A unit's balances and reservations
+     */
+    private static class Account {
+        boolean loaded; // False until the credits and holdings have been read
+        long credits;
+        long reservedCredits;
+        final HashMap<Integer, Long> holdings = new HashMap<>();
+        final HashMap<Integer, Long> reservedQty = new HashMap<>();
+    }
+
+    /**
+     * What a resting order still has reserved
+     */
+    private static class Reservation {
+        final String unitName;
+        final int assetID;
+        final boolean isBuy;
+        final int price;
+        int qty;
+
+        Reservation(String unitName, int assetID, boolean isBuy, int price, int qty) {
+            this.unitName = unitName;
+            this.assetID = assetID;
+            this.isBuy = isBuy;
+            this.price = price;
+            this.qty = qty;
+        }
+    }
+
+    private final Loader loader;
+    private boolean loaded = false;
+    private Set<Integer> assets;
+    private final HashMap<String, Account> accounts = new HashMap<>();
+    private final HashMap<Integer, Reservation> resting = new HashMap<>(); // By order ID
+
+    /**
+     * Constructor for a ledger that is read from the database when it is first used
+     * @param loader Reads the ledger from the database
+     */
+    public RiskLedger(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Check if an asset can be traded
+     * @param assetID The asset
+     * @return true if the asset is in the database
+     */
+    public synchronized boolean hasAsset(int assetID) {
+        load();
+        return assets.contains(assetID);
+    }
+
+    /**
+     * Getter for the credits a unit can still spend
+     * @param unitName The unit
+     * @return the unit's credits less the credits reserved by its orders
+     */
+    public synchronized long getAvailableCredits(String unitName) {
+        Account account = balances(unitName);
+        return account.credits - account.reservedCredits;
+    }
+
+    /**
+     * Getter for the quantity of an asset a unit can still sell
+     * @param unitName The unit
+     * @param assetID The asset
+     * @return the quantity the unit holds less the quantity reserved by its sell orders
+     */
+    public synchronized long getAvailableQty(String unitName, int assetID) {
+        Account account = balances(unitName);
+        return account.holdings.getOrDefault(assetID, 0L) - account.reservedQty.getOrDefault(assetID, 0L);
+    }
+
+    /**
+     * Method used to check a placed order against its unit's balances and reserve what it could spend or sell. A
+     * limit buy reserves its quantity times its price and a sell reserves its quantity. A market buy reserves nothing
+     * here, as its budget is reserved by reserveBudget when it is matched.
+     * @param order The placed order
+     * @throws OrderException Throws an exception if the unit cannot afford the order or does not hold enough of the
+     *                        asset, in which case nothing is reserved
+     */
+    public synchronized void reserve(Order order) throws OrderException {
+        String unitName = order.unit.getName();
+        Account account = balances(unitName);
+        int assetID = order.asset.getId();
+
+        if (order.isBuy) {
+            long cost = order.type == Order.Type.MARKET ? 0 : (long) order.qty * order.price;
+            if (cost > account.credits - account.reservedCredits) {
+                throw new OrderException("Order price exceeds the total funds held by the users organisation!");
+            }
+            hold(unitName, assetID, cost, 0);
+        } else {
+            Long held = account.holdings.get(assetID);
+            if (held == null) {
+                throw new OrderException("Asset not in Organisations Stock!");
+            }
+            if (order.qty > held - account.reservedQty.getOrDefault(assetID, 0L)) {
+                throw new OrderException("Order quantity exceeds the amount held by the users organisation!");
+            }
+            hold(unitName, assetID, 0, order.qty);
+        }
+    }
+
+    /**
+     * Method used to reserve every credit a unit can still spend for a market buy that is about to be matched
+     * @param unitName The unit that placed the market buy
+     * @return the credits reserved, which is the most the order may spend
+     */
+    public synchronized int reserveBudget(String unitName) {
+        Account account = balances(unitName);
+        int budget = (int) Math.max(0, Math.min(Integer.MAX_VALUE, account.credits - account.reservedCredits));
+        account.reservedCredits += budget;
+        return budget;
+    }
+
+    /**
+     * Method used to hand the reservation made by reserve over to a resting order once it has its order ID, so that
+     * fills and cancellations release it
+     * @param order The resting order, which must have been reserved
+     */
+    public synchronized void track(Order order) {
+        load();
+        resting.put(order.id, new Reservation(order.unit.getName(), order.asset.getId(), order.isBuy, order.price,
+                order.qty));
+    }
+
+    /**
+     * Method used to reserve for a resting order read from the orders table when the ledger is loaded
+     * @param orderID The order
+     * @param unitName The unit that placed the order
+     * @param assetID The asset the order is for
+     * @param isBuy True for a buy order
+     * @param qty The quantity left to trade
+     * @param price The order's price
+     */
+    public synchronized void restore(int orderID, String unitName, int assetID, boolean isBuy, int qty, int price) {
+        resting.put(orderID, new Reservation(unitName, assetID, isBuy, price, qty));
+        hold(unitName, assetID, isBuy ? (long) qty * price : 0, isBuy ? 0 : qty);
+    }
+
+    /**
+     * Method used to release what a resting order has left reserved, once it has been cancelled, has expired or
+     * has otherwise left the orders table
+     * @param orderID The order, which is ignored if it has nothing reserved
+     */
+    public synchronized void release(int orderID) {
+        Reservation reservation = resting.remove(orderID);
+        if (reservation != null) {
+            release(reservation.unitName, reservation.assetID,
+                    reservation.isBuy ? (long) reservation.qty * reservation.price : 0,
+                    reservation.isBuy ? 0 : reservation.qty);
+        }
+    }
+
+    /**
+     * Method used to release what reserve made for an order that was never given an order ID, e.g. because it could
+     * not be placed, or once an order that is only matched when it is placed has been matched
+     * @param order The order, with the quantity that was reserved
+     */
+    public synchronized void release(Order order) {
+        release(order.unit.getName(), order.asset.getId(),
+                order.isBuy && order.type != Order.Type.MARKET ? (long) order.qty * order.price : 0,
+                order.isBuy ? 0 : order.qty);
+    }
+
+    /**
+     * Method used to release a reservation that is not held by a resting order, e.g. once an order that is only
+     * matched when it is placed has been matched
+     * @param unitName The unit
+     * @param assetID The asset
+     * @param credits The credits to release
+     * @param qty The quantity of the asset to release
+     */
+    public synchronized void release(String unitName, int assetID, long credits, long qty) {
+        Account account = accounts.get(unitName);
+        if (account == null) {
+            return;
+        }
+        account.reservedCredits = Math.max(0, account.reservedCredits - credits);
+        if (qty != 0) {
+            long left = account.reservedQty.getOrDefault(assetID, 0L) - qty;
+            if (left > 0) {
+                account.reservedQty.put(assetID, left);
+            } else {
+                account.reservedQty.remove(assetID);
+            }
+        }
+    }
+
+    /**
+     * Method used to apply a settled trade. The buyer pays the seller and the asset moves from the seller to the
+     * buyer, and resting orders release what they had reserved for the quantity traded. Orders that are only matched
+     * when they are placed keep their reservation until they are released after matching.
+     * @param buyer The buying unit
+     * @param buyOrderID The buy order
+     * @param seller The selling unit
+     * @param sellOrderID The sell order
+     * @param assetID The asset traded
+     * @param qty The quantity traded
+     * @param price The price traded at
+     */
+    public synchronized void fill(String buyer, int buyOrderID, String seller, int sellOrderID, int assetID, int qty,
+                                  int price) {
+        long value = (long) qty * price;
+        change(buyer, assetID, -value, qty);
+        change(seller, assetID, value, -qty);
+        filled(buyOrderID, qty);
+        filled(sellOrderID, qty);
+    }
+
+    /**
+     * Method used to read a unit's credits and holdings again the next time they are needed, after they have been
+     * changed other than by trading. The unit's reservations are kept.
+     * @param unitName The unit
+     */
+    public synchronized void refresh(String unitName) {
+        Account account = accounts.get(unitName);
+        if (account != null) {
+            account.loaded = false;
+        }
+    }
+
+    /**
+     * Method used to read the assets that can be traded, and every unit's holdings, again the next time they are
+     * needed, after an asset has been added or removed
+     */
+    public synchronized void refreshAssets() {
+        assets = null;
+        for (Account account : accounts.values()) {
+            account.loaded = false;
+        }
+    }
+
+    /**
+     * Method used to forget everything, so that the whole ledger is read again the next time it is used
+     */
+    public synchronized void clear() {
+        loaded = false;
+        assets = null;
+        accounts.clear();
+        resting.clear();
+    }
+
+    /**
+     * Reads the assets, and the resting orders if they have not been read yet
+     */
+    private void load() {
+        if (!loaded) {
+            loaded = true;
+            loader.loadRestingOrders(this);
+        }
+        if (assets == null) {
+            assets = loader.loadAssets();
+        }
+    }
+
+    /**
+     * Getter for a unit's account, creating an empty account the first time the unit is seen
+     * @param unitName The unit
+     * @return the account, whose balances may not have been read
+     */
+    private Account account(String unitName) {
+        return accounts.computeIfAbsent(unitName, name -> new Account());
+    }
+
+    /**
+     * Getter for a unit's account, reading its credits and holdings if they have not been read
+     * @param unitName The unit
+     * @return the account
+     */
+    private Account balances(String unitName) {
+        load();
+        Account account = account(unitName);
+        if (!account.loaded) {
+            account.holdings.clear();
+            account.credits = loader.loadBalances(unitName, account.holdings);
+            account.loaded = true;
+        }
+        return account;
+    }
+
+    /**
+     * Adds to a unit's reservations
+     * @param unitName The unit
+     * @param assetID The asset
+     * @param credits The credits to reserve
+     * @param qty The quantity of the asset to reserve
+     */
+    private void hold(String unitName, int assetID, long credits, long qty) {
+        Account account = account(unitName);
+        account.reservedCredits += credits;
+        if (qty != 0) {
+            account.reservedQty.merge(assetID, qty, Long::sum);
+        }
+    }
+
+    /**
+     * Changes a unit's credits and holdings. Balances that have not been read yet already include the change once
+     * they are read from the database, so they are left alone.
+     * @param unitName The unit
+     * @param assetID The asset
+     * @param credits The change in credits
+     * @param qty The change in the quantity held
+     */
+    private void change(String unitName, int assetID, long credits, long qty) {
+        Account account = accounts.get(unitName);
+        if (account == null || !account.loaded) {
+            return;
+        }
+        account.credits += credits;
+        account.holdings.merge(assetID, qty, Long::sum);
+    }
+
+    /**
+     * Releases the reservation of a resting order for the quantity it traded
+     * @param orderID The order, which is ignored if it is not resting
+     * @param qty The quantity traded
+     */
+    private void filled(int orderID, int qty) {
+        Reservation reservation = resting.get(orderID);
+        if (reservation == null) {
+            return;
+        }
+        qty = Math.min(qty, reservation.qty);
+        reservation.qty -= qty;
+        if (reservation.qty == 0) {
+            resting.remove(orderID);
+        }
+        release(reservation.unitName, reservation.assetID, reservation.isBuy ? (long) qty * reservation.price : 0,
+                reservation.isBuy ? 0 : qty);
+    }
+}
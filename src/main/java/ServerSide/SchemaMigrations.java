@@ -0,0 +1,170 @@
+package ServerSide;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Brings a database created by an older version of the app up to date with the tables the server expects. Every
+ * change made to the tables since they were originally designed is applied in order. The number of changes a database
+ * has had is kept in SQLite's user_version, so each change is only ever applied once and older databases are upgraded
+ * in place. A new database is created with the current tables and set straight to the newest version, so these
+ * changes are only ever applied to existing data.
+ */
+public class SchemaMigrations {
+
+    /**
+     * The statements for each change, oldest first. A database at user_version n has had the first n applied.
+     * New changes are added to the end and existing ones are never edited.
+     */
+    private static final String[][] MIGRATIONS = {
+            { // 1: Orders can expire
+                    "ALTER TABLE orders ADD COLUMN expiry VARCHAR(19)"
+            },
+            { // 2: Units and their holdings are kept in separate tables, keyed so that lookups are index seeks
+                    "CREATE TABLE IF NOT EXISTS orgunits(rowID INTEGER PRIMARY KEY NOT NULL UNIQUE,"
+                            + " unitname VARCHAR(30) NOT NULL, credits INTEGER NOT NULL, assetID VARCHAR(10),"
+                            + " assetqty INTEGER)", // The original table, which new databases start without
+                    "CREATE TABLE units(unitname VARCHAR(30) PRIMARY KEY NOT NULL, credits INTEGER NOT NULL)",
+                    "CREATE TABLE unit_holdings(unitname VARCHAR(30) NOT NULL, assetID INTEGER NOT NULL,"
+                            + " assetqty INTEGER NOT NULL, PRIMARY KEY (unitname, assetID)) WITHOUT ROWID",
+                    "CREATE INDEX unit_holdings_asset ON unit_holdings(assetID)",
+                    // A unit's credits were copied into each of its rows, the first row being the one kept up to date
+                    "INSERT INTO units (unitname, credits) SELECT unitname, credits"
+                            + " FROM (SELECT unitname, credits, MIN(rowID) FROM orgunits GROUP BY unitname)",
+                    "INSERT INTO unit_holdings (unitname, assetID, assetqty)"
+                            + " SELECT unitname, CAST(assetID AS INTEGER), SUM(assetqty) FROM orgunits"
+                            + " WHERE assetID IS NOT NULL GROUP BY unitname, CAST(assetID AS INTEGER)",
+                    "DROP TABLE orgunits"
+            },
+            { // 3: Dates are stored as milliseconds since the epoch rather than as text to be parsed
+                    "CREATE TABLE orders_new(orderID INTEGER PRIMARY KEY AUTOINCREMENT, type VARCHAR(30),"
+                            + " orgunit VARCHAR(30), assetID VARCHAR(30), qty INTEGER, price INTEGER, date INTEGER,"
+                            + " expiry INTEGER)",
+                    // The text dates were in the server's local time, which the 'utc' modifier converts from
+                    "INSERT INTO orders_new SELECT orderID, type, orgunit, assetID, qty, price,"
+                            + " CAST(strftime('%s', date, 'utc') AS INTEGER) * 1000,"
+                            + " CAST(strftime('%s', expiry, 'utc') AS INTEGER) * 1000 FROM orders",
+                    // Dropping orders deletes its AUTOINCREMENT counter, so hand it to the new table first. Otherwise
+                    // IDs of orders that have since been removed would be given out again.
+                    "DELETE FROM sqlite_sequence WHERE name='orders_new'",
+                    "UPDATE sqlite_sequence SET name='orders_new' WHERE name='orders'",
+                    "DROP TABLE orders",
+                    "ALTER TABLE orders_new RENAME TO orders",
+                    "CREATE TABLE history_new(orderID INTEGER PRIMARY KEY NOT NULL, type VARCHAR(30),"
+                            + " orgunit VARCHAR(30), assetID INTEGER, qty INTEGER, price INTEGER, date INTEGER)",
+                    "INSERT INTO history_new SELECT orderID, type, orgunit, assetID, qty, price,"
+                            + " CAST(strftime('%s', date, 'utc') AS INTEGER) * 1000 FROM history",
+                    "DROP TABLE history",
+                    "ALTER TABLE history_new RENAME TO history"
+            },
+            { // 4: Asset IDs are integers in every table, so lookups and joins on them can search an index
+                    "CREATE TABLE orders_new(orderID INTEGER PRIMARY KEY AUTOINCREMENT, type VARCHAR(30),"
+                            + " orgunit VARCHAR(30), assetID INTEGER, qty INTEGER, price INTEGER, date INTEGER,"
+                            + " expiry INTEGER)",
+                    "INSERT INTO orders_new SELECT orderID, type, orgunit, CAST(assetID AS INTEGER), qty, price, date,"
+                            + " expiry FROM orders",
+                    "DELETE FROM sqlite_sequence WHERE name='orders_new'", // Keep the ID counter, as in change 3
+                    "UPDATE sqlite_sequence SET name='orders_new' WHERE name='orders'",
+                    "DROP TABLE orders",
+                    "ALTER TABLE orders_new RENAME TO orders"
+            },
+    };
+
+    /**
+     * Static access only.
+     */
+    private SchemaMigrations() {}
+
+    /**
+     * Getter for the number of changes the app knows about
+     * @return the newest schema version
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS.length;
+    }
+
+    /**
+     * Method used to apply every change a database has not had yet. Each change is applied in its own transaction
+     * along with the new version number, so a change that fails leaves the database at the version before it.
+     * @param connection The database connection, with the tables of an older version created
+     * @return the version the database is now at
+     * @throws SQLException if a change fails
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        return migrate(connection, MIGRATIONS.length);
+    }
+
+    /**
+     * Method used to apply the changes a database has not had yet, stopping at a given version
+     * @param connection The database connection, with the tables of an older version created
+     * @param target The version to stop at, at most the newest
+     * @return the version the database is now at
+     * @throws SQLException if a change fails
+     */
+    public static int migrate(Connection connection, int target) throws SQLException {
+        int version = getVersion(connection);
+        boolean autoCommit = connection.getAutoCommit();
+        try (Statement st = connection.createStatement()) {
+            while (version < Math.min(target, MIGRATIONS.length)) {
+                connection.setAutoCommit(false);
+                try {
+                    for (String sql : MIGRATIONS[version]) {
+                        st.execute(sql);
+                    }
+                    st.execute("PRAGMA user_version = " + (version + 1));
+                    connection.commit();
+                } catch (SQLException ex) {
+                    connection.rollback();
+                    throw ex;
+                }
+                version++;
+                System.out.printf("Database upgraded to version %d\n", version);
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return version;
+    }
+
+    /**
+     * Check if a database has not had any tables created yet, so it can be created at the newest version
+     * @param connection The database connection
+     * @return true if the database is at version 0 and has no orders table
+     * @throws SQLException if the database cannot be read
+     */
+    public static boolean isNew(Connection connection) throws SQLException {
+        if (getVersion(connection) != 0) {
+            return false;
+        }
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT name FROM sqlite_master WHERE type='table' AND name='orders'")) {
+            return !rs.next();
+        }
+    }
+
+    /**
+     * Setter for the number of changes a database has had, used when its tables are created as they are now
+     * @param connection The database connection
+     * @param version The schema version the tables are at
+     * @throws SQLException if the version cannot be written
+     */
+    public static void setVersion(Connection connection, int version) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("PRAGMA user_version = " + version);
+        }
+    }
+
+    /**
+     * Getter for the number of changes a database has had
+     * @param connection The database connection
+     * @return the schema version
+     * @throws SQLException if the version cannot be read
+     */
+    public static int getVersion(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
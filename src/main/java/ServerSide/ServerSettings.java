@@ -0,0 +1,68 @@
+package ServerSide;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Provides read access to the optional settings in the ServerSettings.props file.
+ * The file is only loaded once, the first time a setting is requested, and any setting that is missing or
+ * invalid falls back to the default supplied by the caller.
+ */
+public class ServerSettings {
+
+    private static Properties props = null;
+
+    /**
+     * Static access only.
+     */
+    private ServerSettings() {}
+
+    /**
+     * Loads the settings file the first time it is needed
+     * @return the loaded settings
+     */
+    private static synchronized Properties getProperties() {
+        if (props == null) {
+            props = new Properties();
+            try (InputStream inputStream = ServerSettings.class.getResourceAsStream("ServerSettings.props")) {
+                if (inputStream != null) {
+                    props.load(inputStream);
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Getter for a text setting
+     * @param key The name of the setting
+     * @param defaultValue The value to use if the setting is not configured
+     * @return the configured value
+     */
+    public static String get(String key, String defaultValue) {
+        String value = getProperties().getProperty(key);
+        return (value == null || value.isBlank()) ? defaultValue : value.trim();
+    }
+
+    /**
+     * Getter for a whole number setting
+     * @param key The name of the setting
+     * @param defaultValue The value to use if the setting is not configured or is not a number
+     * @return the configured value
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            System.out.printf("Setting %s=%s is not a number, using %d\n", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+}
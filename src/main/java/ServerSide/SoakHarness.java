@@ -0,0 +1,260 @@
+package ServerSide;
+
+import ClientSide.Asset;
+import ClientSide.Exceptions.DoesNotExist;
+import ClientSide.Exceptions.OrderException;
+import ClientSide.Order;
+import ClientSide.Unit;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Soak test that places a synthetic order flow through NetworkConnection, with ReconcileTrades matching it, for as
+ * long as it is told to and then reports throughput, latency and errors. The database, reconcile mode, order book
+ * and journal are the ones configured in ServerSettings.props, so point the schema at a scratch database first.
+ * <p>
+ * Usage: {@code java ServerSide.SoakHarness [option=value ...]} with the options
+ * <ul>
+ *     <li>seed (1): the seed of the synthetic data and order flow</li>
+ *     <li>users (1000), units (100), assets (50), holdings (10), orders (10000): the size of the database to load</li>
+ *     <li>populate (true): load the synthetic data before starting, which needs an empty database</li>
+ *     <li>reset (false): clear every table first. WARNING deletes all data</li>
+ *     <li>minutes (60): how long to place orders for</li>
+ *     <li>rate (0): actions per second, 0 to go as fast as possible</li>
+ *     <li>report (1): minutes between progress lines</li>
+ *     <li>verbose (false): keep the server's own output, which is hidden by default</li>
+ * </ul>
+ * When a rate is set, latency is measured from when each action was due rather than when it was sent, so a stall
+ * shows up in the latency of every action that queued behind it.
+ */
+public class SoakHarness {
+    private static final int MAX_OPEN = 100_000; // Orders kept to choose cancellations from
+
+    private final NetworkConnection data;
+    private final SyntheticOrderFlow flow;
+    private final PrintStream out;
+
+    private final HashMap<Integer, Asset> assets = new HashMap<>();
+    private final ArrayList<Order> open = new ArrayList<>(); // Resting orders that may still be cancelled
+    private final EnumMap<Order.Type, Long> placed = new EnumMap<>(Order.Type.class);
+    private long cancelled = 0;
+    private long skipped = 0; // Cancellations with no order to cancel
+    private final TreeMap<String, Long> rejected = new TreeMap<>(); // Orders refused by validation, by reason
+    private final TreeMap<String, Long> errors = new TreeMap<>(); // Unexpected exceptions, by type
+    private final Histogram placeLatency = new Histogram();
+    private final Histogram cancelLatency = new Histogram();
+
+    /**
+     * Constructor for a soak test
+     * @param data The database connection to place orders through
+     * @param flow The order flow to place
+     * @param out Where to print progress and the report
+     */
+    public SoakHarness(NetworkConnection data, SyntheticOrderFlow flow, PrintStream out) {
+        this.data = data;
+        this.flow = flow;
+        this.out = out;
+    }
+
+    /**
+     * Runs a soak test from the command line
+     * @param args Options in the form name=value
+     * @throws InterruptedException Throws an exception if interrupted while waiting for the matcher to stop
+     */
+    public static void main(String[] args) throws InterruptedException {
+        HashMap<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                System.out.println("Options are name=value, see the SoakHarness documentation");
+                return;
+            }
+            options.put(option[0], option[1]);
+        }
+
+        PrintStream out = System.out;
+        if (!Boolean.parseBoolean(options.getOrDefault("verbose", "false"))) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        SyntheticOrderFlow flow = new SyntheticOrderFlow(
+                Long.parseLong(options.getOrDefault("seed", "1")),
+                Integer.parseInt(options.getOrDefault("users", "1000")),
+                Integer.parseInt(options.getOrDefault("units", "100")),
+                Integer.parseInt(options.getOrDefault("assets", "50")),
+                Integer.parseInt(options.getOrDefault("holdings", "10")),
+                Integer.parseInt(options.getOrDefault("orders", "10000")));
+        NetworkConnection data = new NetworkConnection();
+
+        if (Boolean.parseBoolean(options.getOrDefault("reset", "false"))) {
+            data.resetEverything();
+        }
+        if (Boolean.parseBoolean(options.getOrDefault("populate", "true"))) {
+            long start = System.nanoTime();
+            if (!data.bulkLoad(flow)) {
+                out.println("Synthetic data could not be loaded, is the database empty?");
+                return;
+            }
+            out.printf("Loaded %d users, %d units, %d assets and %d orders in %.1f s\n", flow.users, flow.units,
+                    flow.assets, flow.restingOrders, (System.nanoTime() - start) / 1e9);
+        }
+
+        SoakHarness harness = new SoakHarness(data, flow, out);
+        harness.run(Double.parseDouble(options.getOrDefault("minutes", "60")),
+                Integer.parseInt(options.getOrDefault("rate", "0")),
+                Double.parseDouble(options.getOrDefault("report", "1")));
+    }
+
+    /**
+     * Starts the matcher, places the order flow for a length of time, stops the matcher and prints the report
+     * @param minutes How long to place orders for
+     * @param rate Actions per second, 0 to go as fast as possible
+     * @param reportMinutes Minutes between progress lines
+     * @throws InterruptedException Throws an exception if interrupted while waiting for the matcher to stop
+     */
+    public void run(double minutes, int rate, double reportMinutes) throws InterruptedException {
+        ReconcileTrades reconciler = new ReconcileTrades(data);
+        Thread thread = new Thread(reconciler, "reconciler");
+        thread.start();
+
+        long start = System.nanoTime();
+        long end = start + (long) (minutes * 60e9);
+        long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+        long reportInterval = Math.max(1, (long) (reportMinutes * 60e9));
+        long nextReport = start + reportInterval;
+        long due = start;
+
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            long began = now;
+            if (interval > 0) {
+                due += interval;
+                if (due > now) {
+                    LockSupport.parkNanos(due - now);
+                }
+                began = due;
+            }
+
+            try {
+                step(began);
+            } catch (RuntimeException e) {
+                errors.merge(e.getClass().getSimpleName(), 1L, Long::sum);
+            }
+
+            if (now >= nextReport) {
+                progress(now - start);
+                nextReport += reportInterval;
+            }
+        }
+
+        reconciler.terminate();
+        thread.join();
+        report(System.nanoTime() - start);
+        out.println(reconciler.getMetrics());
+    }
+
+    /**
+     * Places or cancels the next order of the flow the way the GUI would
+     * @param began When the action started, for measuring its latency
+     */
+    private void step(long began) {
+        SyntheticOrderFlow.Step step = flow.next();
+        if (step.cancel) {
+            if (open.isEmpty()) {
+                skipped++;
+                return;
+            }
+            int index = step.pick % open.size();
+            Order order = open.get(index);
+            if (order.id == 0) {
+                skipped++; // The matcher has not written the order to the database yet
+                return;
+            }
+            open.set(index, open.get(open.size() - 1));
+            open.remove(open.size() - 1);
+
+            data.cancelOrder(order);
+            cancelLatency.record(System.nanoTime() - began);
+            cancelled++;
+            return;
+        }
+
+        Unit unit = data.getUnit(step.unitName);
+        Asset asset = assets.computeIfAbsent(step.assetID, data::getAsset);
+        Order order = new Order(unit, asset, step.qty, step.price, step.isBuy, step.type);
+        try {
+            data.addOrder(order);
+            placeLatency.record(System.nanoTime() - began);
+            placed.merge(step.type, 1L, Long::sum);
+            if (order.isResting()) {
+                if (open.size() < MAX_OPEN) {
+                    open.add(order);
+                } else {
+                    open.set(step.pick % MAX_OPEN, order);
+                }
+            }
+        } catch (OrderException | DoesNotExist e) {
+            rejected.merge(e.getMessage(), 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Getter for the number of orders placed
+     * @return the orders placed of every type
+     */
+    private long totalPlaced() {
+        long total = 0;
+        for (long count : placed.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Getter for the number of actions that were refused or failed
+     * @param counts The counts by reason
+     * @return the total count
+     */
+    private static long total(Map<String, Long> counts) {
+        long total = 0;
+        for (long count : counts.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Prints a line showing how the test is going
+     * @param elapsed Nanoseconds since the test started
+     */
+    private void progress(long elapsed) {
+        long actions = totalPlaced() + cancelled;
+        out.printf("[%.1f min] %d actions, %.1f/s, place p99 %d us, %d rejected, %d errors\n", elapsed / 60e9,
+                actions, actions / (elapsed / 1e9), placeLatency.getPercentile(0.99) / 1000, total(rejected),
+                total(errors));
+    }
+
+    /**
+     * Prints the throughput, latency and error report at the end of the test
+     * @param elapsed Nanoseconds since the test started
+     */
+    private void report(long elapsed) {
+        double seconds = elapsed / 1e9;
+        long actions = totalPlaced() + cancelled;
+        out.printf("Soak test of seed %d finished after %.1f minutes\n", flow.seed, seconds / 60);
+        out.printf("Orders placed: %d %s\n", totalPlaced(), placed);
+        out.printf("Orders cancelled: %d (%d cancellations had no order to cancel)\n", cancelled, skipped);
+        out.printf("Throughput: %.1f actions/s\n", actions / seconds);
+        out.println("Place latency: " + placeLatency.summary(1000, "us"));
+        out.println("Cancel latency: " + cancelLatency.summary(1000, "us"));
+        out.printf("Rejected: %d\n", total(rejected));
+        rejected.forEach((reason, count) -> out.printf("    %d x %s\n", count, reason));
+        out.printf("Errors: %d\n", total(errors));
+        errors.forEach((type, count) -> out.printf("    %d x %s\n", count, type));
+        out.printf("Orders left resting: %d\n", data.getOrders().size());
+    }
+}
@@ -0,0 +1,220 @@
+package ServerSide;
+
+import ClientSide.Order;
+
+import java.util.Iterator;
+import java.util.SplittableRandom;
+
+/**
+ * Generates users, units, assets, holdings, resting orders and a stream of order activity for soak testing, at any
+ * volume. Everything is derived from a seed, so two generators with the same seed and sizes produce the same
+ * database and the same order flow.
+ * <p>
+ * Unit u holds a run of consecutive assets starting at asset u * holdingsPerUnit, so sells are only generated for
+ * assets the selling unit holds. Every asset has a reference price that drifts randomly as orders are generated.
+ * Most orders are limit orders priced a few credits away from it, some priced to cross the spread, with a
+ * smaller share of market, immediate or cancel and fill or kill orders and of cancellations.
+ */
+public class SyntheticOrderFlow {
+    public static final String PASSWORD = "soaktest"; // The password of every generated user
+    public static final int CREDITS = 100_000_000; // Each unit's starting credits
+    public static final int HOLDING_QTY = 1_000_000; // The starting quantity of each asset a unit holds
+
+    private static final double CANCEL_RATIO = 0.2;
+    private static final double CROSS_RATIO = 0.3; // Share of orders priced to trade straight away
+    private static final double MARKET_RATIO = 0.02;
+    private static final double IMMEDIATE_RATIO = 0.03;
+    private static final double FILL_OR_KILL_RATIO = 0.01;
+    private static final int MAX_QTY = 20;
+    private static final int SPREAD = 10; // Limit prices are up to this far from the reference price
+    private static final int MIN_PRICE = SPREAD + 1;
+
+    /**
+     * One generated action: either an order to place or a cancellation of an order placed earlier
+     */
+    public static class Step {
+        public boolean cancel; // True to cancel an earlier order, the other fields are then unused
+        public int pick; // Non-negative, used to choose which earlier order to cancel
+        public String unitName;
+        public int assetID;
+        public boolean isBuy;
+        public int qty;
+        public int price; // 0 for market orders
+        public Order.Type type;
+    }
+
+    public final long seed;
+    public final int users;
+    public final int units;
+    public final int assets;
+    public final int holdingsPerUnit;
+    public final int restingOrders; // Orders in the orders table when the database is first loaded
+
+    private final int[] startingPrices;
+    private final int[] prices; // Current reference price of each asset
+    private final SplittableRandom random;
+
+    /**
+     * Constructor for a generator
+     * @param seed The seed every row and action is derived from
+     * @param users The number of users, shared evenly between the units
+     * @param units The number of units
+     * @param assets The number of assets, with IDs from 1
+     * @param holdingsPerUnit The number of different assets each unit starts with
+     * @param restingOrders The number of orders to load into the orders table, none of which trade with each other
+     */
+    public SyntheticOrderFlow(long seed, int users, int units, int assets, int holdingsPerUnit, int restingOrders) {
+        if (units < 1 || assets < 1) {
+            throw new IllegalArgumentException("At least one unit and one asset are needed");
+        }
+        this.seed = seed;
+        this.users = users;
+        this.units = units;
+        this.assets = assets;
+        this.holdingsPerUnit = Math.max(1, Math.min(holdingsPerUnit, assets));
+        this.restingOrders = restingOrders;
+
+        SplittableRandom setup = new SplittableRandom(seed);
+        startingPrices = new int[assets];
+        for (int i = 0; i < assets; i++) {
+            startingPrices[i] = MIN_PRICE + setup.nextInt(1000);
+        }
+        prices = startingPrices.clone();
+        random = setup.split();
+    }
+
+    /**
+     * Getter for the name of a generated user
+     * @param user The user's index, from 0
+     * @return the username, letters only
+     */
+    public static String userName(int user) {
+        return "user" + letters(user);
+    }
+
+    /**
+     * Getter for the name of a generated unit
+     * @param unit The unit's index, from 0
+     * @return the unit name, letters only
+     */
+    public static String unitName(int unit) {
+        return "unit" + letters(unit);
+    }
+
+    /**
+     * Getter for the unit a generated user belongs to
+     * @param user The user's index, from 0
+     * @return the unit name
+     */
+    public String unitOfUser(int user) {
+        return unitName(user % units);
+    }
+
+    /**
+     * Getter for the description of a generated asset
+     * @param assetID The asset ID, from 1
+     * @return the description
+     */
+    public static String assetDescription(int assetID) {
+        return "Synthetic asset " + assetID;
+    }
+
+    /**
+     * Getter for one of the assets a unit starts with
+     * @param unit The unit's index, from 0
+     * @param holding Which of the unit's holdings, from 0 up to holdingsPerUnit
+     * @return the asset ID
+     */
+    public int holding(int unit, int holding) {
+        return (int) (((long) unit * holdingsPerUnit + holding) % assets) + 1;
+    }
+
+    /**
+     * Getter for the orders to load into the orders table. Buys are priced below each asset's starting price and
+     * sells above it, so none of them trade when the matcher starts. Every call starts again from the first order.
+     * @return the resting orders
+     */
+    public Iterator<Step> restingOrders() {
+        SplittableRandom orders = new SplittableRandom(seed + 1);
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < restingOrders;
+            }
+
+            @Override
+            public Step next() {
+                next++;
+                Step step = order(orders, startingPrices, false); // Prices do not drift so nothing crosses
+                step.type = Order.Type.LIMIT;
+                return step;
+            }
+        };
+    }
+
+    /**
+     * Generates the next action of the order flow
+     * @return the action
+     */
+    public Step next() {
+        if (random.nextDouble() < CANCEL_RATIO) {
+            Step step = new Step();
+            step.cancel = true;
+            step.pick = random.nextInt(Integer.MAX_VALUE);
+            return step;
+        }
+
+        Step step = order(random, prices, random.nextDouble() < CROSS_RATIO);
+        int asset = step.assetID - 1;
+        prices[asset] = Math.max(MIN_PRICE, prices[asset] + random.nextInt(3) - 1); // Drift by up to a credit
+        double type = random.nextDouble();
+        if (type < MARKET_RATIO) {
+            step.type = Order.Type.MARKET;
+            step.price = 0;
+        } else if (type < MARKET_RATIO + IMMEDIATE_RATIO) {
+            step.type = Order.Type.IMMEDIATE_OR_CANCEL;
+        } else if (type < MARKET_RATIO + IMMEDIATE_RATIO + FILL_OR_KILL_RATIO) {
+            step.type = Order.Type.FILL_OR_KILL;
+        } else {
+            step.type = Order.Type.LIMIT;
+        }
+        return step;
+    }
+
+    /**
+     * Generates an order priced from its asset's reference price
+     * @param random The random numbers to use
+     * @param prices The reference price of each asset
+     * @param cross True to price the order on the other side of the reference price so it is likely to trade
+     * @return the order, without a type
+     */
+    private Step order(SplittableRandom random, int[] prices, boolean cross) {
+        Step step = new Step();
+        int unit = random.nextInt(units);
+        step.unitName = unitName(unit);
+        step.isBuy = random.nextBoolean();
+        step.assetID = step.isBuy ? 1 + random.nextInt(assets) : holding(unit, random.nextInt(holdingsPerUnit));
+        step.qty = 1 + random.nextInt(MAX_QTY);
+
+        int reference = prices[step.assetID - 1];
+        int offset = cross ? random.nextInt(SPREAD) : 1 + random.nextInt(SPREAD);
+        step.price = step.isBuy == cross ? reference + offset : reference - offset;
+        return step;
+    }
+
+    /**
+     * Turns a number into a unique string of lower case letters, as names may only contain letters
+     * @param number A non-negative number
+     * @return the letters
+     */
+    private static String letters(int number) {
+        StringBuilder letters = new StringBuilder();
+        do {
+            letters.append((char) ('a' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return letters.toString();
+    }
+}
@@ -0,0 +1,231 @@
+package ServerSide;
+
+import java.util.HashMap;
+
+/**
+ * Schedules resting orders to expire, using a hierarchical timing wheel so that adding, cancelling and expiring an
+ * order each take constant time however many orders are waiting. Time is divided into ticks. The first wheel has a
+ * slot for each of the next 256 ticks, and each further wheel has 256 slots that each cover a whole turn of the
+ * wheel below. When a wheel completes a turn, the next slot of the wheel above is emptied into the wheels below, so
+ * an order moves down at most three times before the tick it expires on. Orders more than 2^32 ticks away wait in
+ * the top wheel until they are close enough.
+ * <p>
+ * A timing wheel is only used by one thread at a time.
+ */
+public class TimingWheel {
+
+    /**
+     * Called for every order that expires. The handler must not schedule or cancel orders on the same wheel.
+     */
+    public interface Handler {
+        /**
+         * Handles an expired order
+         * @param orderID The order that has expired
+         * @param assetID The asset the order is for
+         */
+        void expired(int orderID, int assetID);
+    }
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /**
+     * A scheduled order, linked into the list of orders in its slot
+     */
+    private static class Timer {
+        final int orderID;
+        final int assetID;
+        final long deadline; // The tick the order expires on
+        final long expiryMillis;
+        int level;
+        int slot;
+        Timer previous;
+        Timer next;
+
+        Timer(int orderID, int assetID, long deadline, long expiryMillis) {
+            this.orderID = orderID;
+            this.assetID = assetID;
+            this.deadline = deadline;
+            this.expiryMillis = expiryMillis;
+        }
+    }
+
+    private final long tickMillis;
+    private final Timer[][] slots = new Timer[LEVELS][SLOTS]; // The first timer in each slot
+    private final int[] counts = new int[LEVELS]; // The number of timers in each wheel
+    private final HashMap<Integer, Timer> timers = new HashMap<>(); // By order ID, for cancelling
+    private long tick; // The next tick to expire orders on
+
+    /**
+     * Constructor for an empty timing wheel
+     * @param tickMillis The length of a tick in milliseconds, orders expire up to one tick late
+     * @param nowMillis The current time in milliseconds since the epoch
+     */
+    public TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Ticks must be at least a millisecond long");
+        }
+        this.tickMillis = tickMillis;
+        this.tick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Getter for the number of orders waiting to expire
+     * @return the number of scheduled orders
+     */
+    public int size() {
+        return timers.size();
+    }
+
+    /**
+     * Method used to schedule an order to expire, replacing any earlier schedule for the same order. An order whose
+     * expiry has already passed expires on the next tick.
+     * @param orderID The order
+     * @param assetID The asset the order is for
+     * @param expiryMillis When the order expires in milliseconds since the epoch
+     */
+    public void schedule(int orderID, int assetID, long expiryMillis) {
+        cancel(orderID);
+        Timer timer = new Timer(orderID, assetID, Math.max(tick, Math.floorDiv(expiryMillis, tickMillis)),
+                expiryMillis);
+        timers.put(orderID, timer);
+        insert(timer);
+    }
+
+    /**
+     * Getter for when a scheduled order expires
+     * @param orderID The order
+     * @return the expiry in milliseconds since the epoch, 0 if the order is not scheduled
+     */
+    public long getExpiryMillis(int orderID) {
+        Timer timer = timers.get(orderID);
+        return timer == null ? 0 : timer.expiryMillis;
+    }
+
+    /**
+     * Method used to stop an order from expiring, e.g. once it has been cancelled
+     * @param orderID The order
+     * @return true if the order was scheduled
+     */
+    public boolean cancel(int orderID) {
+        Timer timer = timers.remove(orderID);
+        if (timer == null) {
+            return false;
+        }
+        unlink(timer);
+        return true;
+    }
+
+    /**
+     * Method used to move the wheel forward to the current time, expiring every order due by then one tick at a
+     * time
+     * @param nowMillis The current time in milliseconds since the epoch
+     * @param handler Called for each order that expires
+     * @return the number of orders that expired
+     */
+    public int advance(long nowMillis, Handler handler) {
+        long now = Math.floorDiv(nowMillis, tickMillis);
+        int expired = 0;
+        while (tick <= now) {
+            if (timers.isEmpty()) {
+                tick = now + 1; // Nothing to cascade or expire, so skip straight to the present
+                break;
+            }
+            int level = 0;
+            while (counts[level] == 0) {
+                level++;
+            }
+            if (level > 0) {
+                // Nothing can expire before the lowest wheel holding timers next cascades, so skip to that tick
+                long span = 1L << (SLOT_BITS * level);
+                long next = (tick + span - 1) & -span;
+                if (next > now) {
+                    tick = now + 1;
+                    break;
+                }
+                tick = next;
+            }
+            if ((tick & SLOT_MASK) == 0) {
+                cascade();
+            }
+
+            Timer timer = slots[0][(int) (tick & SLOT_MASK)];
+            while (timer != null) {
+                Timer next = timer.next;
+                timers.remove(timer.orderID);
+                unlink(timer);
+                handler.expired(timer.orderID, timer.assetID);
+                expired++;
+                timer = next;
+            }
+            tick++;
+        }
+        return expired;
+    }
+
+    /**
+     * Empties the slots of the upper wheels that the current tick has reached into the wheels below
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            Timer timer = slots[level][slot];
+            slots[level][slot] = null;
+            while (timer != null) {
+                Timer next = timer.next;
+                counts[level]--;
+                insert(timer);
+                timer = next;
+            }
+            if (slot != 0) {
+                break; // The wheel above has not completed a turn
+            }
+        }
+    }
+
+    /**
+     * Adds a timer to the slot for its deadline, in the lowest wheel that reaches that far
+     * @param timer The timer
+     */
+    private void insert(Timer timer) {
+        long delta = timer.deadline - tick;
+        long deadline = timer.deadline;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        if (delta >= 1L << (SLOT_BITS * LEVELS)) {
+            deadline = tick + (1L << (SLOT_BITS * LEVELS)) - 1; // Too far away, wait in the top wheel
+        }
+
+        timer.level = level;
+        timer.slot = (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+        timer.previous = null;
+        timer.next = slots[level][timer.slot];
+        if (timer.next != null) {
+            timer.next.previous = timer;
+        }
+        slots[level][timer.slot] = timer;
+        counts[level]++;
+    }
+
+    /**
+     * Removes a timer from its slot
+     * @param timer The timer
+     */
+    private void unlink(Timer timer) {
+        counts[timer.level]--;
+        if (timer.previous == null) {
+            slots[timer.level][timer.slot] = timer.next;
+        } else {
+            timer.previous.next = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+    }
+}
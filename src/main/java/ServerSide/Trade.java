@@ -0,0 +1,37 @@
+package ServerSide;
+
+import ClientSide.Order;
+
+/**
+ * A single execution between a buy order and a sell order for the same asset.
+ * Trades are produced by an OrderBook when an incoming order crosses a resting order and are
+ * then settled against the database by ReconcileTrades.
+ */
+public class Trade {
+    public final Order buy;
+    public final Order sell;
+    public final int qty;
+    public final int price;
+
+    /**
+     * Constructor for a trade between two orders.
+     * @param buy The buy order involved in the trade
+     * @param sell The sell order involved in the trade
+     * @param qty The quantity of the asset that changed hands
+     * @param price The price per unit of the asset that the trade executed at
+     */
+    public Trade(Order buy, Order sell, int qty, int price) {
+        this.buy = buy;
+        this.sell = sell;
+        this.qty = qty;
+        this.price = price;
+    }
+
+    /**
+     * Getter for the total number of credits that changed hands in the trade
+     * @return the price multiplied by the quantity
+     */
+    public int getValue() {
+        return this.price * this.qty;
+    }
+}
@@ -0,0 +1,302 @@
+package ServerSide;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * A file of every trade the matcher has settled, stored as fixed size records in a memory-mapped file. Appending a
+ * trade is a handful of writes into the mapping, and any number of readers (in this or another process) can map the
+ * same file and follow new trades as they are appended, reading each field straight out of the mapping rather than
+ * querying and parsing the history table.
+ * <p>
+ * After a 64 byte header, every record is 40 bytes: the sequence number (8 bytes), the time of the trade in
+ * nanoseconds since the epoch (8), the asset ID, price, quantity, buyer unit ID and seller unit ID (4 each) and 4
+ * unused bytes. All values are in the platform's byte order. The sequence number is written last, so a reader that
+ * sees the sequence it expects knows the rest of the record is complete. Unit IDs are kept one name per line in a
+ * file next to the tape with ".units" added to its name.
+ */
+public class TradeTape implements Closeable {
+    public static final int HEADER_SIZE = 64;
+    public static final int RECORD_SIZE = 40;
+    private static final int MAGIC = 0x54415045; // "TAPE"
+    private static final int VERSION = 1;
+
+    private static final int SEQUENCE = 0;
+    private static final int NANOS = 8;
+    private static final int ASSET = 16;
+    private static final int PRICE = 20;
+    private static final int QTY = 24;
+    private static final int BUYER = 28;
+    private static final int SELLER = 32;
+
+    // Ordered access to the sequence number, so records are published safely to readers
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final UnitIDs units;
+    private MappedByteBuffer map;
+    private long capacity; // The number of records the mapping can hold
+    private long sequence; // The sequence number of the last record appended
+
+    /**
+     * Opens a trade tape, creating it if it does not exist. Appending carries on after the last complete record.
+     * @param file The tape file
+     * @param capacity The number of records to make room for at a time
+     * @throws IOException Throws an exception if the file cannot be mapped or is not a trade tape
+     */
+    public TradeTape(Path file, int capacity) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        units = new UnitIDs(unitsFile(file));
+
+        boolean created = channel.size() == 0;
+        this.capacity = Math.max(capacity, (channel.size() - HEADER_SIZE) / RECORD_SIZE);
+        map(this.capacity);
+        if (created) {
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(8, RECORD_SIZE);
+        } else if (map.getInt(0) != MAGIC || map.getInt(8) != RECORD_SIZE) {
+            channel.close();
+            throw new IOException(file + " is not a trade tape");
+        }
+
+        // Records are written in order, so the first empty record follows the last complete one
+        long low = 0;
+        long high = this.capacity;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (map.getLong(offset(middle) + SEQUENCE) == 0) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        sequence = low;
+    }
+
+    /**
+     * Getter for the file that unit IDs are kept in for a tape
+     * @param file The tape file
+     * @return the unit IDs file
+     */
+    public static Path unitsFile(Path file) {
+        return Paths.get(file.toString() + ".units");
+    }
+
+    /**
+     * Getter for the sequence number of the newest trade
+     * @return the last sequence number, 0 if the tape is empty
+     */
+    public synchronized long getLastSequence() {
+        return sequence;
+    }
+
+    /**
+     * Method used to add a trade to the end of the tape, making room for more trades if the tape is full
+     * @param assetID The asset that was traded
+     * @param price The price the trade executed at
+     * @param qty The quantity that was traded
+     * @param buyer The name of the buying unit
+     * @param seller The name of the selling unit
+     * @return the sequence number of the trade
+     * @throws IOException Throws an exception if the tape cannot be made bigger
+     */
+    public synchronized long append(int assetID, int price, int qty, String buyer, String seller) throws IOException {
+        if (sequence == capacity) {
+            capacity *= 2;
+            map(capacity);
+        }
+
+        Instant now = Instant.now();
+        int offset = offset(sequence);
+        map.putLong(offset + NANOS, now.getEpochSecond() * 1_000_000_000L + now.getNano());
+        map.putInt(offset + ASSET, assetID);
+        map.putInt(offset + PRICE, price);
+        map.putInt(offset + QTY, qty);
+        map.putInt(offset + BUYER, units.idOf(buyer));
+        map.putInt(offset + SELLER, units.idOf(seller));
+        LONGS.setRelease(map, offset + SEQUENCE, ++sequence);
+        return sequence;
+    }
+
+    /**
+     * Closes the tape. The operating system writes the mapped records to the file in its own time, readers in
+     * other processes see them straight away.
+     * @throws IOException Throws an exception if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Maps the header and the given number of records, growing the file if it is smaller
+     * @param records The number of records to map
+     * @throws IOException Throws an exception if the file cannot be mapped
+     */
+    private void map(long records) throws IOException {
+        long size = HEADER_SIZE + records * RECORD_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Trade tape is full");
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        map.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Getter for the position of a record in the file
+     * @param index The record number, starting at 0
+     * @return the offset of the record
+     */
+    private static int offset(long index) {
+        return (int) (HEADER_SIZE + index * RECORD_SIZE);
+    }
+
+    /**
+     * Follows a trade tape from the start, reading each trade's fields directly from the mapped file. A reader is
+     * used by one thread at a time.
+     */
+    public static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final UnitIDs units;
+        private MappedByteBuffer map;
+        private long mapped; // The number of records currently mapped
+        private long next = 0; // The record the reader will move to next
+        private int offset = -1; // The position of the current record
+
+        /**
+         * Constructor for a reader positioned before the first trade.
+         * @param file The tape file
+         * @throws IOException Throws an exception if the file cannot be mapped or is not a trade tape
+         */
+        public Reader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            units = new UnitIDs(unitsFile(file));
+            remap();
+            if (map.getInt(0) != MAGIC || map.getInt(8) != RECORD_SIZE) {
+                channel.close();
+                throw new IOException(file + " is not a trade tape");
+            }
+        }
+
+        /**
+         * Method used to move to the next trade, if it has been appended
+         * @return true if the reader moved to a new trade, false if there are no more trades yet
+         * @throws IOException Throws an exception if the file has grown and cannot be mapped again
+         */
+        public boolean next() throws IOException {
+            if (next == mapped) {
+                remap();
+                if (next == mapped) {
+                    return false;
+                }
+            }
+
+            int candidate = offset(next);
+            if ((long) LONGS.getAcquire(map, candidate + SEQUENCE) != next + 1) {
+                return false;
+            }
+            offset = candidate;
+            next++;
+            return true;
+        }
+
+        /**
+         * Getter for the sequence number of the current trade
+         * @return the sequence number, starting at 1
+         */
+        public long getSequence() {
+            return map.getLong(offset + SEQUENCE);
+        }
+
+        /**
+         * Getter for the time of the current trade
+         * @return nanoseconds since the epoch
+         */
+        public long getEpochNanos() {
+            return map.getLong(offset + NANOS);
+        }
+
+        /**
+         * Getter for the asset of the current trade
+         * @return the asset ID
+         */
+        public int getAssetID() {
+            return map.getInt(offset + ASSET);
+        }
+
+        /**
+         * Getter for the price of the current trade
+         * @return the price per unit of the asset
+         */
+        public int getPrice() {
+            return map.getInt(offset + PRICE);
+        }
+
+        /**
+         * Getter for the quantity of the current trade
+         * @return the quantity
+         */
+        public int getQty() {
+            return map.getInt(offset + QTY);
+        }
+
+        /**
+         * Getter for the buyer of the current trade
+         * @return the buying unit's ID
+         */
+        public int getBuyer() {
+            return map.getInt(offset + BUYER);
+        }
+
+        /**
+         * Getter for the seller of the current trade
+         * @return the selling unit's ID
+         */
+        public int getSeller() {
+            return map.getInt(offset + SELLER);
+        }
+
+        /**
+         * Getter for the name of a unit on the tape
+         * @param unitID The unit's ID
+         * @return the unit name, or null if the ID is unknown
+         */
+        public String getUnitName(int unitID) {
+            return units.nameOf(unitID);
+        }
+
+        /**
+         * Closes the reader
+         * @throws IOException Throws an exception if the file cannot be closed
+         */
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * Maps the whole file again, picking up any room the writer has added since
+         * @throws IOException Throws an exception if the file cannot be mapped
+         */
+        private void remap() throws IOException {
+            long size = channel.size();
+            long records = Math.max(0, (size - HEADER_SIZE) / RECORD_SIZE);
+            if (map != null && records == mapped) {
+                return;
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + records * RECORD_SIZE);
+            map.order(ByteOrder.nativeOrder());
+            mapped = records;
+        }
+    }
+}
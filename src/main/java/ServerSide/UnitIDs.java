@@ -0,0 +1,111 @@
+package ServerSide;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Gives each unit name a small int ID so that units can be stored in primitive order books, and turns the IDs back
+ * into names when fills are settled. IDs are handed out in the order units are first seen and are never reused.
+ * IDs can be kept in a file, one unit name per line with the line number as the ID, so that they stay the same
+ * across restarts and can be read by other programs.
+ */
+public class UnitIDs {
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+    private final Path file; // Null if the IDs are not kept in a file
+    private BufferedWriter writer;
+
+    /**
+     * Constructor for IDs that are only kept in memory.
+     */
+    public UnitIDs() {
+        this.file = null;
+    }
+
+    /**
+     * Constructor for IDs that are kept in a file. Any IDs already in the file are loaded.
+     * @param file The file to keep the IDs in, it is created if it does not exist
+     * @throws IOException Throws an exception if the file cannot be read
+     */
+    public UnitIDs(Path file) throws IOException {
+        this.file = file;
+        reload();
+    }
+
+    /**
+     * Getter for the ID of a unit, giving the unit a new ID the first time it is seen
+     * @param unitName The name of the unit
+     * @return the unit ID
+     */
+    public synchronized int idOf(String unitName) {
+        Integer id = ids.get(unitName);
+        if (id == null) {
+            id = names.size();
+            ids.put(unitName, id);
+            names.add(unitName);
+            save(unitName);
+        }
+        return id;
+    }
+
+    /**
+     * Getter for the name of a unit. IDs kept in a file that were given out by another program since the file was
+     * loaded are read from the file.
+     * @param id The unit ID
+     * @return the unit name, or null if no unit has the ID
+     */
+    public synchronized String nameOf(int id) {
+        if (id >= names.size() && file != null) {
+            try {
+                reload();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return id >= 0 && id < names.size() ? names.get(id) : null;
+    }
+
+    /**
+     * Loads any IDs in the file that are not already known
+     * @throws IOException Throws an exception if the file cannot be read
+     */
+    private void reload() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int id = names.size(); id < lines.size(); id++) {
+            ids.put(lines.get(id), id);
+            names.add(lines.get(id));
+        }
+    }
+
+    /**
+     * Adds a newly seen unit to the end of the file
+     * @param unitName The name of the unit
+     */
+    private void save(String unitName) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            }
+            writer.write(unitName);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ServerSideTests;
+
+import ServerSide.BookSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test the order book snapshots the matcher restarts from.
+ */
+public class TestBookSnapshot {
+    @TempDir
+    Path directory;
+
+    /**
+     * Test that every resting order and the journal position are read back in the order they were written
+     * @throws IOException Throw exception if the snapshot cannot be written
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path file = directory.resolve("books.snapshot");
+        BookSnapshot snapshot = new BookSnapshot(42, 4096, 17);
+        snapshot.add(3, 777, "buyers", true, 5, 20, 0);
+        snapshot.add(9, 777, "sellers", false, 2, 25, 1_900_000_000_000L);
+        snapshot.add(12, 778, "buyers", false, 7, 30, 0);
+        snapshot.write(file);
+
+        BookSnapshot read = BookSnapshot.read(file);
+        assertAll(
+                () -> assertEquals(42, read.journalSequence),
+                () -> assertEquals(4096, read.journalPosition),
+                () -> assertEquals(17, read.lastOrderID),
+                () -> assertEquals(3, read.orders.size()),
+                () -> assertEquals(9, read.orders.get(1).orderID),
+                () -> assertEquals("sellers", read.orders.get(1).unitName),
+                () -> assertFalse(read.orders.get(1).isBuy),
+                () -> assertEquals(2, read.orders.get(1).qty),
+                () -> assertEquals(25, read.orders.get(1).price),
+                () -> assertEquals(1_900_000_000_000L, read.orders.get(1).expiry),
+                () -> assertEquals(778, read.orders.get(2).assetID),
+                () -> assertEquals("buyers", read.orders.get(2).unitName),
+                () -> assertFalse(Files.exists(directory.resolve("books.snapshot.tmp"))));
+    }
+
+    /**
+     * Test that there is no snapshot to start from before one has been written
+     * @throws IOException Throw exception if the snapshot cannot be read
+     */
+    @Test
+    public void testMissing() throws IOException {
+        assertNull(BookSnapshot.read(directory.resolve("books.snapshot")));
+    }
+
+    /**
+     * Test that a snapshot that has been changed or cut short is rejected rather than restored
+     * @throws IOException Throw exception if the snapshot cannot be written
+     */
+    @Test
+    public void testCorruptRejected() throws IOException {
+        Path file = directory.resolve("books.snapshot");
+        BookSnapshot snapshot = new BookSnapshot(1, 0, 1);
+        snapshot.add(1, 777, "buyers", true, 5, 20, 0);
+        snapshot.write(file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        bytes[bytes.length - 10] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> BookSnapshot.read(file));
+
+        bytes[bytes.length - 10] ^= 1;
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 6));
+        assertThrows(IOException.class, () -> BookSnapshot.read(file));
+    }
+}
@@ -0,0 +1,149 @@
+package ServerSideTests;
+
+import ServerSide.ConnectionPool;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test the pool of database connections the server's threads lease from.
+ */
+public class TestConnectionPool {
+    AtomicInteger opened = new AtomicInteger();
+    AtomicInteger prepared = new AtomicInteger();
+    AtomicInteger rolledBack = new AtomicInteger();
+
+    /**
+     * Helper used to open a stand in connection that counts the statements prepared on it and its rollbacks
+     */
+    private Connection open() {
+        opened.incrementAndGet();
+        boolean[] autoCommit = {true};
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "prepareStatement":
+                            prepared.incrementAndGet();
+                            return Proxy.newProxyInstance(getClass().getClassLoader(),
+                                    new Class<?>[]{PreparedStatement.class}, (statement, call, values) -> null);
+                        case "getAutoCommit":
+                            return autoCommit[0];
+                        case "setAutoCommit":
+                            autoCommit[0] = (Boolean) args[0];
+                            return null;
+                        case "rollback":
+                            rolledBack.incrementAndGet();
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    /**
+     * Test that a thread leasing again gets the connection it already holds, and that statements are prepared once
+     * per connection and kept between leases
+     * @throws SQLException Throws an exception if a connection cannot be leased
+     */
+    @Test
+    public void testReentrantLeaseAndStatementCache() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::open, 2, 1000);
+        Connection first;
+        PreparedStatement statement;
+        try (ConnectionPool.Lease outer = pool.lease()) {
+            first = outer.getConnection();
+            statement = outer.prepare("SELECT 1");
+            try (ConnectionPool.Lease inner = pool.lease()) {
+                assertAll(
+                        () -> assertSame(first, inner.getConnection()),
+                        () -> assertSame(statement, inner.prepare("SELECT 1")));
+            }
+        }
+
+        try (ConnectionPool.Lease again = pool.lease()) {
+            assertAll(
+                    () -> assertSame(first, again.getConnection()),
+                    () -> assertSame(statement, again.prepare("SELECT 1")),
+                    () -> assertEquals(1, opened.get()),
+                    () -> assertEquals(1, prepared.get()));
+        }
+    }
+
+    /**
+     * Test that no more connections are opened than the pool's size, and that a thread waits for a connection to be
+     * given back when they are all leased
+     * @throws Exception Throws an exception if the waiting thread fails
+     */
+    @Test
+    public void testBounded() throws Exception {
+        ConnectionPool pool = new ConnectionPool(this::open, 1, 5000);
+        AtomicReference<Connection> waited = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(1);
+        Connection held;
+
+        Thread other;
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            held = lease.getConnection();
+            other = new Thread(() -> {
+                started.countDown();
+                try (ConnectionPool.Lease lease2 = pool.lease()) {
+                    waited.set(lease2.getConnection());
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+            });
+            other.start();
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            assertNull(waited.get());
+        }
+        other.join(5000);
+
+        assertAll(
+                () -> assertSame(held, waited.get()),
+                () -> assertEquals(1, pool.getOpened()));
+    }
+
+    /**
+     * Test that waiting too long for a connection fails, and that a transaction left open is rolled back before the
+     * connection is leased again
+     * @throws Exception Throws an exception if the connection cannot be leased
+     */
+    @Test
+    public void testTimeoutAndRollback() throws Exception {
+        ConnectionPool pool = new ConnectionPool(this::open, 1, 50);
+        AtomicReference<SQLException> timedOut = new AtomicReference<>();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            lease.getConnection().setAutoCommit(false);
+            Thread other = new Thread(() -> {
+                try (ConnectionPool.Lease lease2 = pool.lease()) {
+                    lease2.getConnection();
+                } catch (SQLException ex) {
+                    timedOut.set(ex);
+                }
+            });
+            other.start();
+            other.join(5000);
+        }
+
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            assertAll(
+                    () -> assertNotNull(timedOut.get()),
+                    () -> assertEquals(1, rolledBack.get()),
+                    () -> assertTrue(lease.getConnection().getAutoCommit()));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ServerSideTests;
+
+import ServerSide.ConnectionPool;
+import ServerSide.DBConnection;
+import ServerSide.ServerSettings;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test the SQLite settings applied to every connection the server opens.
+ */
+public class TestDBConnection {
+
+    /**
+     * Helper used to read the current value of a pragma on a connection
+     */
+    private static String read(Statement st, String pragma) throws SQLException {
+        try (ResultSet rs = st.executeQuery("PRAGMA " + pragma)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    /**
+     * Test that a connection leased from a pool has the settings from ServerSettings.props applied
+     * @throws SQLException Throws an exception if the database cannot be connected to
+     */
+    @Test
+    public void testPooledConnectionConfigured() throws SQLException {
+        // SQLite reads synchronous back as a number, in this order
+        List<String> synchronous = List.of("OFF", "NORMAL", "FULL", "EXTRA");
+
+        try (ConnectionPool pool = new ConnectionPool(DBConnection::open, 2, 1000);
+             ConnectionPool.Lease db = pool.lease();
+             Statement st = db.getConnection().createStatement()) {
+            assertAll(
+                    () -> assertEquals(ServerSettings.get("sqliteJournalMode", "").toLowerCase(),
+                            read(st, "journal_mode")),
+                    () -> assertEquals(String.valueOf(synchronous.indexOf(
+                            ServerSettings.get("sqliteSynchronous", "").toUpperCase())), read(st, "synchronous")),
+                    () -> assertEquals(ServerSettings.get("sqliteBusyTimeoutMillis", ""), read(st, "busy_timeout"))
+            );
+        }
+    }
+
+    /**
+     * Test that valid settings are written into the pragma
+     */
+    @Test
+    public void testValidPragmas() {
+        assertAll(
+                () -> assertEquals("PRAGMA journal_mode=WAL", DBConnection.getPragma("journal_mode", "WAL")),
+                () -> assertEquals("PRAGMA synchronous=normal", DBConnection.getPragma("synchronous", "normal")),
+                () -> assertEquals("PRAGMA cache_size=-16000", DBConnection.getPragma("cache_size", "-16000")),
+                () -> assertEquals("PRAGMA busy_timeout=5000", DBConnection.getPragma("busy_timeout", "5000"))
+        );
+    }
+
+    /**
+     * Test that settings that are not valid, or that try to run more SQL, are refused
+     */
+    @Test
+    public void testInvalidPragmasRefused() {
+        assertAll(
+                () -> assertNull(DBConnection.getPragma("journal_mode", "FAST")),
+                () -> assertNull(DBConnection.getPragma("journal_mode", "WAL; DROP TABLE users")),
+                () -> assertNull(DBConnection.getPragma("synchronous", "4")),
+                () -> assertNull(DBConnection.getPragma("busy_timeout", "-1")),
+                () -> assertNull(DBConnection.getPragma("mmap_size", "lots")),
+                () -> assertNull(DBConnection.getPragma("foreign_keys", "ON")) // Not one of the settings
+        );
+    }
+}
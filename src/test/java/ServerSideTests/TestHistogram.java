@@ -0,0 +1,96 @@
+package ServerSideTests;
+
+import ServerSide.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test the lock free histogram the matcher's latencies are recorded in.
+ */
+public class TestHistogram {
+
+    /**
+     * Test that an empty histogram reports zeros
+     */
+    @Test
+    public void testEmpty() {
+        Histogram histogram = new Histogram();
+        assertAll(
+                () -> assertEquals(0, histogram.getCount()),
+                () -> assertEquals(0, histogram.getMax()),
+                () -> assertEquals(0, histogram.getMean()),
+                () -> assertEquals(0, histogram.getPercentile(0.99)),
+                () -> assertEquals("none", histogram.summary(1, "ns")));
+    }
+
+    /**
+     * Test that small values are counted exactly and large values to within 1/16th
+     */
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+        assertAll(
+                () -> assertEquals(5, histogram.getPercentile(0.5)),
+                () -> assertEquals(10, histogram.getPercentile(1.0)),
+                () -> assertEquals(5.5, histogram.getMean()));
+
+        histogram.reset();
+        for (long i = 1; i <= 1_000_000; i++) {
+            histogram.record(i * 1000);
+        }
+        long p50 = histogram.getPercentile(0.5);
+        long p99 = histogram.getPercentile(0.99);
+        assertAll(
+                () -> assertEquals(1_000_000, histogram.getCount()),
+                () -> assertEquals(1_000_000_000L, histogram.getMax()),
+                () -> assertEquals(1_000_000_000L, histogram.getPercentile(1.0)),
+                () -> assertTrue(p50 >= 500_000_000L && p50 <= 500_000_000L * 17 / 16, "p50 " + p50),
+                () -> assertTrue(p99 >= 990_000_000L && p99 <= 1_000_000_000L, "p99 " + p99));
+    }
+
+    /**
+     * Test that the largest possible value can be recorded and negative values are counted as 0
+     */
+    @Test
+    public void testExtremes() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-5);
+        assertAll(
+                () -> assertEquals(0, histogram.getPercentile(0.5)),
+                () -> assertEquals(Long.MAX_VALUE, histogram.getPercentile(1.0)));
+    }
+
+    /**
+     * Test that nothing is lost when several threads record at once
+     */
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final long value = (t + 1) * 100;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(value);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertAll(
+                () -> assertEquals(400_000, histogram.getCount()),
+                () -> assertEquals(400, histogram.getMax()),
+                () -> assertEquals(250, histogram.getMean(), 0.001));
+    }
+}
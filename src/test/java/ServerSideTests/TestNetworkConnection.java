@@ -4,11 +4,13 @@ import ClientSide.Asset;
 import ClientSide.Exceptions.AlreadyExists;
 import ClientSide.Exceptions.DoesNotExist;
 import ClientSide.Exceptions.IllegalString;
+import ClientSide.Exceptions.OrderException;
 import ClientSide.Order;
 import ClientSide.Unit;
 import ClientSide.User;
 import ServerSide.MockObjects;
 import ServerSide.NetworkConnection;
+import ServerSide.Trade;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -17,6 +19,7 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -450,6 +453,47 @@ public class TestNetworkConnection {
 
             data.removeUser(mockUnit.getName()); // remove
         }
+
+        /**
+         * Testing units are added and balances changed in batches, and that a batch with a taken unit name adds
+         * nothing.
+         */
+        @Test
+        @DisplayName("Units and balances are changed in batches")
+        public void testBatchUnitsAndBalances() throws AlreadyExists, IllegalString {
+            data.addUnits(Map.of("alpha", 10, "beta", 20));
+            data.adjustBalances(Map.of("alpha", 15, "developers", 5));
+            assertThrows(AlreadyExists.class, () -> data.addUnits(Map.of("gamma", 1, "Alpha", 2)));
+
+            assertAll(
+                    () -> assertEquals(15, data.getUnit("alpha").getCredits()),
+                    () -> assertEquals(20, data.getUnit("beta").getCredits()),
+                    () -> assertEquals(5, data.getUnit("developers").getCredits()),
+                    () -> assertNull(data.getUnit("gamma")));
+
+            data.removeUnit("alpha");
+            data.removeUnit("beta");
+        }
+
+        /**
+         * Testing a unit's holdings are changed and added in batches, and that a batch with an asset the unit already
+         * holds or that does not exist adds nothing.
+         */
+        @Test
+        @DisplayName("Unit holdings are changed in batches")
+        public void testBatchHoldings() throws DoesNotExist {
+            data.adjustAssetQuantities("developers", Map.of(1, 50, 4, 7));
+            assertThrows(AlreadyExists.class, () -> data.addAssetsToUnit("developers", Map.of(5, 1, 2, 1)));
+            assertThrows(DoesNotExist.class, () -> data.addAssetsToUnit("developers", Map.of(999, 1)));
+
+            HashMap<Integer, Integer> held = new HashMap<>();
+            data.getUnitsAssets(data.getUnit("developers")).forEach((asset, qty) -> held.put(asset.getId(), qty));
+            assertAll(
+                    () -> assertEquals(50, held.get(1)),
+                    () -> assertEquals(17, held.get(2)),
+                    () -> assertEquals(7, held.get(4)),
+                    () -> assertFalse(held.containsKey(5)));
+        }
     }
 
     // ============== ASSET INTERFACE METHODS TESTS ==============
@@ -567,5 +611,54 @@ public class TestNetworkConnection {
 
             assertEquals(mockOrders, data.getUnitOrderHistory(data.getUnit("developers")).size());
         }
+
+        /**
+         * Testing orders are placed in batches with consecutive IDs, and that a batch with an order the unit cannot
+         * afford places nothing.
+         */
+        @Test
+        @DisplayName("Orders are placed in batches")
+        public void testBatchOrders() throws OrderException, DoesNotExist {
+            Unit developers = data.getUnit("developers");
+            Order first = new Order(developers, data.getAsset(1), 1, 10, true);
+            Order second = new Order(developers, data.getAsset(2), 2, 30, false);
+            data.addOrders(List.of(first, second));
+            assertThrows(OrderException.class, () -> data.addOrders(List.of(
+                    new Order(developers, data.getAsset(3), 1, 20, true),
+                    new Order(developers, data.getAsset(1), 1_000, 1_000, true))));
+
+            List<Integer> ids = data.getUnitOrders(developers).stream().map(o -> o.id).collect(Collectors.toList());
+            assertAll(
+                    () -> assertEquals(5, ids.size()),
+                    () -> assertEquals(first.id + 1, second.id),
+                    () -> assertTrue(ids.containsAll(List.of(first.id, second.id))));
+        }
+
+        /**
+         * Testing the queries filtering orders and history by unit or asset search their indexes.
+         */
+        @Test
+        @DisplayName("Order and history queries use their indexes")
+        public void testQueriesUseIndexes() {
+            assertEquals(new ArrayList<String>(), data.getUnindexedQueries());
+        }
+
+        /**
+         * Testing a trade worth more credits than an int can hold is rolled back instead of wrapping around.
+         */
+        @Test
+        @DisplayName("Trades whose value overflows are not settled")
+        public void testOverflowingTradeRejected() {
+            int buyerCredits = data.getUnit("engineers").getCredits();
+            int sellerCredits = data.getUnit("developers").getCredits();
+            Order buy = new Order(data.getUnit("engineers"), data.getAsset(2), 100_000, 100_000, true);
+            Order sell = new Order(data.getUnit("developers"), data.getAsset(2), 100_000, 100_000, false);
+
+            assertAll(
+                    () -> assertFalse(data.settleTrades(List.of(new Trade(buy, sell, 100_000, 100_000)))),
+                    () -> assertEquals(buyerCredits, data.getUnit("engineers").getCredits()),
+                    () -> assertEquals(sellerCredits, data.getUnit("developers").getCredits())
+            );
+        }
     }
 }
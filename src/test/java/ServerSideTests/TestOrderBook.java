@@ -0,0 +1,343 @@
+package ServerSideTests;
+
+import ClientSide.Asset;
+import ClientSide.Exceptions.IllegalString;
+import ClientSide.Exceptions.InvalidAmount;
+import ClientSide.Order;
+import ClientSide.Unit;
+import ServerSide.OrderBook;
+import ServerSide.Trade;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test the in-memory order book used to reconcile trades.
+ * No database is required as the book only works with the order objects it is given.
+ */
+public class TestOrderBook {
+    Asset ABC = new Asset(777, "Test Asset ABC");
+    Unit buyers;
+    Unit sellers;
+    OrderBook book;
+    int nextID;
+
+    /**
+     * Create the units used to place orders and an empty book for each test
+     * @throws IllegalString Throws an exception if the unit name is not a valid string
+     * @throws InvalidAmount Throw an exception if the unit balance is not a valid amount
+     */
+    @BeforeEach
+    public void setup() throws IllegalString, InvalidAmount {
+        buyers = new Unit("buyers", 1000, new HashMap<>());
+        sellers = new Unit("sellers", 1000, new HashMap<>());
+        book = new OrderBook(ABC.getId());
+        nextID = 1;
+    }
+
+    /**
+     * Helper used to create an order with the next order ID
+     */
+    private Order order(boolean isBuy, int qty, int price) {
+        return new Order(isBuy ? buyers : sellers, ABC, qty, price, isBuy, nextID++);
+    }
+
+    /**
+     * Helper used to create an order of a specific type with the next order ID
+     */
+    private Order order(boolean isBuy, int qty, int price, Order.Type type) {
+        Order order = order(isBuy, qty, price);
+        order.type = type;
+        return order;
+    }
+
+    /**
+     * Test that orders that do not cross rest on the correct side of the book
+     */
+    @Test
+    public void testOrdersRest() {
+        assertTrue(book.add(order(true, 5, 10)).isEmpty());
+        assertTrue(book.add(order(true, 5, 12)).isEmpty());
+        assertTrue(book.add(order(false, 5, 15)).isEmpty());
+        assertTrue(book.add(order(false, 5, 13)).isEmpty());
+
+        assertAll(
+                () -> assertEquals(4, book.size()),
+                () -> assertEquals(12, book.bestBid()),
+                () -> assertEquals(13, book.bestAsk()));
+    }
+
+    /**
+     * Test that the best priced order is matched first and the trade happens at the resting order's price
+     */
+    @Test
+    public void testPricePriority() {
+        Order expensive = order(false, 5, 20);
+        Order cheap = order(false, 5, 15);
+        book.add(expensive);
+        book.add(cheap);
+
+        ArrayList<Trade> trades = book.add(order(true, 5, 25));
+
+        assertAll(
+                () -> assertEquals(1, trades.size()),
+                () -> assertSame(cheap, trades.get(0).sell),
+                () -> assertEquals(15, trades.get(0).price),
+                () -> assertEquals(5, trades.get(0).qty),
+                () -> assertFalse(book.contains(cheap.id)),
+                () -> assertTrue(book.contains(expensive.id)));
+    }
+
+    /**
+     * Test that orders at the same price are matched in the order they arrived
+     */
+    @Test
+    public void testTimePriority() {
+        Order first = order(false, 5, 10);
+        Order second = order(false, 5, 10);
+        book.add(first);
+        book.add(second);
+
+        ArrayList<Trade> trades = book.add(order(true, 5, 10));
+
+        assertAll(
+                () -> assertSame(first, trades.get(0).sell),
+                () -> assertTrue(book.contains(second.id)));
+    }
+
+    /**
+     * Test that a sell order larger than the buy it matches keeps resting with the remaining quantity
+     */
+    @Test
+    public void testSellRemainderRests() {
+        Order sell = order(false, 8, 10);
+        book.add(sell);
+
+        ArrayList<Trade> trades = book.add(order(true, 5, 10));
+
+        assertAll(
+                () -> assertEquals(1, trades.size()),
+                () -> assertEquals(3, sell.qty),
+                () -> assertTrue(book.contains(sell.id)));
+    }
+
+    /**
+     * Test that an incoming sell fills several resting buy orders
+     */
+    @Test
+    public void testSellFillsSeveralBuys() {
+        book.add(order(true, 2, 12));
+        book.add(order(true, 3, 11));
+        book.add(order(true, 4, 9));
+
+        Order sell = order(false, 6, 10);
+        ArrayList<Trade> trades = book.add(sell);
+
+        assertAll(
+                () -> assertEquals(2, trades.size()),
+                () -> assertEquals(12, trades.get(0).price),
+                () -> assertEquals(11, trades.get(1).price),
+                () -> assertEquals(1, sell.qty),
+                () -> assertEquals(10, book.bestAsk()),
+                () -> assertEquals(9, book.bestBid()));
+    }
+
+    /**
+     * Test that a large buy sweeps several price levels and partially fills the last sell it reaches
+     */
+    @Test
+    public void testBuySweepsLevels() {
+        Order first = order(false, 2, 10);
+        Order second = order(false, 3, 11);
+        Order third = order(false, 4, 12);
+        book.add(first);
+        book.add(second);
+        book.add(third);
+
+        Order buy = order(true, 7, 12);
+        ArrayList<Trade> trades = book.add(buy);
+
+        assertAll(
+                () -> assertEquals(3, trades.size()),
+                () -> assertEquals(2, trades.get(0).qty),
+                () -> assertEquals(3, trades.get(1).qty),
+                () -> assertEquals(2, trades.get(2).qty),
+                () -> assertEquals(12, trades.get(2).price),
+                () -> assertEquals(0, buy.qty),
+                () -> assertEquals(2, third.qty),
+                () -> assertFalse(book.contains(buy.id)),
+                () -> assertEquals(1, book.size()));
+    }
+
+    /**
+     * Test that the unfilled part of a buy rests once the sell prices no longer cross
+     */
+    @Test
+    public void testBuyRemainderRests() {
+        book.add(order(false, 2, 10));
+        book.add(order(false, 3, 15));
+
+        Order buy = order(true, 5, 12);
+        ArrayList<Trade> trades = book.add(buy);
+
+        assertAll(
+                () -> assertEquals(1, trades.size()),
+                () -> assertEquals(3, buy.qty),
+                () -> assertTrue(book.contains(buy.id)),
+                () -> assertEquals(12, book.bestBid()),
+                () -> assertEquals(15, book.bestAsk()));
+    }
+
+    /**
+     * Test that cancelled orders are removed and can no longer be matched
+     */
+    @Test
+    public void testCancel() {
+        Order sell = order(false, 5, 10);
+        Order other = order(false, 5, 11);
+        book.add(sell);
+        book.add(other);
+
+        assertSame(sell, book.cancel(sell.id));
+        assertNull(book.cancel(sell.id));
+
+        book.retain(Set.of());
+        assertAll(
+                () -> assertEquals(0, book.size()),
+                () -> assertNull(book.bestAsk()),
+                () -> assertTrue(book.add(order(true, 5, 12)).isEmpty()));
+    }
+
+    /**
+     * Test that a market order trades at any price and the unfilled part is cancelled rather than resting
+     */
+    @Test
+    public void testMarketSell() {
+        book.add(order(true, 2, 12));
+        book.add(order(true, 2, 1));
+
+        Order sell = order(false, 6, 0, Order.Type.MARKET);
+        ArrayList<Trade> trades = book.add(sell);
+
+        assertAll(
+                () -> assertEquals(2, trades.size()),
+                () -> assertEquals(1, trades.get(1).price),
+                () -> assertEquals(2, sell.qty),
+                () -> assertFalse(book.contains(sell.id)),
+                () -> assertEquals(0, book.size()));
+    }
+
+    /**
+     * Test that a market buy stops once the unit can no longer afford the next unit of the asset
+     */
+    @Test
+    public void testMarketBuyLimitedByCredits() {
+        book.add(order(false, 50, 100));
+        book.add(order(false, 50, 300));
+
+        Order buy = order(true, 20, 0, Order.Type.MARKET);
+        ArrayList<Trade> trades = book.add(buy);
+
+        assertAll(
+                () -> assertEquals(1, trades.size()),
+                () -> assertEquals(10, trades.get(0).qty),
+                () -> assertEquals(10, buy.qty),
+                () -> assertFalse(book.contains(buy.id)));
+    }
+
+    /**
+     * Test that an immediate or cancel order respects its price and does not rest
+     */
+    @Test
+    public void testImmediateOrCancel() {
+        book.add(order(false, 3, 10));
+        book.add(order(false, 3, 15));
+
+        Order buy = order(true, 5, 12, Order.Type.IMMEDIATE_OR_CANCEL);
+        ArrayList<Trade> trades = book.add(buy);
+
+        assertAll(
+                () -> assertEquals(1, trades.size()),
+                () -> assertEquals(2, buy.qty),
+                () -> assertNull(book.bestBid()),
+                () -> assertEquals(15, book.bestAsk()));
+    }
+
+    /**
+     * Test that a fill or kill order only trades when its whole quantity can be filled
+     */
+    @Test
+    public void testFillOrKill() {
+        Order first = order(false, 3, 10);
+        book.add(first);
+        book.add(order(false, 3, 15));
+
+        Order tooBig = order(true, 5, 12, Order.Type.FILL_OR_KILL);
+        Order fits = order(true, 5, 15, Order.Type.FILL_OR_KILL);
+
+        assertAll(
+                () -> assertTrue(book.add(tooBig).isEmpty()),
+                () -> assertEquals(5, tooBig.qty),
+                () -> assertEquals(3, first.qty),
+                () -> assertEquals(2, book.add(fits).size()),
+                () -> assertEquals(0, fits.qty),
+                () -> assertEquals(1, book.size()));
+    }
+
+    /**
+     * Test that collected orders are not matched until the auction, and that the auction clears once
+     */
+    @Test
+    public void testCollectWaitsForAuction() {
+        book.collect(order(true, 5, 15));
+        book.collect(order(false, 5, 10));
+        assertAll(
+                () -> assertEquals(2, book.size()),
+                () -> assertEquals(15, book.bestBid()),
+                () -> assertEquals(10, book.bestAsk()));
+
+        ArrayList<Trade> trades = book.auction();
+        assertAll(
+                () -> assertEquals(1, trades.size()),
+                () -> assertEquals(5, trades.get(0).qty),
+                () -> assertEquals(0, book.size()),
+                () -> assertTrue(book.auction().isEmpty()));
+    }
+
+    /**
+     * Test that an auction trades the most it can at a single price, filling orders in price-time priority and
+     * leaving a book that no longer crosses
+     */
+    @Test
+    public void testAuctionUniformPrice() {
+        Order bestBuy = order(true, 5, 12);
+        Order cheapBuy = order(true, 5, 10);
+        Order cheapSell = order(false, 4, 9);
+        Order sell = order(false, 4, 11);
+        book.collect(bestBuy);
+        book.collect(cheapBuy);
+        book.collect(cheapSell);
+        book.collect(sell);
+        book.collect(order(false, 3, 13));
+
+        ArrayList<Trade> trades = book.auction();
+        assertAll(
+                () -> assertEquals(2, trades.size()),
+                () -> assertEquals(11, trades.get(0).price),
+                () -> assertEquals(11, trades.get(1).price),
+                () -> assertSame(cheapSell, trades.get(0).sell),
+                () -> assertEquals(4, trades.get(0).qty),
+                () -> assertSame(sell, trades.get(1).sell),
+                () -> assertEquals(1, trades.get(1).qty),
+                () -> assertEquals(0, bestBuy.qty),
+                () -> assertEquals(3, sell.qty),
+                () -> assertEquals(5, cheapBuy.qty),
+                () -> assertEquals(10, book.bestBid()),
+                () -> assertEquals(11, book.bestAsk()));
+    }
+}
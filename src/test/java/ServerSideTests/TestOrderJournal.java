@@ -0,0 +1,181 @@
+package ServerSideTests;
+
+import ClientSide.Asset;
+import ClientSide.Exceptions.IllegalString;
+import ClientSide.Exceptions.InvalidAmount;
+import ClientSide.Order;
+import ClientSide.Unit;
+import ServerSide.OrderJournal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test the order journal that the matcher replays on start up.
+ */
+public class TestOrderJournal {
+    @TempDir
+    Path directory;
+    Path file;
+    Unit buyers;
+    Asset ABC = new Asset(777, "Test Asset ABC");
+
+    /**
+     * Create the unit used to place orders and pick a file for the journal
+     * @throws IllegalString Throws an exception if the unit name is not a valid string
+     * @throws InvalidAmount Throw an exception if the unit balance is not a valid amount
+     */
+    @BeforeEach
+    public void setup() throws IllegalString, InvalidAmount {
+        buyers = new Unit("buyers", 1000, new HashMap<>());
+        file = directory.resolve("orders.journal");
+    }
+
+    /**
+     * Helper used to read every record in a journal, copying the fields that are checked by the tests
+     */
+    private ArrayList<String> replay(OrderJournal journal) throws IOException {
+        ArrayList<String> records = new ArrayList<>();
+        journal.replay(record -> records.add(record.sequence + " " + record.kind + " " + record.orderID + " "
+                + record.assetID + " " + record.unitName + " " + record.qty + " " + record.price + " "
+                + record.isBuy + " " + record.type + " " + record.budget + " " + record.makerID));
+        return records;
+    }
+
+    /**
+     * Test that the expiry of a good till time order is kept, so that it is scheduled again when replayed
+     * @throws IOException Throw exception if the journal cannot be written
+     */
+    @Test
+    public void testExpiryReplayed() throws IOException {
+        Order expiring = new Order(buyers, ABC, 5, 20, true);
+        expiring.id = 1;
+        expiring.goodTill(LocalDateTime.of(2030, 1, 2, 3, 4, 5));
+        Order forever = new Order(buyers, ABC, 5, 20, true);
+        forever.id = 2;
+
+        try (OrderJournal journal = new OrderJournal(file)) {
+            journal.appendNew(expiring, Integer.MAX_VALUE);
+            journal.appendNew(forever, Integer.MAX_VALUE);
+        }
+
+        ArrayList<Long> expiries = new ArrayList<>();
+        try (OrderJournal journal = new OrderJournal(file)) {
+            journal.replay(record -> expiries.add(record.expiry));
+        }
+        Order replayed = new Order(buyers, ABC, 5, 20, true);
+        replayed.setExpiryMillis(expiries.get(0));
+        assertAll(
+                () -> assertEquals(expiring.getExpiryMillis(), expiries.get(0)),
+                () -> assertEquals(expiring.expiry, replayed.expiry),
+                () -> assertEquals(0, expiries.get(1)));
+    }
+
+    /**
+     * Test that every kind of record is read back with its fields and sequence number after the journal is reopened
+     * @throws IOException Throw exception if the journal cannot be written
+     */
+    @Test
+    public void testReplay() throws IOException {
+        Order order = new Order(buyers, ABC, 5, 20, true, Order.Type.FILL_OR_KILL);
+        order.id = 12;
+
+        try (OrderJournal journal = new OrderJournal(file)) {
+            assertEquals(1, journal.appendNew(order, Integer.MAX_VALUE));
+            assertEquals(2, journal.appendFill(777, 12, 9, 5, 18));
+            assertEquals(3, journal.appendCancel(9, 777));
+        }
+
+        try (OrderJournal journal = new OrderJournal(file)) {
+            ArrayList<String> records = replay(journal);
+            assertAll(
+                    () -> assertEquals(3, journal.getLastSequence()),
+                    () -> assertEquals("1 NEW 12 777 buyers 5 20 true FILL_OR_KILL " + Integer.MAX_VALUE + " 0",
+                            records.get(0)),
+                    () -> assertEquals("2 FILL 12 777 null 5 18 false null 0 9", records.get(1)),
+                    () -> assertEquals("3 CANCEL 9 777 null 0 0 false null 0 0", records.get(2)),
+                    () -> assertEquals(4, journal.appendCancel(10, 777)));
+        }
+    }
+
+    /**
+     * Test that replaying from the end of the journal at one point reads only the records written after it, and
+     * that a position past the end of the file replays the whole journal
+     * @throws IOException Throw exception if the journal cannot be written
+     */
+    @Test
+    public void testReplayFromPosition() throws IOException {
+        long end;
+        try (OrderJournal journal = new OrderJournal(file)) {
+            journal.appendCancel(1, 777);
+            journal.appendCancel(2, 777);
+            end = journal.getEnd();
+            journal.appendCancel(3, 777);
+        }
+
+        try (OrderJournal journal = new OrderJournal(file)) {
+            ArrayList<Long> tail = new ArrayList<>();
+            ArrayList<Long> all = new ArrayList<>();
+            journal.replay(end, record -> tail.add(record.sequence));
+            journal.replay(end * 10, record -> all.add(record.sequence));
+            assertAll(
+                    () -> assertEquals(List.of(3L), tail),
+                    () -> assertEquals(List.of(1L, 2L, 3L), all));
+        }
+    }
+
+    /**
+     * Test that records are only written to the file once the journal is synced
+     * @throws IOException Throw exception if the journal cannot be written
+     */
+    @Test
+    public void testSync() throws IOException {
+        try (OrderJournal journal = new OrderJournal(file)) {
+            journal.appendCancel(1, 777);
+            assertTrue(replay(journal).isEmpty());
+
+            journal.sync();
+            assertEquals(1, replay(journal).size());
+        }
+    }
+
+    /**
+     * Test that a record that was only partly written is cut off when the journal is reopened, and that the next
+     * record takes its place
+     * @throws IOException Throw exception if the journal cannot be written
+     */
+    @Test
+    public void testTornRecord() throws IOException {
+        try (OrderJournal journal = new OrderJournal(file)) {
+            journal.appendCancel(1, 777);
+            journal.appendCancel(2, 777);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (OrderJournal journal = new OrderJournal(file)) {
+            assertEquals(1, journal.getLastSequence());
+            assertEquals(2, journal.appendCancel(3, 777));
+        }
+
+        try (OrderJournal journal = new OrderJournal(file)) {
+            ArrayList<String> records = replay(journal);
+            assertAll(
+                    () -> assertEquals(2, records.size()),
+                    () -> assertTrue(records.get(1).startsWith("2 CANCEL 3 ")));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ServerSideTests;
+
+import ClientSide.Order;
+import ServerSide.OrderCommand;
+import ServerSide.OrderSequencer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test the sequencer that orders are handed to the matcher through.
+ */
+public class TestOrderSequencer {
+
+    /**
+     * Test that only power of two capacities are accepted
+     */
+    @Test
+    public void testCapacity() {
+        assertAll(
+                () -> assertThrows(IllegalArgumentException.class, () -> new OrderSequencer(0)),
+                () -> assertThrows(IllegalArgumentException.class, () -> new OrderSequencer(100)),
+                () -> assertDoesNotThrow(() -> new OrderSequencer(128)));
+    }
+
+    /**
+     * Test that commands come out in the order they were published with increasing sequence numbers,
+     * including after the ring has wrapped around
+     */
+    @Test
+    public void testSequenceOrder() {
+        OrderSequencer sequencer = new OrderSequencer(4);
+        ArrayList<Long> sequences = new ArrayList<>();
+        ArrayList<Integer> ids = new ArrayList<>();
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 3; i++) {
+                Order order = new Order(null, null, 1, 1, true, round * 3 + i);
+                sequencer.publish(i == 2 ? OrderCommand.Type.CANCEL : OrderCommand.Type.NEW, order);
+            }
+            int handled = sequencer.drain(command -> {
+                sequences.add(command.sequence);
+                ids.add(command.order.id);
+            }, 0, TimeUnit.MILLISECONDS);
+            assertEquals(3, handled);
+        }
+
+        assertAll(
+                () -> assertTrue(sequencer.isEmpty()),
+                () -> assertEquals(8, sequencer.getConsumedSequence()),
+                () -> assertEquals(9, sequences.size()),
+                () -> {
+                    for (int i = 0; i < 9; i++) {
+                        assertEquals(i, sequences.get(i));
+                        assertEquals(i, ids.get(i));
+                    }
+                });
+    }
+
+    /**
+     * Test that draining an empty sequencer gives up after the timeout
+     */
+    @Test
+    public void testDrainTimeout() {
+        OrderSequencer sequencer = new OrderSequencer(8);
+        assertEquals(0, sequencer.drain(command -> fail("Nothing was published"), 5, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Test that commands from several publishing threads are all delivered exactly once and in sequence order,
+     * even when the ring is much smaller than the number of commands
+     * @throws InterruptedException Throw exception if a publishing thread is interrupted
+     */
+    @Test
+    public void testConcurrentPublishers() throws InterruptedException {
+        OrderSequencer sequencer = new OrderSequencer(16);
+        int threads = 4;
+        int perThread = 5000;
+
+        ArrayList<Thread> publishers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * perThread;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    sequencer.publish(OrderCommand.Type.NEW, new Order(null, null, 1, 1, true, offset + i));
+                }
+            });
+            publishers.add(thread);
+            thread.start();
+        }
+
+        HashSet<Integer> ids = new HashSet<>();
+        long[] lastSequence = {-1};
+        boolean[] inOrder = {true};
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (ids.size() < threads * perThread && System.nanoTime() < deadline) {
+            sequencer.drain(command -> {
+                inOrder[0] &= command.sequence == lastSequence[0] + 1;
+                lastSequence[0] = command.sequence;
+                ids.add(command.order.id);
+            }, 10, TimeUnit.MILLISECONDS);
+        }
+
+        for (Thread thread : publishers) {
+            thread.join();
+        }
+
+        assertAll(
+                () -> assertEquals(threads * perThread, ids.size()),
+                () -> assertTrue(inOrder[0]),
+                () -> assertTrue(sequencer.isEmpty()));
+    }
+}
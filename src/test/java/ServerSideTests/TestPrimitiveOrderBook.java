@@ -0,0 +1,265 @@
+package ServerSideTests;
+
+import ClientSide.Order;
+import ServerSide.FillBuffer;
+import ServerSide.PrimitiveOrderBook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test the primitive order book, which stores resting orders in int arrays.
+ */
+public class TestPrimitiveOrderBook {
+    static final int BUYERS = 1;
+    static final int SELLERS = 2;
+    PrimitiveOrderBook book;
+    FillBuffer fills;
+    int nextID;
+
+    /**
+     * Create a small empty book for each test so that its arrays have to grow
+     */
+    @BeforeEach
+    public void setup() {
+        book = new PrimitiveOrderBook(777, 2);
+        fills = new FillBuffer(1);
+        nextID = 1;
+    }
+
+    /**
+     * Helper used to enter an order with the next order ID
+     * @return the ID given to the order
+     */
+    private int add(boolean isBuy, int qty, int price) {
+        int id = nextID++;
+        book.add(id, isBuy ? BUYERS : SELLERS, isBuy, qty, price, fills);
+        return id;
+    }
+
+    /**
+     * Test that orders that do not cross rest on the correct side of the book
+     */
+    @Test
+    public void testOrdersRest() {
+        add(true, 5, 10);
+        add(true, 5, 12);
+        add(false, 5, 15);
+        add(false, 5, 13);
+
+        assertAll(
+                () -> assertTrue(fills.isEmpty()),
+                () -> assertEquals(4, book.size()),
+                () -> assertEquals(12, book.bestBid()),
+                () -> assertEquals(13, book.bestAsk()));
+    }
+
+    /**
+     * Test that the best priced order is matched first and the trade happens at the resting order's price
+     */
+    @Test
+    public void testPricePriority() {
+        int expensive = add(false, 5, 20);
+        int cheap = add(false, 5, 15);
+        int buy = add(true, 5, 25);
+
+        assertAll(
+                () -> assertEquals(1, fills.size()),
+                () -> assertEquals(buy, fills.getTakerID()),
+                () -> assertEquals(BUYERS, fills.getTakerUnit()),
+                () -> assertEquals(cheap, fills.getMakerID(0)),
+                () -> assertEquals(SELLERS, fills.getMakerUnit(0)),
+                () -> assertEquals(15, fills.getPrice(0)),
+                () -> assertEquals(5, fills.getQty(0)),
+                () -> assertFalse(book.contains(cheap)),
+                () -> assertTrue(book.contains(expensive)));
+    }
+
+    /**
+     * Test that orders at the same price are matched in the order they arrived
+     */
+    @Test
+    public void testTimePriority() {
+        int first = add(false, 5, 10);
+        int second = add(false, 5, 10);
+        add(true, 5, 10);
+
+        assertAll(
+                () -> assertEquals(first, fills.getMakerID(0)),
+                () -> assertTrue(book.contains(second)));
+    }
+
+    /**
+     * Test that resting orders are visited best price first and in arrival order within a price, so that entering
+     * them again in that order rebuilds the same book
+     */
+    @Test
+    public void testForEachRebuilds() {
+        add(true, 5, 10);
+        add(false, 4, 15);
+        int first = add(true, 3, 12);
+        add(false, 2, 13);
+        add(true, 1, 12);
+
+        StringBuilder visited = new StringBuilder();
+        PrimitiveOrderBook copy = new PrimitiveOrderBook(777, 2);
+        book.forEach((orderID, unitID, isBuy, qty, price) -> {
+            visited.append(orderID).append(' ');
+            copy.add(orderID, unitID, isBuy, qty, price, fills);
+        });
+        add(false, 3, 12);
+        copy.add(nextID, SELLERS, false, 3, 12, fills);
+
+        assertAll(
+                () -> assertEquals("3 5 1 4 2 ", visited.toString()),
+                () -> assertEquals(first, fills.getMakerID(0)),
+                () -> assertEquals(book.size(), copy.size()),
+                () -> assertEquals(book.bestBid(), copy.bestBid()),
+                () -> assertEquals(book.bestAsk(), copy.bestAsk()));
+    }
+
+    /**
+     * Test that a large buy sweeps several price levels, partially filling the last sell it reaches, and that the
+     * remaining quantity of every order is reported
+     */
+    @Test
+    public void testBuySweepsLevels() {
+        add(false, 2, 10);
+        add(false, 3, 11);
+        int third = add(false, 4, 12);
+        int buy = add(true, 7, 12);
+
+        assertAll(
+                () -> assertEquals(3, fills.size()),
+                () -> assertEquals(2, fills.getQty(0)),
+                () -> assertEquals(0, fills.getMakerRemaining(0)),
+                () -> assertEquals(3, fills.getQty(1)),
+                () -> assertEquals(2, fills.getQty(2)),
+                () -> assertEquals(12, fills.getPrice(2)),
+                () -> assertEquals(2, fills.getMakerRemaining(2)),
+                () -> assertEquals(0, fills.getTakerRemaining()),
+                () -> assertEquals(2, book.getQty(third)),
+                () -> assertFalse(book.contains(buy)),
+                () -> assertEquals(1, book.size()));
+    }
+
+    /**
+     * Test that the unfilled part of a sell rests once the buy prices no longer cross
+     */
+    @Test
+    public void testSellRemainderRests() {
+        add(true, 2, 12);
+        add(true, 3, 9);
+        int sell = add(false, 5, 10);
+
+        assertAll(
+                () -> assertEquals(1, fills.size()),
+                () -> assertEquals(3, fills.getTakerRemaining()),
+                () -> assertEquals(3, book.getQty(sell)),
+                () -> assertEquals(9, book.bestBid()),
+                () -> assertEquals(10, book.bestAsk()));
+    }
+
+    /**
+     * Test that cancelled orders are removed from the middle of a price level and can no longer be matched
+     */
+    @Test
+    public void testCancel() {
+        int first = add(false, 5, 10);
+        int middle = add(false, 5, 10);
+        int last = add(false, 5, 10);
+
+        assertEquals(5, book.cancel(middle));
+        assertEquals(0, book.cancel(middle));
+
+        add(true, 10, 10);
+        assertAll(
+                () -> assertEquals(2, fills.size()),
+                () -> assertEquals(first, fills.getMakerID(0)),
+                () -> assertEquals(last, fills.getMakerID(1)),
+                () -> assertEquals(0, book.size()),
+                () -> assertEquals(-1, book.bestAsk()),
+                () -> assertEquals(-1, book.bestBid()));
+    }
+
+    /**
+     * Test that a market buy trades at any price until it runs out of credits, without resting
+     */
+    @Test
+    public void testMarketBuy() {
+        add(false, 5, 10);
+        add(false, 5, 40);
+
+        book.add(nextID++, BUYERS, true, 10, 0, Order.Type.MARKET, 130, fills);
+        assertAll(
+                () -> assertEquals(2, fills.size()),
+                () -> assertEquals(5, fills.getQty(0)),
+                () -> assertEquals(2, fills.getQty(1)),
+                () -> assertEquals(40, fills.getPrice(1)),
+                () -> assertEquals(3, fills.getTakerRemaining()),
+                () -> assertEquals(1, book.size()),
+                () -> assertEquals(-1, book.bestBid()));
+    }
+
+    /**
+     * Test that immediate or cancel orders do not rest and fill or kill orders only trade in full
+     */
+    @Test
+    public void testImmediateOrders() {
+        add(true, 3, 12);
+        add(true, 3, 10);
+
+        book.add(nextID++, SELLERS, false, 7, 10, Order.Type.FILL_OR_KILL, Integer.MAX_VALUE, fills);
+        assertTrue(fills.isEmpty());
+
+        book.add(nextID++, SELLERS, false, 4, 11, Order.Type.IMMEDIATE_OR_CANCEL, Integer.MAX_VALUE, fills);
+        assertAll(
+                () -> assertEquals(1, fills.size()),
+                () -> assertEquals(1, fills.getTakerRemaining()),
+                () -> assertEquals(-1, book.bestAsk()),
+                () -> assertEquals(10, book.bestBid()));
+
+        book.add(nextID++, SELLERS, false, 3, 10, Order.Type.FILL_OR_KILL, Integer.MAX_VALUE, fills);
+        assertAll(
+                () -> assertEquals(1, fills.size()),
+                () -> assertEquals(0, fills.getTakerRemaining()),
+                () -> assertEquals(0, book.size()));
+    }
+
+    /**
+     * Test that the book stays consistent over many random orders and cancellations, with freed slots being reused,
+     * by checking that every unit of quantity placed is either filled twice (once per side), cancelled or resting
+     */
+    @Test
+    public void testRandomOrderFlow() {
+        Random random = new Random(42);
+        long placed = 0;
+        long filled = 0;
+        long cancelled = 0;
+
+        for (int i = 0; i < 20000; i++) {
+            if (random.nextInt(4) == 0 && nextID > 1) {
+                cancelled += book.cancel(1 + random.nextInt(nextID - 1));
+            } else {
+                int qty = 1 + random.nextInt(10);
+                placed += qty;
+                add(random.nextBoolean(), qty, 90 + random.nextInt(21));
+                for (int f = 0; f < fills.size(); f++) {
+                    filled += 2L * fills.getQty(f);
+                }
+                if (book.bestBid() != -1 && book.bestAsk() != -1) {
+                    assertTrue(book.bestBid() < book.bestAsk());
+                }
+            }
+        }
+
+        long resting = 0;
+        for (int id = 1; id < nextID; id++) {
+            resting += book.getQty(id);
+        }
+        assertEquals(placed, filled + cancelled + resting);
+    }
+}
@@ -0,0 +1,164 @@
+package ServerSideTests;
+
+import ClientSide.Asset;
+import ClientSide.Exceptions.IllegalString;
+import ClientSide.Exceptions.InvalidAmount;
+import ClientSide.Exceptions.OrderException;
+import ClientSide.Order;
+import ClientSide.Unit;
+import ServerSide.RiskLedger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test the in memory ledger that placed orders are checked and reserved against.
+ */
+public class TestRiskLedger {
+    Unit buyers;
+    Unit sellers;
+    Asset ABC = new Asset(777, "Test Asset ABC");
+    RiskLedger ledger;
+    int balanceLoads;
+
+    /**
+     * Create a ledger whose database holds 1000 credits for the buyers and 50 ABC for the sellers, with one resting
+     * sell of 10 ABC at 20 credits
+     * @throws IllegalString Throws an exception if a unit name is not a valid string
+     * @throws InvalidAmount Throw an exception if a unit balance is not a valid amount
+     */
+    @BeforeEach
+    public void setup() throws IllegalString, InvalidAmount {
+        buyers = new Unit("buyers", 1000, new HashMap<>());
+        sellers = new Unit("sellers", 0, new HashMap<>());
+        balanceLoads = 0;
+        ledger = new RiskLedger(new RiskLedger.Loader() {
+            @Override
+            public Set<Integer> loadAssets() {
+                return Set.of(777);
+            }
+
+            @Override
+            public long loadBalances(String unitName, HashMap<Integer, Long> holdings) {
+                balanceLoads++;
+                if (unitName.equals("sellers")) {
+                    holdings.put(777, 50L);
+                    return 0;
+                }
+                return 1000;
+            }
+
+            @Override
+            public void loadRestingOrders(RiskLedger ledger) {
+                ledger.restore(1, "sellers", 777, false, 10, 20);
+            }
+        });
+        ledger.getAvailableQty("sellers", 777); // Balances read later would already include the fills made here
+    }
+
+    /**
+     * Helper used to place a resting order and give it an order ID
+     */
+    private Order place(Unit unit, boolean isBuy, int qty, int price, int orderID) throws OrderException {
+        Order order = new Order(unit, ABC, qty, price, isBuy);
+        ledger.reserve(order);
+        order.id = orderID;
+        ledger.track(order);
+        return order;
+    }
+
+    /**
+     * Test that resting orders in the database are reserved and that balances are only read once
+     * @throws OrderException Throws an exception if an order cannot be placed
+     */
+    @Test
+    public void testLoad() throws OrderException {
+        place(sellers, false, 15, 25, 2);
+        assertAll(
+                () -> assertTrue(ledger.hasAsset(777)),
+                () -> assertFalse(ledger.hasAsset(778)),
+                () -> assertEquals(25, ledger.getAvailableQty("sellers", 777)),
+                () -> assertEquals(1000, ledger.getAvailableCredits("buyers")),
+                () -> assertEquals(2, balanceLoads));
+    }
+
+    /**
+     * Test that orders that together spend more than a unit's credits or sell more than it holds are rejected
+     * @throws OrderException Throws an exception if an order that fits cannot be placed
+     */
+    @Test
+    public void testOverCommitRejected() throws OrderException {
+        place(buyers, true, 30, 20, 2);
+        place(buyers, true, 20, 20, 3);
+        assertThrows(OrderException.class, () -> ledger.reserve(new Order(buyers, ABC, 1, 1, true)));
+
+        place(sellers, false, 40, 30, 4);
+        assertThrows(OrderException.class, () -> ledger.reserve(new Order(sellers, ABC, 1, 30, false)));
+        assertThrows(OrderException.class, () -> ledger.reserve(new Order(buyers, ABC, 1, 30, false)));
+        assertAll(
+                () -> assertEquals(0, ledger.getAvailableCredits("buyers")),
+                () -> assertEquals(0, ledger.getAvailableQty("sellers", 777)));
+    }
+
+    /**
+     * Test that fills move credits and assets between units and release the reservations of resting orders
+     * @throws OrderException Throws an exception if an order cannot be placed
+     */
+    @Test
+    public void testFill() throws OrderException {
+        place(buyers, true, 10, 25, 2);
+        ledger.fill("buyers", 2, "sellers", 1, 777, 4, 20);
+
+        assertAll(
+                () -> assertEquals(1000 - 80 - 6 * 25, ledger.getAvailableCredits("buyers")),
+                () -> assertEquals(4, ledger.getAvailableQty("buyers", 777)),
+                () -> assertEquals(80, ledger.getAvailableCredits("sellers")),
+                () -> assertEquals(40, ledger.getAvailableQty("sellers", 777)));
+
+        ledger.fill("buyers", 2, "sellers", 1, 777, 6, 20);
+        assertAll(
+                () -> assertEquals(800, ledger.getAvailableCredits("buyers")),
+                () -> assertEquals(40, ledger.getAvailableQty("sellers", 777)));
+    }
+
+    /**
+     * Test that cancelling a resting order releases what it has left, and only once
+     * @throws OrderException Throws an exception if an order cannot be placed
+     */
+    @Test
+    public void testCancelReleases() throws OrderException {
+        place(buyers, true, 10, 50, 2);
+        ledger.fill("buyers", 2, "sellers", 1, 777, 2, 20);
+        ledger.release(2);
+        ledger.release(2);
+        ledger.release(1);
+        assertAll(
+                () -> assertEquals(960, ledger.getAvailableCredits("buyers")),
+                () -> assertEquals(48, ledger.getAvailableQty("sellers", 777)));
+    }
+
+    /**
+     * Test that a market buy's budget is every available credit, held until it is released, and that balances
+     * changed outside of trading are read again
+     * @throws OrderException Throws an exception if an order cannot be placed
+     */
+    @Test
+    public void testBudgetAndRefresh() throws OrderException {
+        place(buyers, true, 10, 30, 2);
+        int budget = ledger.reserveBudget("buyers");
+        assertEquals(700, budget);
+        assertEquals(0, ledger.reserveBudget("buyers"));
+        ledger.fill("buyers", 0, "sellers", 1, 777, 5, 20);
+        ledger.release("buyers", 777, budget, 0);
+        assertEquals(600, ledger.getAvailableCredits("buyers"));
+
+        ledger.refresh("buyers");
+        assertAll(
+                () -> assertEquals(700, ledger.getAvailableCredits("buyers")), // Read 1000 again, less 300 reserved
+                () -> assertEquals(3, balanceLoads));
+    }
+}
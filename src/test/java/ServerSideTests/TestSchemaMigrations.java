@@ -0,0 +1,205 @@
+package ServerSideTests;
+
+import ServerSide.NetworkConnection;
+import ServerSide.SchemaMigrations;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test that databases created by older versions of the app are upgraded correctly.
+ * Each test builds the original tables in an in-memory database, fills them the way the old app did, then migrates.
+ */
+public class TestSchemaMigrations {
+    Connection connection;
+    Statement st;
+
+    /**
+     * Create the tables as they were originally designed, including the orgunits table since replaced
+     * @throws SQLException Throws an exception if the in-memory database cannot be created
+     */
+    @BeforeEach
+    public void before() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        st = connection.createStatement();
+        st.execute(NetworkConnection.CREATE_USERS_TABLE);
+        st.execute(NetworkConnection.CREATE_ASSETS_TABLE);
+        st.execute("CREATE TABLE orders(orderID INTEGER PRIMARY KEY AUTOINCREMENT, type VARCHAR(30),"
+                + " orgunit VARCHAR(30), assetID VARCHAR(30), qty INTEGER, price INTEGER, date VARCHAR(19))");
+        st.execute("CREATE TABLE history(orderID INTEGER PRIMARY KEY NOT NULL UNIQUE, type VARCHAR(30),"
+                + " orgunit VARCHAR(30), assetID INTEGER, qty INTEGER, price INTEGER, date VARCHAR(19))");
+        st.execute("CREATE TABLE orgunits(rowID INTEGER PRIMARY KEY NOT NULL UNIQUE, unitname VARCHAR(30) NOT NULL,"
+                + " credits INTEGER NOT NULL, assetID VARCHAR(10), assetqty INTEGER)");
+    }
+
+    /**
+     * Close the in-memory database, which discards it
+     * @throws SQLException Throws an exception if the connection cannot be closed
+     */
+    @AfterEach
+    public void after() throws SQLException {
+        connection.close();
+    }
+
+    /**
+     * Helper used to read every row of a query, with each row's columns joined by "|"
+     */
+    private List<String> rows(String sql) throws SQLException {
+        ArrayList<String> rows = new ArrayList<>();
+        try (ResultSet rs = st.executeQuery(sql)) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder row = new StringBuilder(rs.getString(1));
+                for (int i = 2; i <= columns; i++) {
+                    row.append('|').append(rs.getString(i));
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Test that each unit keeps the credits from its first row, and that holdings of the same asset over several rows
+     * are added together
+     * @throws SQLException Throws an exception if the database cannot be migrated
+     */
+    @Test
+    public void testUnitsSplit() throws SQLException {
+        // Only the first row of a unit had its credits kept up to date
+        st.execute("INSERT INTO orgunits VALUES (1, 'developers', 100, '1', 5), (2, 'developers', 50, '1', 3),"
+                + " (3, 'developers', 50, '2', 4), (4, 'engineers', 20, NULL, NULL)");
+
+        assertAll(
+                () -> assertEquals(SchemaMigrations.getLatestVersion(), SchemaMigrations.migrate(connection)),
+                () -> assertEquals(List.of("developers|100", "engineers|20"),
+                        rows("SELECT unitname, credits FROM units ORDER BY unitname")),
+                () -> assertEquals(List.of("developers|1|8", "developers|2|4"),
+                        rows("SELECT unitname, assetID, assetqty FROM unit_holdings ORDER BY unitname, assetID")),
+                () -> assertEquals(List.of(), rows("SELECT name FROM sqlite_master WHERE name='orgunits'"))
+        );
+    }
+
+    /**
+     * Helper used to convert a local date and time to milliseconds since the epoch the way the server does
+     */
+    private static String millis(int year, int month, int day, int hour, int minute) {
+        return String.valueOf(LocalDateTime.of(year, month, day, hour, minute)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    /**
+     * Test that the text dates of orders and history, written in the server's local time, become the same instants
+     * in milliseconds since the epoch
+     * @throws SQLException Throws an exception if the database cannot be migrated
+     */
+    @Test
+    public void testDatesConverted() throws SQLException {
+        SchemaMigrations.migrate(connection, 1); // The version that added expiries
+        st.execute("INSERT INTO orders VALUES (1, 'buy', 'developers', '1', 5, 10, '2021-05-01 10:00:00',"
+                + " '2021-05-02 16:30:00'), (2, 'sell', 'developers', '2', 3, 20, '2021-12-31 23:59:00', NULL)");
+        st.execute("INSERT INTO history VALUES (7, 'buy', 'developers', 1, 5, 10, '2021-06-15 09:15:00')");
+
+        assertAll(
+                () -> assertEquals(3, SchemaMigrations.migrate(connection, 3)),
+                () -> assertEquals(List.of(
+                        "1|" + millis(2021, 5, 1, 10, 0) + "|" + millis(2021, 5, 2, 16, 30),
+                        "2|" + millis(2021, 12, 31, 23, 59) + "|null"),
+                        rows("SELECT orderID, date, expiry FROM orders ORDER BY orderID")),
+                () -> assertEquals(List.of("7|" + millis(2021, 6, 15, 9, 15)),
+                        rows("SELECT orderID, date FROM history"))
+        );
+    }
+
+    /**
+     * Test that rebuilding the orders table keeps its ID counter, so orders removed before the upgrade never have
+     * their IDs given out again
+     * @throws SQLException Throws an exception if the database cannot be migrated
+     */
+    @Test
+    public void testOrderIDsContinue() throws SQLException {
+        for (int i = 0; i < 3; i++) {
+            st.execute("INSERT INTO orders (type, orgunit, assetID, qty, price, date)"
+                    + " VALUES ('buy', 'developers', '1', 5, 10, '2021-05-01 10:00:00')");
+        }
+        st.execute("DELETE FROM orders"); // Every order has been filled or cancelled
+
+        SchemaMigrations.migrate(connection, 3);
+        st.execute("INSERT INTO orders (type, orgunit, assetID, qty, price, date)"
+                + " VALUES ('buy', 'developers', 1, 5, 10, 1619827200000)");
+
+        assertEquals(List.of("4"), rows("SELECT orderID FROM orders"));
+    }
+
+    /**
+     * Test that asset IDs stored as text become integers, and that the orders table keeps its ID counter through
+     * every rebuild
+     * @throws SQLException Throws an exception if the database cannot be migrated
+     */
+    @Test
+    public void testAssetIDsAreIntegers() throws SQLException {
+        st.execute("INSERT INTO orders (type, orgunit, assetID, qty, price, date)"
+                + " VALUES ('buy', 'developers', '1', 5, 10, '2021-05-01 10:00:00'),"
+                + " ('sell', 'developers', '12', 3, 20, '2021-05-01 10:00:00')");
+        st.execute("DELETE FROM orders WHERE orderID=2"); // The newest order has been filled
+
+        SchemaMigrations.migrate(connection);
+        st.execute("INSERT INTO orders (type, orgunit, assetID, qty, price, date)"
+                + " VALUES ('buy', 'developers', 1, 5, 10, 1619827200000)");
+
+        assertEquals(List.of("1|1|integer", "3|1|integer"),
+                rows("SELECT orderID, assetID, typeof(assetID) FROM orders ORDER BY orderID"));
+    }
+
+    /**
+     * Helper used to describe the columns of a table, each as its name, type, whether it can be null and its place in
+     * the primary key
+     */
+    private static List<String> columns(Connection connection, String table) throws SQLException {
+        ArrayList<String> columns = new ArrayList<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name") + "|" + rs.getString("type") + "|" + rs.getInt("notnull") + "|"
+                        + rs.getInt("pk"));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Test that a new database is created at the newest version without any changes applied, with the same tables
+     * an upgraded database ends up with
+     * @throws SQLException Throws an exception if either database cannot be created
+     */
+    @Test
+    public void testNewDatabaseIsCurrent() throws SQLException {
+        NetworkConnection.createTables(connection); // The original tables, upgraded
+        try (Connection created = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            assertTrue(SchemaMigrations.isNew(created));
+            NetworkConnection.createTables(created);
+
+            assertAll(
+                    () -> assertFalse(SchemaMigrations.isNew(created)),
+                    () -> assertEquals(SchemaMigrations.getLatestVersion(), SchemaMigrations.getVersion(created)),
+                    () -> assertEquals(SchemaMigrations.getLatestVersion(), SchemaMigrations.getVersion(connection)),
+                    () -> assertEquals(columns(connection, "orders"), columns(created, "orders")),
+                    () -> assertEquals(columns(connection, "history"), columns(created, "history")),
+                    () -> assertEquals(columns(connection, "units"), columns(created, "units")),
+                    () -> assertEquals(columns(connection, "unit_holdings"), columns(created, "unit_holdings"))
+            );
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package ServerSideTests;
+
+import ClientSide.Order;
+import ServerSide.SyntheticOrderFlow;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test the generator of synthetic data and order flow for soak tests.
+ */
+public class TestSyntheticOrderFlow {
+
+    /**
+     * Test that two generators with the same seed produce the same order flow and a different seed does not
+     */
+    @Test
+    public void testDeterministic() {
+        SyntheticOrderFlow first = new SyntheticOrderFlow(7, 100, 10, 20, 5, 0);
+        SyntheticOrderFlow second = new SyntheticOrderFlow(7, 100, 10, 20, 5, 0);
+        SyntheticOrderFlow other = new SyntheticOrderFlow(8, 100, 10, 20, 5, 0);
+        boolean differs = false;
+
+        for (int i = 0; i < 10000; i++) {
+            SyntheticOrderFlow.Step a = first.next();
+            SyntheticOrderFlow.Step b = second.next();
+            SyntheticOrderFlow.Step c = other.next();
+            assertAll(
+                    () -> assertEquals(a.cancel, b.cancel),
+                    () -> assertEquals(a.pick, b.pick),
+                    () -> assertEquals(a.unitName, b.unitName),
+                    () -> assertEquals(a.assetID, b.assetID),
+                    () -> assertEquals(a.isBuy, b.isBuy),
+                    () -> assertEquals(a.qty, b.qty),
+                    () -> assertEquals(a.price, b.price),
+                    () -> assertEquals(a.type, b.type));
+            differs |= a.price != c.price || a.assetID != c.assetID;
+        }
+        assertTrue(differs);
+    }
+
+    /**
+     * Test that generated names are unique and only contain letters, as NetworkConnection requires
+     */
+    @Test
+    public void testNames() {
+        HashSet<String> names = new HashSet<>();
+        for (int i = 0; i < 50000; i++) {
+            String user = SyntheticOrderFlow.userName(i);
+            String unit = SyntheticOrderFlow.unitName(i);
+            assertTrue(user.matches("[a-z]+"), user);
+            assertTrue(unit.matches("[a-z]+"), unit);
+            assertTrue(names.add(user));
+            assertTrue(names.add(unit));
+        }
+    }
+
+    /**
+     * Test that units only sell assets they hold and that orders are valid for their type
+     */
+    @Test
+    public void testOrdersAreValid() {
+        SyntheticOrderFlow flow = new SyntheticOrderFlow(3, 10, 25, 40, 4, 0);
+        HashMap<String, HashSet<Integer>> holdings = new HashMap<>();
+        for (int unit = 0; unit < flow.units; unit++) {
+            HashSet<Integer> held = new HashSet<>();
+            for (int holding = 0; holding < flow.holdingsPerUnit; holding++) {
+                held.add(flow.holding(unit, holding));
+            }
+            assertEquals(flow.holdingsPerUnit, held.size());
+            holdings.put(SyntheticOrderFlow.unitName(unit), held);
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            SyntheticOrderFlow.Step step = flow.next();
+            if (step.cancel) {
+                assertTrue(step.pick >= 0);
+                continue;
+            }
+            assertAll(
+                    () -> assertTrue(step.assetID >= 1 && step.assetID <= flow.assets),
+                    () -> assertTrue(step.qty > 0),
+                    () -> assertTrue(step.type == Order.Type.MARKET ? step.price == 0 : step.price > 0),
+                    () -> assertTrue(step.isBuy || holdings.get(step.unitName).contains(step.assetID)));
+        }
+    }
+
+    /**
+     * Test that the resting orders loaded into the database do not trade with each other, and are the same every
+     * time they are generated
+     */
+    @Test
+    public void testRestingOrdersDoNotCross() {
+        SyntheticOrderFlow flow = new SyntheticOrderFlow(11, 10, 10, 5, 2, 5000);
+        HashMap<Integer, Integer> bestBid = new HashMap<>();
+        HashMap<Integer, Integer> bestAsk = new HashMap<>();
+        int count = 0;
+
+        Iterator<SyntheticOrderFlow.Step> orders = flow.restingOrders();
+        Iterator<SyntheticOrderFlow.Step> again = flow.restingOrders();
+        while (orders.hasNext()) {
+            SyntheticOrderFlow.Step order = orders.next();
+            assertEquals(order.price, again.next().price);
+            assertEquals(Order.Type.LIMIT, order.type);
+            if (order.isBuy) {
+                bestBid.merge(order.assetID, order.price, Math::max);
+            } else {
+                bestAsk.merge(order.assetID, order.price, Math::min);
+            }
+            count++;
+        }
+
+        assertEquals(flow.restingOrders, count);
+        for (int asset : bestBid.keySet()) {
+            if (bestAsk.containsKey(asset)) {
+                assertTrue(bestBid.get(asset) < bestAsk.get(asset));
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ServerSideTests;
+
+import ServerSide.TimingWheel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test the timing wheel that good till time and good for day orders expire on.
+ */
+public class TestTimingWheel {
+    static final long TICK = 100;
+    static final long START = 1_000_000_000_000L; // An arbitrary time, in milliseconds since the epoch
+    TimingWheel wheel;
+    ArrayList<Integer> expired;
+
+    /**
+     * Create an empty wheel for each test
+     */
+    @BeforeEach
+    public void setup() {
+        wheel = new TimingWheel(TICK, START);
+        expired = new ArrayList<>();
+    }
+
+    /**
+     * Helper used to move the wheel to a time, collecting the orders that expire
+     */
+    private int advance(long millis) {
+        return wheel.advance(START + millis, (orderID, assetID) -> {
+            assertEquals(orderID * 10, assetID);
+            expired.add(orderID);
+        });
+    }
+
+    /**
+     * Test that orders expire on the tick of their expiry and not before
+     */
+    @Test
+    public void testExpiresOnTime() {
+        wheel.schedule(1, 10, START + 550);
+        wheel.schedule(2, 20, START + 250);
+
+        assertEquals(0, advance(199));
+        assertEquals(1, advance(299));
+        assertEquals(2, expired.get(0));
+        assertEquals(0, advance(499));
+        assertEquals(1, advance(500));
+        assertAll(
+                () -> assertEquals(1, expired.get(1)),
+                () -> assertEquals(0, wheel.size()));
+    }
+
+    /**
+     * Test that cancelled orders do not expire and that rescheduling an order replaces its expiry
+     */
+    @Test
+    public void testCancelAndReschedule() {
+        wheel.schedule(1, 10, START + 100);
+        wheel.schedule(2, 20, START + 100);
+        wheel.schedule(3, 30, START + 100);
+        assertTrue(wheel.cancel(2));
+        assertFalse(wheel.cancel(2));
+        wheel.schedule(3, 30, START + 1000);
+
+        assertEquals(1, advance(900));
+        assertEquals(1, advance(1000));
+        assertEquals(java.util.List.of(1, 3), expired);
+    }
+
+    /**
+     * Test that orders whose expiry has already passed expire on the next tick
+     */
+    @Test
+    public void testAlreadyExpired() {
+        advance(10_000);
+        wheel.schedule(1, 10, START);
+        assertEquals(0, advance(10_000));
+        assertEquals(1, advance(10_000 + TICK));
+    }
+
+    /**
+     * Test that orders far enough away to start in the upper wheels cascade down and expire on the right tick,
+     * including orders beyond the reach of every wheel
+     */
+    @Test
+    public void testCascade() {
+        long[] delays = {256 * TICK, 300 * TICK, 65_536 * TICK + 5 * TICK, 70_000 * TICK, 16_777_216 * TICK + TICK,
+                (1L << 32) * TICK + 7 * TICK};
+        for (int i = 0; i < delays.length; i++) {
+            wheel.schedule(i + 1, (i + 1) * 10, START + delays[i]);
+        }
+
+        for (int i = 0; i < delays.length; i++) {
+            assertEquals(0, advance(delays[i] - 1), "order " + (i + 1) + " expired early");
+            assertEquals(1, advance(delays[i]), "order " + (i + 1) + " did not expire");
+            assertEquals(i + 1, expired.get(i));
+        }
+    }
+
+    /**
+     * Test that many orders expiring on the same tick all expire together
+     */
+    @Test
+    public void testManyOnOneTick() {
+        for (int i = 1; i <= 10_000; i++) {
+            wheel.schedule(i, i * 10, START + 5_000 + i % 50);
+        }
+        assertEquals(10_000, wheel.size());
+        assertEquals(10_000, advance(5_099));
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,110 @@
+package ServerSideTests;
+
+import ServerSide.TradeTape;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The following tests are used to test the memory-mapped tape that settled trades are written to.
+ */
+public class TestTradeTape {
+    @TempDir
+    Path directory;
+    Path file;
+
+    /**
+     * Pick a file for the tape
+     */
+    @BeforeEach
+    public void setup() {
+        file = directory.resolve("trades.tape");
+    }
+
+    /**
+     * Test that a reader sees each field of a trade and the names of the units involved
+     * @throws IOException Throw exception if the tape cannot be written or read
+     */
+    @Test
+    public void testReadTrade() throws IOException {
+        long before = System.currentTimeMillis() * 1_000_000L;
+        try (TradeTape tape = new TradeTape(file, 16);
+             TradeTape.Reader reader = new TradeTape.Reader(file)) {
+            assertEquals(1, tape.append(777, 15, 5, "buyers", "sellers"));
+
+            assertTrue(reader.next());
+            assertAll(
+                    () -> assertEquals(1, reader.getSequence()),
+                    () -> assertEquals(777, reader.getAssetID()),
+                    () -> assertEquals(15, reader.getPrice()),
+                    () -> assertEquals(5, reader.getQty()),
+                    () -> assertEquals("buyers", reader.getUnitName(reader.getBuyer())),
+                    () -> assertEquals("sellers", reader.getUnitName(reader.getSeller())),
+                    () -> assertTrue(reader.getEpochNanos() >= before),
+                    () -> assertFalse(reader.next()));
+        }
+    }
+
+    /**
+     * Test that a reader follows trades appended after it was opened, including after the tape has had to grow
+     * @throws IOException Throw exception if the tape cannot be written or read
+     */
+    @Test
+    public void testFollowGrowingTape() throws IOException {
+        try (TradeTape tape = new TradeTape(file, 2);
+             TradeTape.Reader reader = new TradeTape.Reader(file)) {
+            for (int i = 1; i <= 5; i++) {
+                tape.append(777, i, i, "buyers", "sellers");
+                assertTrue(reader.next());
+                assertEquals(i, reader.getPrice());
+            }
+            assertFalse(reader.next());
+            assertEquals(5, tape.getLastSequence());
+        }
+    }
+
+    /**
+     * Test that a reopened tape carries on after the last trade and keeps the same unit IDs
+     * @throws IOException Throw exception if the tape cannot be written or read
+     */
+    @Test
+    public void testReopen() throws IOException {
+        try (TradeTape tape = new TradeTape(file, 4)) {
+            tape.append(777, 10, 1, "buyers", "sellers");
+            tape.append(777, 11, 1, "sellers", "buyers");
+        }
+
+        try (TradeTape tape = new TradeTape(file, 4)) {
+            assertEquals(2, tape.getLastSequence());
+            assertEquals(3, tape.append(777, 12, 1, "others", "buyers"));
+        }
+
+        try (TradeTape.Reader reader = new TradeTape.Reader(file)) {
+            int count = 0;
+            int buyer = -1;
+            while (reader.next()) {
+                count++;
+                buyer = reader.getBuyer();
+            }
+            assertEquals(3, count);
+            assertEquals("others", reader.getUnitName(buyer));
+            assertEquals(3, Files.readAllLines(TradeTape.unitsFile(file)).size());
+        }
+    }
+
+    /**
+     * Test that a file that is not a trade tape is rejected
+     * @throws IOException Throw exception if the file cannot be written
+     */
+    @Test
+    public void testNotATape() throws IOException {
+        Files.write(file, new byte[TradeTape.HEADER_SIZE]);
+        assertThrows(IOException.class, () -> new TradeTape.Reader(file));
+    }
+}